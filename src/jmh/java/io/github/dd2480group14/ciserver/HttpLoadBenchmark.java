@@ -0,0 +1,124 @@
+package io.github.dd2480group14.ciserver;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.HmacUtils;
+
+/**
+ * Load test of a running CI server: webhook deliveries and build log
+ * requests are sent by many clients at the same time, and the throughput
+ * and latency percentiles of each kind of request are printed.
+ *
+ * The webhook deliveries are signed "ping" events, so they go through
+ * signature validation and JSON parsing without starting builds. The
+ * server's logs folder should hold a build log with ID 1.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=io.github.dd2480group14.ciserver.HttpLoadBenchmark -Dbenchmark=http://localhost:8080
+ * The load is set with the environment variables WEBHOOK_SIGNATURE (the server's secret),
+ * LOAD_CONCURRENCY (clients, default 64), LOAD_SECONDS (default 10), LOAD_WARMUP_SECONDS
+ * (default 3) and LOAD_HTTP2 (true to ask for HTTP/2 cleartext, default false).
+ */
+public class HttpLoadBenchmark {
+
+    private record Scenario(String name, HttpRequest request) {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args[0].isBlank()) {
+            throw new IllegalArgumentException("Usage: HttpLoadBenchmark <server URL>");
+        }
+        String baseUrl = args[0].replaceAll("/$", "");
+        String secret = System.getenv().getOrDefault("WEBHOOK_SIGNATURE", "secret");
+        int concurrency = Integer.parseInt(System.getenv().getOrDefault("LOAD_CONCURRENCY", "64"));
+        int seconds = Integer.parseInt(System.getenv().getOrDefault("LOAD_SECONDS", "10"));
+        int warmupSeconds = Integer.parseInt(System.getenv().getOrDefault("LOAD_WARMUP_SECONDS", "3"));
+        boolean http2 = Boolean.parseBoolean(System.getenv().getOrDefault("LOAD_HTTP2", "false"));
+
+        String body = "payload=" + URLEncoder.encode("{\"zen\":\"Keep it logically awesome.\",\"hook_id\":1}",
+            StandardCharsets.UTF_8);
+        String signature = "sha256=" + new HmacUtils("HmacSHA256", secret).hmacHex(body);
+        List<Scenario> scenarios = List.of(
+            new Scenario("webhook", HttpRequest.newBuilder(URI.create(baseUrl + "/"))
+                .header("X-GitHub-Event", "ping")
+                .header("X-Hub-Signature-256", signature)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build()),
+            new Scenario("logs", HttpRequest.newBuilder(URI.create(baseUrl + "/logs")).GET().build()),
+            new Scenario("log", HttpRequest.newBuilder(URI.create(baseUrl + "/logs/1")).GET().build()));
+
+        HttpClient client = HttpClient.newBuilder()
+            .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+        System.out.printf("%d clients, %d s per scenario, %s%n", concurrency, seconds, http2 ? "HTTP/2" : "HTTP/1.1");
+        System.out.printf("%-8s %10s %10s %10s %10s %8s%n", "scenario", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+        for (Scenario scenario : scenarios) {
+            run(client, scenario, concurrency, warmupSeconds);
+            Result result = run(client, scenario, concurrency, seconds);
+            System.out.printf("%-8s %10.0f %10.2f %10.2f %10.2f %8d%n", scenario.name(),
+                result.latenciesNanos().length / (double) seconds,
+                percentile(result.latenciesNanos(), 0.50), percentile(result.latenciesNanos(), 0.99),
+                percentile(result.latenciesNanos(), 1.0), result.errors());
+        }
+    }
+
+    private record Result(long[] latenciesNanos, long errors) {}
+
+    private static Result run(HttpClient client, Scenario scenario, int concurrency, int seconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong errors = new AtomicLong();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(clients.submit(() -> {
+                long[] latencies = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<byte[]> response = client.send(scenario.request(), HttpResponse.BodyHandlers.ofByteArray());
+                        if (response.statusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - start;
+                }
+                return Arrays.copyOf(latencies, count);
+            }));
+        }
+        List<long[]> perClient = new ArrayList<>();
+        for (Future<long[]> future : futures) {
+            perClient.add(future.get());
+        }
+        clients.shutdown();
+        long[] all = perClient.stream().flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(all);
+        return new Result(all, errors.get());
+    }
+
+    private static double percentile(long[] sortedNanos, double fraction) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(fraction * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares storing build logs plain, gzip and zstd compressed.
+ *
+ * The size of the stored log is printed during setup, the benchmarks
+ * measure how long it takes to write and to read back a whole log.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=LogCompression
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogCompressionBenchmark {
+
+    /** The generated benchmark classes live in another package, so the enum is passed by name. */
+    @Param({"none", "gzip", "zstd"})
+    public String compressionName;
+
+    /** Number of test classes in the synthetic build, about 150 bytes of output each. */
+    @Param({"20000"})
+    public int testClasses;
+
+    private LogCompression compression;
+    private Path folder;
+    private byte[] log;
+    private File storedLog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        compression = LogCompression.parse(compressionName);
+        folder = Files.createTempDirectory("log-benchmark");
+        log = syntheticMavenLog(testClasses);
+        storedLog = write(folder.resolve("1.log").toFile());
+        System.out.printf("%n%s: %d bytes stored for %d bytes of log (%.1f%%)%n", compression,
+            storedLog.length(), log.length, 100.0 * storedLog.length() / log.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder.toFile());
+    }
+
+    @Benchmark
+    public long readWholeLog() throws IOException {
+        try (InputStream in = LogCompression.open(storedLog)) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public long writeLog() throws IOException {
+        return write(folder.resolve("2.log").toFile()).length();
+    }
+
+    private File write(File plain) throws IOException {
+        Files.write(plain.toPath(), log);
+        return compression.compressFile(plain);
+    }
+
+    private static byte[] syntheticMavenLog(int testClasses) {
+        StringBuilder log = new StringBuilder("Commit ID: 0123456789abcdef\nBuild date: 2024-01-01\n");
+        log.append("[INFO] Scanning for projects...\n[INFO] Building ci-server 1.0-SNAPSHOT\n");
+        for (int i = 0; i < testClasses; i++) {
+            log.append("[INFO] Running io.github.example.module").append(i % 37).append(".Feature").append(i).append("Test\n");
+            log.append("[INFO] Tests run: ").append(1 + i % 9).append(", Failures: 0, Errors: 0, Skipped: ")
+                .append(i % 3).append(", Time elapsed: 0.").append(100 + (i * 7919) % 900).append(" s\n");
+        }
+        log.append("[INFO] BUILD SUCCESS\n");
+        return log.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares extracting PushEventInfo from a JSONObject tree with pulling
+ * the fields straight from the bytes of the payload.
+ *
+ * The payload has the shape of a GitHub push event, with the full
+ * repository, sender and commit objects. The bytes allocated per parse
+ * are printed during setup.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=PushEventParsing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PushEventParsingBenchmark {
+
+    /** Commits in the payload. GitHub sends at most 20, larger pushes come from other senders. */
+    @Param({"20", "2000"})
+    public int commits;
+
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        payload = pushPayload(commits).getBytes(StandardCharsets.UTF_8);
+        if (!tree().equals(pullParser())) {
+            throw new IllegalStateException("The parsers disagree");
+        }
+        System.out.printf("%n%d bytes of payload: %d bytes allocated by the tree, %d bytes by the pull parser%n",
+            payload.length, allocatedPerCall(this::tree), allocatedPerCall(this::pullParser));
+    }
+
+    @Benchmark
+    public PushEventInfo tree() {
+        JSONObject json = new JSONObject(new JSONTokener(
+            new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8)));
+        return PushEventInfo.fromJSON(json);
+    }
+
+    @Benchmark
+    public PushEventInfo pullParser() {
+        return PushEventInfo.fromJSON(new JsonPullParser(payload, 0, payload.length));
+    }
+
+    /**
+     * Returns the bytes the current thread allocates per call, after a warm up.
+     */
+    private static long allocatedPerCall(Callable<?> call) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int calls = 200;
+        for (int i = 0; i < calls; i++) {
+            call.call();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < calls; i++) {
+            call.call();
+        }
+        return (threads.getCurrentThreadAllocatedBytes() - before) / calls;
+    }
+
+    private static String pushPayload(int commits) {
+        JSONObject user = new JSONObject()
+            .put("login", "example").put("id", 1234567).put("node_id", "MDQ6VXNlcjEyMzQ1Njc=")
+            .put("avatar_url", "https://avatars.githubusercontent.com/u/1234567?v=4")
+            .put("type", "User").put("site_admin", false);
+        for (String link : new String[] {"html", "followers", "following", "gists", "starred",
+                "subscriptions", "organizations", "repos", "events", "received_events"}) {
+            user.put(link + "_url", "https://api.github.com/users/example/" + link);
+        }
+
+        JSONObject repository = new JSONObject()
+            .put("id", 987654321).put("name", "project").put("full_name", "example/project")
+            .put("private", false).put("owner", user).put("description", "An example project")
+            .put("fork", false).put("clone_url", "https://github.com/example/project.git")
+            .put("default_branch", "main").put("topics", new String[] {"ci", "java"})
+            .put("size", 1024).put("stargazers_count", 3).put("open_issues_count", 1);
+        for (String link : new String[] {"html", "forks", "keys", "collaborators", "teams", "hooks",
+                "issue_events", "events", "assignees", "branches", "tags", "blobs", "git_tags", "git_refs",
+                "trees", "statuses", "languages", "stargazers", "contributors", "subscribers", "subscription",
+                "commits", "git_commits", "comments", "issue_comment", "contents", "compare", "merges",
+                "archive", "downloads", "issues", "pulls", "milestones", "notifications", "labels",
+                "releases", "deployments", "git", "ssh", "svn"}) {
+            repository.put(link + "_url", "https://api.github.com/repos/example/project/" + link);
+        }
+
+        JSONObject push = new JSONObject()
+            .put("ref", "refs/heads/main")
+            .put("before", "1111111111111111111111111111111111111111")
+            .put("after", "0123456789abcdef0123456789abcdef01234567")
+            .put("repository", repository)
+            .put("pusher", new JSONObject().put("name", "example").put("email", "example@example.com"))
+            .put("sender", user)
+            .put("created", false).put("deleted", false).put("forced", false)
+            .put("compare", "https://github.com/example/project/compare/1111111...0123456");
+        JSONObject commit = null;
+        for (int i = 0; i < commits; i++) {
+            JSONObject author = new JSONObject().put("name", "Example Author")
+                .put("email", "author@example.com").put("username", "example");
+            commit = new JSONObject()
+                .put("id", String.format("%040x", i)).put("tree_id", String.format("%040x", i + 1))
+                .put("distinct", true)
+                .put("message", "Change " + i + ": update module " + (i % 17) + " and its tests")
+                .put("timestamp", "2024-01-01T12:00:00+01:00")
+                .put("url", "https://github.com/example/project/commit/" + String.format("%040x", i))
+                .put("author", author).put("committer", author)
+                .put("added", new String[] {"src/main/java/example/Module" + i + ".java"})
+                .put("removed", new String[0])
+                .put("modified", new String[] {"src/main/java/example/Common.java", "src/test/java/example/CommonTest.java"});
+            push.append("commits", commit);
+        }
+        push.put("head_commit", commit);
+        return push.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.dd2480group14.ciserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.HmacUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures webhook signature checks per second, with a new HmacUtils and
+ * a hex String comparison per delivery as before, and with SignatureVerifier.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=SignatureVerification
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureVerificationBenchmark {
+    private static final String SECRET = "benchmark-secret";
+
+    /** Size of the signed body, a ping and a large push. */
+    @Param({"512", "65536"})
+    public int bodyBytes;
+
+    /** Number of active secrets of the verifier, 2 while a secret is rotated. */
+    @Param({"1", "2"})
+    public int secrets;
+
+    private byte[] body;
+    private String header;
+    private SignatureVerifier verifier;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        body = new byte[bodyBytes];
+        new Random(1).nextBytes(body);
+        header = "sha256=" + new HmacUtils("HmacSHA256", SECRET).hmacHex(body);
+        List<String> active = new ArrayList<>();
+        for (int i = 1; i < secrets; i++) {
+            active.add("retired-secret-" + i);
+        }
+        // The matching secret is last, so every secret is computed
+        active.add(SECRET);
+        verifier = new SignatureVerifier(active);
+    }
+
+    @Benchmark
+    public boolean hmacUtilsHexEquals() {
+        return header.equals("sha256=" + new HmacUtils("HmacSHA256", SECRET).hmacHex(body));
+    }
+
+    @Benchmark
+    public boolean signatureVerifier() {
+        return verifier.verify(header, body, 0, body.length);
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.HmacUtils;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading a large form encoded push webhook as a String, the
+ * way it used to be read, with reading it through WebhookReader.
+ *
+ * The bytes allocated per webhook are printed during setup, the
+ * benchmarks measure how long it takes to verify and parse one.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=WebhookIngestion
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookIngestionBenchmark {
+    private static final String SECRET = "benchmark-secret";
+
+    /** Number of commits in the push, about 700 bytes of payload each. */
+    @Param({"20", "500"})
+    public int commits;
+
+    private byte[] body;
+    private String signature;
+    private WebhookReader reader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        body = ("payload=" + URLEncoder.encode(pushPayload(commits), StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+        signature = "sha256=" + new HmacUtils("HmacSHA256", SECRET).hmacHex(body);
+        reader = new WebhookReader(new SignatureVerifier(List.of(SECRET)), 25 * 1024 * 1024, 4);
+        System.out.printf("%n%d bytes of body: %d bytes allocated as String, %d bytes allocated streaming%n",
+            body.length, allocatedPerCall(this::readAsString), allocatedPerCall(this::readStreaming));
+    }
+
+    /**
+     * The old way: read the body into a String, sign it, URL decode it
+     * and cut off "payload=" before parsing.
+     */
+    @Benchmark
+    public JSONObject readAsString() throws IOException {
+        String text = IOUtils.toString(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+        String calculated = new HmacUtils("HmacSHA256", SECRET).hmacHex(text);
+        if (!signature.equals("sha256=" + calculated)) {
+            throw new SecurityException();
+        }
+        return new JSONObject(URLDecoder.decode(text, StandardCharsets.UTF_8).replace("payload=", ""));
+    }
+
+    @Benchmark
+    public JSONObject readStreaming() throws IOException {
+        try (WebhookReader.Payload payload = reader.read(new ByteArrayInputStream(body), body.length,
+                WebhookReader.FORM, signature)) {
+            return payload.toJSON();
+        }
+    }
+
+    /**
+     * Returns the bytes the current thread allocates per call, after a warm up.
+     */
+    private static long allocatedPerCall(Callable<?> call) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int calls = 200;
+        for (int i = 0; i < calls; i++) {
+            call.call();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < calls; i++) {
+            call.call();
+        }
+        return (threads.getCurrentThreadAllocatedBytes() - before) / calls;
+    }
+
+    private static String pushPayload(int commits) {
+        JSONObject push = new JSONObject();
+        push.put("ref", "refs/heads/main");
+        push.put("after", "0123456789abcdef0123456789abcdef01234567");
+        push.put("repository", new JSONObject().put("clone_url", "https://github.com/example/project.git"));
+        push.put("pusher", new JSONObject().put("name", "example-user"));
+        for (int i = 0; i < commits; i++) {
+            JSONObject commit = new JSONObject();
+            commit.put("id", String.format("%040x", i));
+            commit.put("message", "Change " + i + ": update module " + (i % 17) + " and its tests");
+            commit.put("timestamp", "2024-01-01T12:00:00+01:00");
+            commit.put("author", new JSONObject().put("name", "Example Author").put("email", "author@example.com"));
+            commit.put("added", new String[] {"src/main/java/example/Module" + i + ".java"});
+            commit.put("modified", new String[] {"src/main/java/example/Common.java", "src/test/java/example/CommonTest.java"});
+            commit.put("removed", new String[0]);
+            push.append("commits", commit);
+        }
+        return push.toString();
+    }
+}
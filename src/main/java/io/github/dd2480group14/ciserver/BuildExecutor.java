@@ -0,0 +1,134 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import org.json.JSONObject;
+
+/**
+ * Runs the Maven commands of builds.
+ *
+ * Every build resolves dependencies from the same local repository,
+ * which may be shared by builds running at the same time: Maven's file
+ * locks are switched on so concurrent builds do not corrupt it. Builds can
+ * run on the Maven daemon (mvnd) instead of a new mvn JVM, so plugins and
+ * the JIT stay warm between builds. The time builds spend on resolution,
+ * compiling and testing is added up to show the effect.
+ */
+class BuildExecutor {
+    /** Options that make concurrent builds lock the artifacts they write to the local repository. */
+    private static final List<String> REPOSITORY_LOCKING = List.of(
+        "-Daether.syncContext.named.factory=file-lock",
+        "-Daether.syncContext.named.nameMapper=file-gav");
+
+    private final String executable;
+    private final File localRepository;
+    private final CommandRunner commandRunner;
+
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong resolutionMillis = new AtomicLong();
+    private final AtomicLong compileMillis = new AtomicLong();
+    private final AtomicLong testMillis = new AtomicLong();
+    private final AtomicLong otherMillis = new AtomicLong();
+
+    /**
+     * Creates an executor.
+     * @param daemonCommand The mvnd command to run builds on the Maven daemon, or null to use mvn.
+     *                      If it cannot be started, mvn is used instead.
+     * @param localRepository The local repository shared by all builds, or null for Maven's default.
+     * @param commandRunner Runs the commands.
+     */
+    BuildExecutor(String daemonCommand, File localRepository, CommandRunner commandRunner) {
+        this.localRepository = localRepository == null ? null : localRepository.getAbsoluteFile();
+        this.commandRunner = commandRunner;
+        this.executable = daemonCommand != null && isAvailable(daemonCommand, commandRunner) ? daemonCommand : "mvn";
+        if (localRepository != null) {
+            this.localRepository.mkdirs();
+        }
+    }
+
+    private static boolean isAvailable(String command, CommandRunner commandRunner) {
+        try {
+            if (commandRunner.run(List.of(command, "--version"), new File(".")).succeeded()) {
+                return true;
+            }
+        } catch (IOException e) {
+            // Not installed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.err.println(command + " could not be started, builds use mvn");
+        return false;
+    }
+
+    /**
+     * Returns the command that runs a Maven command line with this executor.
+     * @param mavenCommand A command starting with "mvn".
+     */
+    List<String> commandFor(List<String> mavenCommand) {
+        List<String> command = new ArrayList<>();
+        command.add(executable);
+        command.addAll(mavenCommand.subList(1, mavenCommand.size()));
+        if (localRepository != null) {
+            command.add("-Dmaven.repo.local=" + localRepository.getPath());
+        }
+        command.addAll(REPOSITORY_LOCKING);
+        return command;
+    }
+
+    /**
+     * Runs a Maven command in the directory, streaming its output.
+     * @param directory The project directory.
+     * @param mavenCommand A command starting with "mvn".
+     * @param output Receives the terminal output.
+     * @return The exit code of Maven.
+     */
+    int run(File directory, List<String> mavenCommand, OutputStream output) throws IOException, InterruptedException {
+        return run(directory, mavenCommand, UnaryOperator.identity(), output);
+    }
+
+    /**
+     * Runs a Maven command in the directory, streaming its output.
+     * @param directory The project directory.
+     * @param mavenCommand A command starting with "mvn".
+     * @param limits Wraps the command, e.g. to run it in the cgroup of the build.
+     * @param output Receives the terminal output.
+     * @return The exit code of Maven.
+     */
+    int run(File directory, List<String> mavenCommand, UnaryOperator<List<String>> limits, OutputStream output)
+            throws IOException, InterruptedException {
+        return commandRunner.runStreaming(limits.apply(commandFor(mavenCommand)), directory, output);
+    }
+
+    /**
+     * Adds the timings of a finished build to the statistics.
+     */
+    void record(BuildOutputAnalyzer.Timings timings) {
+        builds.incrementAndGet();
+        resolutionMillis.addAndGet(timings.resolutionMillis());
+        compileMillis.addAndGet(timings.compileMillis());
+        testMillis.addAndGet(timings.testMillis());
+        otherMillis.addAndGet(timings.otherMillis());
+    }
+
+    /**
+     * Returns the executor settings and average timings per build as JSON.
+     */
+    JSONObject getStatistics() {
+        long count = builds.get();
+        JSONObject stats = new JSONObject();
+        stats.put("executable", executable);
+        stats.put("localRepository", localRepository == null ? JSONObject.NULL : localRepository.getPath());
+        stats.put("builds", count);
+        stats.put("averageResolutionMillis", count == 0 ? 0 : resolutionMillis.get() / count);
+        stats.put("averageCompileMillis", count == 0 ? 0 : compileMillis.get() / count);
+        stats.put("averageTestMillis", count == 0 ? 0 : testMillis.get() / count);
+        stats.put("averageOtherMillis", count == 0 ? 0 : otherMillis.get() / count);
+        return stats;
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.dd2480group14.ciserver;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Filter on the builds listed by GET /logs. Every criterion that is null matches all builds.
+ *
+ * @param sha    Commit SHA, or a prefix of it.
+ * @param branch Branch that was pushed to.
+ * @param author Author of the push.
+ * @param status Status of the build, e.g. "success" or "failure".
+ * @param from   First build date to include.
+ * @param to     Last build date to include.
+ */
+record BuildFilter(String sha, String branch, String author, String status, LocalDate from, LocalDate to) {
+
+    /** Filter matching every build. */
+    static final BuildFilter NONE = new BuildFilter(null, null, null, null, null, null);
+
+    /**
+     * Reads the filter from the query parameters sha, branch, author, status, from and to.
+     * @param request The GET request.
+     * @return The filter.
+     * @throws IllegalArgumentException If a date is not formatted as yyyy-MM-dd.
+     */
+    static BuildFilter fromRequest(HttpServletRequest request) throws IllegalArgumentException {
+        return new BuildFilter(
+            parameter(request, "sha"),
+            parameter(request, "branch"),
+            parameter(request, "author"),
+            parameter(request, "status"),
+            parseDate(parameter(request, "from")),
+            parseDate(parameter(request, "to"))
+        );
+    }
+
+    private static String parameter(HttpServletRequest request, String name) {
+        String value = request.getParameter(name);
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static LocalDate parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + date, e);
+        }
+    }
+
+    /**
+     * Returns true if the build matches every criterion of the filter.
+     */
+    boolean matches(BuildIndex.Entry build) {
+        if (sha != null && (build.sha() == null || !build.sha().startsWith(sha))) {
+            return false;
+        }
+        if (branch != null && !branch.equals(build.branch())) {
+            return false;
+        }
+        if (author != null && !author.equals(build.author())) {
+            return false;
+        }
+        if (status != null && !status.equals(build.status())) {
+            return false;
+        }
+        if (from != null || to != null) {
+            if (build.date() == null) {
+                return false;
+            }
+            LocalDate date;
+            try {
+                date = LocalDate.parse(build.date());
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+            if ((from != null && date.isBefore(from)) || (to != null && date.isAfter(to))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the filter as URL query parameters, e.g. "&branch=main",
+     * so it can be kept when following a link to the next page.
+     */
+    String toQueryString() {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("sha", sha);
+        parameters.put("branch", branch);
+        parameters.put("author", author);
+        parameters.put("status", status);
+        parameters.put("from", from);
+        parameters.put("to", to);
+
+        StringBuilder query = new StringBuilder();
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            if (parameter.getValue() != null) {
+                query.append("&").append(parameter.getKey()).append("=")
+                    .append(URLEncoder.encode(parameter.getValue().toString(), StandardCharsets.UTF_8));
+            }
+        }
+        return query.toString();
+    }
+}
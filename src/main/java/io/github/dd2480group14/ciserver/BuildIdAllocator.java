@@ -0,0 +1,93 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out build IDs without locking.
+ *
+ * The last allocated ID is kept in an AtomicLong and written to a counter
+ * file every few seconds and on close, so IDs are never reused even after
+ * old logs have been deleted. After a crash the counter is recovered from
+ * the highest of the counter file and the highest ID found on disk.
+ */
+class BuildIdAllocator implements Closeable {
+    private final Path counterPath;
+    private final AtomicLong lastId;
+    private final AtomicLong lastPersistedId;
+    private final ScheduledExecutorService persister = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "build-id-persister");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates an allocator continuing after the highest known ID.
+     * @param counterFile File the last allocated ID is persisted to.
+     * @param highestIdOnDisk The highest build ID that has a log or index entry.
+     * @param persistIntervalMillis How often the counter is written to disk.
+     */
+    BuildIdAllocator(File counterFile, long highestIdOnDisk, long persistIntervalMillis) throws IOException {
+        this.counterPath = counterFile.toPath();
+        long persisted = 0;
+        if (Files.exists(counterPath)) {
+            try {
+                persisted = Long.parseLong(Files.readString(counterPath, StandardCharsets.UTF_8).trim());
+            } catch (NumberFormatException e) {
+                // Cut short by a crash, the IDs on disk are used instead
+            }
+        }
+        long start = Math.max(persisted, highestIdOnDisk);
+        this.lastId = new AtomicLong(start);
+        this.lastPersistedId = new AtomicLong(persisted);
+        persister.scheduleWithFixedDelay(this::persistQuietly, persistIntervalMillis, persistIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a build ID that has not been used before.
+     */
+    long next() {
+        return lastId.incrementAndGet();
+    }
+
+    /**
+     * Writes the last allocated ID to the counter file if it changed.
+     * The file is replaced atomically so it is never seen half written.
+     */
+    synchronized void persist() throws IOException {
+        long id = lastId.get();
+        if (id == lastPersistedId.get()) {
+            return;
+        }
+        Path temporary = counterPath.resolveSibling(counterPath.getFileName() + ".tmp");
+        Files.writeString(temporary, Long.toString(id), StandardCharsets.UTF_8);
+        Files.move(temporary, counterPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastPersistedId.set(id);
+    }
+
+    private void persistQuietly() {
+        try {
+            persist();
+        } catch (IOException e) {
+            System.err.println("Could not persist build ID counter: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the periodic writes and persists the counter one last time.
+     */
+    @Override
+    public void close() throws IOException {
+        persister.shutdownNow();
+        persist();
+    }
+}
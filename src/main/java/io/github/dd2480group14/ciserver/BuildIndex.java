@@ -0,0 +1,266 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Index of the metadata of every build, so build logs can be listed
+ * and numbered without reading or even walking the log files.
+ *
+ * The index is an append-only file with one JSON object per line in the
+ * logs folder. A build is appended when it starts and again when it
+ * finishes; the last line of a build wins when the file is loaded.
+ * The file is rewritten with one line per build when builds are removed.
+ */
+class BuildIndex {
+    static final String INDEX_FILE_NAME = "builds.index";
+
+    /**
+     * Metadata of a single build.
+     * @param id             The build ID, also the name of the log file.
+     * @param sha            SHA of the built commit.
+     * @param branch         Branch that was pushed to.
+     * @param author         Author of the push.
+     * @param date           Date the build started, as yyyy-MM-dd.
+     * @param status         "running", "success", "failure", "error", "superseded" or "unknown".
+     * @param durationMillis Time the build took, 0 while it runs.
+     */
+    record Entry(long id, String sha, String branch, String author, String date,
+                 String status, long durationMillis) {
+
+        /**
+         * Returns a copy of the entry for a finished build.
+         */
+        Entry finish(String status, long durationMillis) {
+            return new Entry(id, sha, branch, author, date, status, durationMillis);
+        }
+
+        JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("sha", sha);
+            json.put("branch", branch);
+            json.put("author", author);
+            json.put("date", date);
+            json.put("status", status);
+            json.put("durationMillis", durationMillis);
+            return json;
+        }
+
+        static Entry fromJSON(JSONObject json) {
+            return new Entry(
+                json.getLong("id"),
+                json.optString("sha", null),
+                json.optString("branch", null),
+                json.optString("author", null),
+                json.optString("date", null),
+                json.optString("status", "unknown"),
+                json.optLong("durationMillis", 0)
+            );
+        }
+    }
+
+    private final File logsFolder;
+    private final Path indexPath;
+    private final NavigableMap<Long, Entry> entries = new ConcurrentSkipListMap<>();
+
+    /**
+     * Loads the index of the logs folder. Log files that are missing from
+     * the index (e.g. written before the index existed) are added by
+     * reading their header once. Builds still marked as running were cut
+     * short by a restart and are marked as errors.
+     *
+     * @param logsFolder The folder holding the build logs.
+     */
+    BuildIndex(File logsFolder) throws IOException {
+        this.logsFolder = logsFolder;
+        this.indexPath = new File(logsFolder, INDEX_FILE_NAME).toPath();
+        load();
+        addMissingLogs();
+        markInterruptedBuilds();
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    Entry entry = Entry.fromJSON(new JSONObject(line));
+                    entries.put(entry.id(), entry);
+                } catch (JSONException e) {
+                    // A line cut short by a crash, the build is recovered from its log file
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            if (channel.size() > 0 && channel.read(last, channel.size() - 1) == 1 && last.get(0) != '\n') {
+                channel.write(ByteBuffer.wrap(new byte[] {'\n'}), channel.size());
+            }
+        }
+    }
+
+    private void addMissingLogs() throws IOException {
+        String[] names = logsFolder.list((dir, name) -> LogCompression.buildIdOf(name) != null);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            String buildId = LogCompression.buildIdOf(name);
+            if (!StringUtils.isNumeric(buildId) || entries.containsKey(Long.parseLong(buildId))) {
+                continue;
+            }
+            put(readHeader(Long.parseLong(buildId), new File(logsFolder, name)));
+        }
+    }
+
+    /**
+     * Marks builds that were running when the index was last written as
+     * errors. The index is loaded before any build starts, so none of
+     * them can still be running.
+     */
+    private void markInterruptedBuilds() throws IOException {
+        for (Entry entry : list()) {
+            if ("running".equals(entry.status())) {
+                put(entry.finish("error", entry.durationMillis()));
+            }
+        }
+    }
+
+    /**
+     * Creates an entry from the "Commit ID" and "Build date" header of a
+     * (possibly compressed) log file.
+     */
+    private static Entry readHeader(long id, File logFile) throws IOException {
+        String sha = null;
+        String date = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(LogCompression.open(logFile), StandardCharsets.UTF_8))) {
+            for (int i = 0; i < 2; i++) {
+                String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                if (line.startsWith("Commit ID: ")) {
+                    sha = line.substring("Commit ID: ".length());
+                } else if (line.startsWith("Build date: ")) {
+                    date = line.substring("Build date: ".length());
+                }
+            }
+        }
+        return new Entry(id, sha, null, null, date, "unknown", 0);
+    }
+
+    /**
+     * Returns the highest build ID in the index, or 0 if it is empty.
+     */
+    long getMaxId() {
+        return entries.isEmpty() ? 0 : entries.lastKey();
+    }
+
+    /**
+     * Adds or updates the entry of a build and appends it to the index file.
+     */
+    synchronized void put(Entry entry) throws IOException {
+        Files.writeString(indexPath, entry.toJSON().toString() + "\n", StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        entries.put(entry.id(), entry);
+    }
+
+    /**
+     * Removes the entries of builds and rewrites the index file without them.
+     * The rewrite also drops the lines of builds that were superseded by a
+     * later line, so the file stays as small as the index.
+     */
+    synchronized void removeAll(Collection<Long> ids) throws IOException {
+        for (long id : ids) {
+            entries.remove(id);
+        }
+        compact();
+    }
+
+    /**
+     * Rewrites the index file with one line per build. The new file
+     * replaces the old one atomically.
+     */
+    synchronized void compact() throws IOException {
+        Path temporary = indexPath.resolveSibling(INDEX_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                writer.write(entry.toJSON().toString());
+                writer.write("\n");
+            }
+        }
+        Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the entry of a build, or null if there is none.
+     */
+    Entry get(long id) {
+        return entries.get(id);
+    }
+
+    /**
+     * Returns the entries of all builds in ascending order of build ID.
+     */
+    List<Entry> list() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Returns a page of builds matching the filter, newest first.
+     * Only the entries up to the end of the page are visited.
+     *
+     * @param filter The builds to include.
+     * @param before Only builds with a lower ID are included, or null to start at the newest build.
+     * @param limit Maximum number of builds to return.
+     * @return The matching builds in descending order of build ID.
+     */
+    List<Entry> query(BuildFilter filter, Long before, int limit) {
+        NavigableMap<Long, Entry> newestFirst = before == null
+            ? entries.descendingMap()
+            : entries.headMap(before, false).descendingMap();
+        List<Entry> page = new ArrayList<>();
+        for (Entry entry : newestFirst.values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            if (filter.matches(entry)) {
+                page.add(entry);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Returns the number of builds in the index.
+     */
+    int size() {
+        return entries.size();
+    }
+}
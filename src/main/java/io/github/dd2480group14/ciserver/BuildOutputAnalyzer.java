@@ -0,0 +1,241 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes Maven lifecycle markers in build output as it is written.
+ *
+ * The analyzer is an output stream that only looks at one line at a
+ * time, so the output never has to be kept in memory. It notices compile
+ * errors and failing tests while the build is still running and reports
+ * the first of them to a listener. The time between lines is added up
+ * per kind of work (dependency resolution, compiling, testing) based on
+ * the Maven plugin goal that is running.
+ */
+class BuildOutputAnalyzer extends OutputStream {
+    /** Lines longer than this are cut, Maven markers are always short. */
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[0-9;]*[A-Za-z]");
+    private static final Pattern TEST_COUNTS = Pattern.compile(
+        "Tests run: (\\d+), Failures: (\\d+), Errors: (\\d+), Skipped: (\\d+)");
+    /** Start of a plugin goal, e.g. "[INFO] --- compiler:3.13.0:compile (default-compile) @ app ---". */
+    private static final Pattern GOAL_START = Pattern.compile("^\\[INFO\\] --- [\\w.-]+:[\\w.-]+:([\\w-]+) ");
+
+    /**
+     * Outcome of the build as far as the analyzer has seen it.
+     */
+    enum Outcome { RUNNING, SUCCESS, FAILURE }
+
+    /**
+     * What the build spends its time on.
+     */
+    enum Activity { RESOLUTION, COMPILE, TEST, OTHER }
+
+    /**
+     * Time spent per activity.
+     */
+    record Timings(long resolutionMillis, long compileMillis, long testMillis, long otherMillis) {
+
+        /**
+         * Returns a one line summary of the timings for the build log.
+         */
+        String summary() {
+            return "Timings: resolution " + resolutionMillis + " ms, compile " + compileMillis
+                + " ms, test " + testMillis + " ms, other " + otherMillis + " ms";
+        }
+    }
+
+    private final Consumer<String> firstFailureListener;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private Outcome outcome = Outcome.RUNNING;
+    private boolean compilationFailed;
+    private String firstFailure;
+    private int testsRun;
+    private int testFailures;
+    private int testErrors;
+    private int testsSkipped;
+
+    private final LongSupplier nanoClock;
+    private final long[] activityNanos = new long[Activity.values().length];
+    private Activity activity = Activity.RESOLUTION;
+    private long lastLineNanos;
+
+    /**
+     * Creates an analyzer.
+     * @param firstFailureListener Called once with a short description when the first
+     *                             compile error or test failure is seen.
+     */
+    BuildOutputAnalyzer(Consumer<String> firstFailureListener) {
+        this(firstFailureListener, System::nanoTime);
+    }
+
+    /**
+     * Creates an analyzer with the given clock, used to time the activities.
+     */
+    BuildOutputAnalyzer(Consumer<String> firstFailureListener, LongSupplier nanoClock) {
+        this.firstFailureListener = firstFailureListener;
+        this.nanoClock = nanoClock;
+        this.lastLineNanos = nanoClock.getAsLong();
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (b == '\n') {
+            analyzeLine(line.toString(StandardCharsets.UTF_8));
+            line.reset();
+        } else if (line.size() < MAX_LINE_LENGTH) {
+            line.write(b);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            write(bytes[i]);
+        }
+    }
+
+    /**
+     * Analyzes the last line if it did not end with a newline.
+     */
+    @Override
+    public synchronized void close() {
+        if (line.size() > 0) {
+            analyzeLine(line.toString(StandardCharsets.UTF_8));
+            line.reset();
+        }
+    }
+
+    private void analyzeLine(String rawLine) {
+        String text = ANSI_ESCAPE.matcher(rawLine).replaceAll("").trim();
+        timeLine(text);
+
+        if (text.contains("BUILD SUCCESS")) {
+            outcome = Outcome.SUCCESS;
+        } else if (text.contains("BUILD FAILURE")) {
+            outcome = Outcome.FAILURE;
+        }
+
+        if (text.contains("COMPILATION ERROR")
+                || (text.startsWith("[ERROR] Failed to execute goal") && text.contains("compiler-plugin"))) {
+            compilationFailed = true;
+            reportFailure("compilation failed");
+        }
+
+        Matcher counts = TEST_COUNTS.matcher(text);
+        if (counts.find()) {
+            int failures = Integer.parseInt(counts.group(2));
+            int errors = Integer.parseInt(counts.group(3));
+            if (text.contains("Time elapsed")) {
+                // Result of a single test class, the totals follow in the summary
+                if (failures + errors > 0) {
+                    reportFailure("tests failing, build still running");
+                }
+            } else {
+                testsRun += Integer.parseInt(counts.group(1));
+                testFailures += failures;
+                testErrors += errors;
+                testsSkipped += Integer.parseInt(counts.group(4));
+            }
+        }
+    }
+
+    /**
+     * Adds the time since the last line to the activity that produced this line.
+     * Maven prints a download when it is done and a goal when it starts, so the
+     * time before a goal line still belongs to the goal before it.
+     */
+    private void timeLine(String text) {
+        long now = nanoClock.getAsLong();
+        long elapsed = now - lastLineNanos;
+        lastLineNanos = now;
+        if (text.contains("Downloading from") || text.contains("Downloaded from")) {
+            activityNanos[Activity.RESOLUTION.ordinal()] += elapsed;
+            return;
+        }
+        activityNanos[activity.ordinal()] += elapsed;
+        Matcher goal = GOAL_START.matcher(text);
+        if (goal.find()) {
+            activity = switch (goal.group(1)) {
+                case "resources", "testResources", "compile", "testCompile" -> Activity.COMPILE;
+                case "test" -> Activity.TEST;
+                default -> Activity.OTHER;
+            };
+        }
+    }
+
+    /**
+     * Returns the time spent per activity so far.
+     */
+    synchronized Timings getTimings() {
+        return new Timings(
+            TimeUnit.NANOSECONDS.toMillis(activityNanos[Activity.RESOLUTION.ordinal()]),
+            TimeUnit.NANOSECONDS.toMillis(activityNanos[Activity.COMPILE.ordinal()]),
+            TimeUnit.NANOSECONDS.toMillis(activityNanos[Activity.TEST.ordinal()]),
+            TimeUnit.NANOSECONDS.toMillis(activityNanos[Activity.OTHER.ordinal()]));
+    }
+
+    private void reportFailure(String description) {
+        if (firstFailure != null) {
+            return;
+        }
+        firstFailure = description;
+        firstFailureListener.accept(description);
+    }
+
+    /**
+     * Returns the outcome of the build based on the BUILD SUCCESS/FAILURE marker.
+     */
+    synchronized Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Returns true if the build printed BUILD SUCCESS.
+     */
+    synchronized boolean succeeded() {
+        return outcome == Outcome.SUCCESS;
+    }
+
+    /**
+     * Returns true if a compile error was seen.
+     */
+    synchronized boolean compilationFailed() {
+        return compilationFailed;
+    }
+
+    /**
+     * Returns the total number of tests run, from the test summaries.
+     */
+    synchronized int getTestsRun() {
+        return testsRun;
+    }
+
+    /**
+     * Returns the total number of failed tests and tests in error, from the test summaries.
+     */
+    synchronized int getTestsFailed() {
+        return testFailures + testErrors;
+    }
+
+    /**
+     * Returns a one line summary of the analyzed build for the build log.
+     */
+    synchronized String summary() {
+        return "Result: " + outcome.name().toLowerCase()
+            + (compilationFailed ? ", compilation failed" : "")
+            + ", tests run " + testsRun
+            + ", failures " + testFailures
+            + ", errors " + testErrors
+            + ", skipped " + testsSkipped;
+    }
+}
@@ -0,0 +1,232 @@
+package io.github.dd2480group14.ciserver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.json.JSONObject;
+
+/**
+ * Bounded queue of pending builds served by a fixed pool of worker threads.
+ *
+ * Webhooks only enqueue work here, so the HTTP thread can acknowledge
+ * the push right away while the build runs in the background. Depending
+ * on the supersede policy, a push to a branch replaces the build of the
+ * same branch that is still waiting, and may cancel the one that is running.
+ */
+class BuildQueue {
+    private final ThreadPoolExecutor executor;
+    private final Consumer<PushEventInfo> builder;
+    private final int capacity;
+    private final SupersedePolicy supersedePolicy;
+    private final BiConsumer<PushEventInfo, PushEventInfo> supersededListener;
+    private final Consumer<Thread> canceller;
+
+    /** The waiting and the running build of each repository branch. */
+    private final Map<String, QueuedBuild> waiting = new HashMap<>();
+    private final Map<String, QueuedBuild> running = new HashMap<>();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    /**
+     * Creates a new build queue.
+     * @param workers Number of builds that may run at the same time.
+     * @param capacity Number of builds that may wait for a worker.
+     * @param builder Runs a single build.
+     */
+    BuildQueue(int workers, int capacity, Consumer<PushEventInfo> builder) {
+        this(workers, capacity, builder, SupersedePolicy.NONE, (older, newer) -> {}, thread -> {});
+    }
+
+    /**
+     * Creates a new build queue that replaces superseded builds.
+     * @param workers Number of builds that may run at the same time.
+     * @param capacity Number of builds that may wait for a worker.
+     * @param builder Runs a single build. A cancelled build sees its worker thread interrupted.
+     * @param supersedePolicy What to do with older builds of a branch that gets a new push.
+     * @param supersededListener Called with the older and the newer push when a build is dropped or cancelled.
+     * @param canceller Stops the work of a cancelled build running on the given thread, e.g. its processes.
+     */
+    BuildQueue(int workers, int capacity, Consumer<PushEventInfo> builder, SupersedePolicy supersedePolicy,
+               BiConsumer<PushEventInfo, PushEventInfo> supersededListener, Consumer<Thread> canceller) {
+        if (workers < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Build queue needs at least one worker and a capacity of at least one");
+        }
+        this.builder = builder;
+        this.capacity = capacity;
+        this.supersedePolicy = supersedePolicy;
+        this.supersededListener = supersededListener;
+        this.canceller = canceller;
+        this.executor = new ThreadPoolExecutor(
+            workers, workers,
+            60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(capacity),
+            new WorkerThreadFactory()
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Enqueues a build for the given push.
+     * @param info The push to build.
+     * @return True if the build was queued, false if the queue is full.
+     */
+    boolean submit(PushEventInfo info) {
+        QueuedBuild build = new QueuedBuild(info, System.nanoTime());
+        QueuedBuild droppedBuild = null;
+        QueuedBuild cancelledBuild = null;
+        synchronized (this) {
+            if (supersedePolicy != SupersedePolicy.NONE) {
+                QueuedBuild previous = waiting.remove(build.key);
+                // remove fails if a worker took the build in the meantime
+                if (previous != null && executor.remove(previous)) {
+                    droppedBuild = previous;
+                }
+            }
+            try {
+                executor.execute(build);
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            waiting.put(build.key, build);
+            // The running build is only cancelled once its replacement is queued
+            QueuedBuild current = running.get(build.key);
+            if (supersedePolicy == SupersedePolicy.CANCEL && current != null && !current.cancelled) {
+                current.cancelled = true;
+                canceller.accept(current.worker);
+                current.worker.interrupt();
+                cancelledBuild = current;
+            }
+        }
+        accepted.incrementAndGet();
+        if (droppedBuild != null) {
+            dropped.incrementAndGet();
+            supersededListener.accept(droppedBuild.info, info);
+        }
+        if (cancelledBuild != null) {
+            cancelled.incrementAndGet();
+            supersededListener.accept(cancelledBuild.info, info);
+        }
+        return true;
+    }
+
+    private void runBuild(QueuedBuild build) {
+        synchronized (this) {
+            waiting.remove(build.key, build);
+            running.put(build.key, build);
+            build.worker = Thread.currentThread();
+        }
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - build.enqueuedAt);
+        totalWaitMillis.addAndGet(waitMillis);
+        maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+        try {
+            builder.accept(build.info);
+        } catch (RuntimeException e) {
+            System.err.println("Build of " + build.info.SHA() + " failed: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                running.remove(build.key, build);
+                // A cancel that arrived after the build ended must not hit the next build of this worker
+                Thread.interrupted();
+            }
+            completed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of builds waiting for a worker.
+     */
+    int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of builds that were turned away because the queue was full.
+     */
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the statistics of the queue as JSON, used to size
+     * the worker pool and queue capacity under load.
+     */
+    JSONObject getStatistics() {
+        long started = completed.get() + executor.getActiveCount();
+        JSONObject stats = new JSONObject();
+        stats.put("workers", executor.getMaximumPoolSize());
+        stats.put("capacity", capacity);
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("running", executor.getActiveCount());
+        stats.put("accepted", accepted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("supersedePolicy", supersedePolicy.name().toLowerCase());
+        stats.put("dropped", dropped.get());
+        stats.put("cancelled", cancelled.get());
+        stats.put("completed", completed.get());
+        stats.put("averageWaitMillis", started == 0 ? 0 : totalWaitMillis.get() / started);
+        stats.put("maxWaitMillis", maxWaitMillis.get());
+        return stats;
+    }
+
+    /**
+     * Stops accepting builds and waits for queued and running builds to finish.
+     * @param timeout How long to wait.
+     * @param unit Unit of the timeout.
+     * @return True if every build finished before the timeout.
+     */
+    boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * A build in the queue. Builds of the same repository and branch share a key.
+     */
+    private class QueuedBuild implements Runnable {
+        final PushEventInfo info;
+        final long enqueuedAt;
+        final String key;
+        /** Set when the build starts running, guarded by the queue. */
+        Thread worker;
+        boolean cancelled;
+
+        QueuedBuild(PushEventInfo info, long enqueuedAt) {
+            this.info = info;
+            this.enqueuedAt = enqueuedAt;
+            this.key = info.repoURL() + "#" + info.branch();
+        }
+
+        @Override
+        public void run() {
+            runBuild(this);
+        }
+    }
+
+    /**
+     * Names worker threads so they are recognisable in thread dumps.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "build-worker-" + count.incrementAndGet());
+        }
+    }
+}
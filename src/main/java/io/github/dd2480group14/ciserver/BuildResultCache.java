@@ -0,0 +1,165 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Outcomes of earlier builds, keyed by what determines the outcome: the
+ * tree of the commit, the build command and the JDK.
+ *
+ * A push of a commit whose tree was already built (a merge without
+ * changes, a revert, a force push back) reuses the stored outcome
+ * instead of building again. The least recently used results are
+ * evicted when the cache is full, and the cache is written to a file
+ * in the logs folder so it survives restarts.
+ */
+class BuildResultCache {
+    static final String CACHE_FILE_NAME = "results.cache";
+
+    /**
+     * Outcome of a finished build.
+     * @param state       The commit status that was posted, "success" or "failure".
+     * @param description The description of the commit status.
+     * @param buildId     The build whose log holds the output.
+     */
+    record CachedResult(String state, String description, long buildId) {}
+
+    private final Path cachePath;
+    private final int maxEntries;
+    private final LinkedHashMap<String, CachedResult> results = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Loads the cache of the logs folder.
+     * @param logsFolder The folder the cache file is kept in.
+     * @param maxEntries Number of results kept, 0 disables the cache.
+     */
+    BuildResultCache(File logsFolder, int maxEntries) throws IOException {
+        this.cachePath = new File(logsFolder, CACHE_FILE_NAME).toPath();
+        this.maxEntries = maxEntries;
+        if (maxEntries > 0 && Files.exists(cachePath)) {
+            load();
+        }
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(cachePath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    JSONObject json = new JSONObject(line);
+                    results.put(json.getString("key"), new CachedResult(
+                        json.getString("state"), json.getString("description"), json.getLong("buildId")));
+                } catch (JSONException e) {
+                    // Skipped, the build runs again
+                }
+            }
+        }
+        evictOverflow();
+    }
+
+    /**
+     * Returns the cache key of a build.
+     * @param treeHash The hash of the tree of the built commit.
+     * @param command The build command.
+     * @param jdk The JDK the build runs on.
+     */
+    static String keyOf(String treeHash, List<String> command, String jdk) {
+        return DigestUtils.sha256Hex(treeHash + "\n" + String.join(" ", command) + "\n" + jdk);
+    }
+
+    /**
+     * Returns true if results are cached at all.
+     */
+    boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Returns the stored result of the key, or null on a miss.
+     */
+    synchronized CachedResult get(String key) {
+        CachedResult result = isEnabled() ? results.get(key) : null;
+        (result == null ? misses : hits).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Stores the result of a build and writes the cache file.
+     */
+    synchronized void put(String key, CachedResult result) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        results.put(key, result);
+        evictOverflow();
+        save();
+    }
+
+    /**
+     * Removes a result, e.g. because its log no longer exists.
+     */
+    synchronized void remove(String key) throws IOException {
+        if (results.remove(key) != null) {
+            save();
+        }
+    }
+
+    private void evictOverflow() {
+        var iterator = results.entrySet().iterator();
+        while (results.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Rewrites the cache file, least recently used first, and replaces the old one atomically.
+     */
+    private void save() throws IOException {
+        Path temporary = cachePath.resolveSibling(CACHE_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, CachedResult> entry : results.entrySet()) {
+                JSONObject json = new JSONObject();
+                json.put("key", entry.getKey());
+                json.put("state", entry.getValue().state());
+                json.put("description", entry.getValue().description());
+                json.put("buildId", entry.getValue().buildId());
+                writer.write(json.toString());
+                writer.write("\n");
+            }
+        }
+        Files.move(temporary, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the hit and miss counters of the cache as JSON.
+     */
+    synchronized JSONObject getStatistics() {
+        JSONObject stats = new JSONObject();
+        stats.put("entries", results.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+}
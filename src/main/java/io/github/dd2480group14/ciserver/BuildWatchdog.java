@@ -0,0 +1,122 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * Stops builds that run longer than the build timeout, so a hung test
+ * suite cannot occupy a build worker forever.
+ *
+ * A build that times out is stopped like a cancelled build: its worker
+ * thread is interrupted and the process it waits for is killed together
+ * with the processes it started.
+ */
+class BuildWatchdog implements Closeable {
+    private final long timeoutMillis;
+    private final CommandRunner commandRunner;
+    private final AtomicLong timedOut = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "build-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The time limit of a single build, ended with close when the build is done.
+     */
+    class Deadline implements AutoCloseable {
+        private final Thread thread;
+        private ScheduledFuture<?> timer;
+        private boolean done;
+        private boolean expired;
+
+        private Deadline(Thread thread) {
+            this.thread = thread;
+        }
+
+        private synchronized void expire() {
+            if (done) {
+                return;
+            }
+            expired = true;
+            timedOut.incrementAndGet();
+            // Interrupt before killing, so the worker sees the interrupt when the
+            // process exits instead of taking the killed build for a failed one.
+            // The build log is not closed by the interrupt and still takes the reason.
+            thread.interrupt();
+            commandRunner.cancel(thread);
+        }
+
+        /**
+         * Returns true if the build was stopped because it ran out of time.
+         */
+        synchronized boolean hasExpired() {
+            return expired;
+        }
+
+        /**
+         * Ends the deadline, the build is no longer stopped after this returns.
+         */
+        @Override
+        public synchronized void close() {
+            done = true;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Creates a watchdog.
+     * @param timeoutMillis Maximum time a build may run, 0 for no limit.
+     * @param commandRunner Runs the commands of builds, used to kill them.
+     */
+    BuildWatchdog(long timeoutMillis, CommandRunner commandRunner) {
+        this.timeoutMillis = timeoutMillis;
+        this.commandRunner = commandRunner;
+    }
+
+    /**
+     * Starts the deadline of a build running on the current thread.
+     */
+    Deadline start() {
+        Deadline deadline = new Deadline(Thread.currentThread());
+        if (timeoutMillis > 0) {
+            synchronized (deadline) {
+                deadline.timer = scheduler.schedule(deadline::expire, timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return deadline;
+    }
+
+    /**
+     * Returns the maximum time a build may run in milliseconds, 0 if there is no limit.
+     */
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Returns the timeout and the number of builds that ran out of time as JSON.
+     */
+    JSONObject getStatistics() {
+        JSONObject stats = new JSONObject();
+        stats.put("timeoutMillis", timeoutMillis);
+        stats.put("timedOut", timedOut.get());
+        return stats;
+    }
+
+    /**
+     * Stops the timers, builds still running are no longer limited.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
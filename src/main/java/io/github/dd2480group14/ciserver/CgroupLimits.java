@@ -0,0 +1,152 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the CPU and memory of builds with Linux cgroup v2, so one
+ * runaway build cannot starve the others on a shared host.
+ *
+ * Every build gets its own cgroup below a parent cgroup that the server
+ * is allowed to write to (e.g. a delegated systemd slice). The commands
+ * of a build are started through a shell that moves itself into the
+ * cgroup before running the command, so every process the build starts
+ * is limited and can be killed at once when the build ends.
+ */
+class CgroupLimits {
+    /** Length of the CPU period in microseconds, the quota is a share of it. */
+    private static final long CPU_PERIOD_MICROS = 100_000;
+    /** How long killed processes may take to exit before the cgroup is given up. */
+    private static final long KILL_TIMEOUT_MILLIS = 5000;
+
+    private final Path parent;
+    private final int cpuMillicores;
+    private final long memoryBytes;
+
+    /**
+     * The cgroup of a single build, removed with close.
+     */
+    class Group implements Closeable {
+        private final Path path;
+
+        private Group(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Returns the command wrapped so that it runs inside the cgroup.
+         */
+        List<String> wrap(List<String> command) {
+            List<String> wrapped = new ArrayList<>(List.of("sh", "-c",
+                "echo $$ > \"$0\" && exec \"$@\"", path.resolve("cgroup.procs").toString()));
+            wrapped.addAll(command);
+            return wrapped;
+        }
+
+        /**
+         * Kills the processes left in the cgroup, waits for them to exit and removes it.
+         * Also runs on an interrupted thread, whose interrupt is kept.
+         */
+        @Override
+        public void close() {
+            // File operations fail on an interrupted thread, and a cancelled build must still clean up
+            boolean interrupted = Thread.interrupted();
+            try {
+                Path kill = path.resolve("cgroup.kill");
+                if (Files.exists(kill)) {
+                    Files.writeString(kill, "1");
+                    interrupted |= awaitEmpty();
+                }
+                Files.delete(path);
+            } catch (IOException e) {
+                System.err.println("Could not remove cgroup " + path + ": " + e.getMessage());
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Waits until cgroup.events reports that no process is left, since the
+         * kill is asynchronous and a cgroup with processes can not be removed.
+         * @return True if the thread was interrupted while waiting.
+         */
+        private boolean awaitEmpty() throws IOException {
+            Path events = path.resolve("cgroup.events");
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(KILL_TIMEOUT_MILLIS);
+            boolean interrupted = false;
+            while (Files.exists(events) && !Files.readAllLines(events).contains("populated 0")) {
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("processes still running " + KILL_TIMEOUT_MILLIS + " ms after cgroup.kill");
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            return interrupted;
+        }
+    }
+
+    /**
+     * Creates limits for builds.
+     * @param parent        The cgroup the build cgroups are created in.
+     * @param cpuMillicores CPU time a build may use, 1000 for one core, 0 for no limit.
+     * @param memoryBytes   Memory a build may use, 0 for no limit.
+     */
+    CgroupLimits(File parent, int cpuMillicores, long memoryBytes) {
+        this.parent = parent.toPath();
+        this.cpuMillicores = cpuMillicores;
+        this.memoryBytes = memoryBytes;
+        enableControllers();
+    }
+
+    /**
+     * The cpu and memory controllers must be enabled in the parent for its children to use them.
+     */
+    private void enableControllers() {
+        Path subtreeControl = parent.resolve("cgroup.subtree_control");
+        try {
+            Files.writeString(subtreeControl, "+cpu +memory");
+        } catch (IOException e) {
+            System.err.println("Could not enable cpu and memory controllers in " + parent + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the cgroup of a build and sets its limits.
+     * @param name Name of the cgroup, e.g. "build-12".
+     */
+    Group create(String name) throws IOException {
+        Path path = parent.resolve(name);
+        Files.createDirectories(path);
+        Group group = new Group(path);
+        try {
+            if (cpuMillicores > 0) {
+                long quota = CPU_PERIOD_MICROS * cpuMillicores / 1000;
+                Files.writeString(path.resolve("cpu.max"), quota + " " + CPU_PERIOD_MICROS, StandardCharsets.UTF_8);
+            }
+            if (memoryBytes > 0) {
+                Files.writeString(path.resolve("memory.max"), Long.toString(memoryBytes), StandardCharsets.UTF_8);
+                Path swap = path.resolve("memory.swap.max");
+                if (Files.exists(swap)) {
+                    // Otherwise the build swaps instead of being stopped at the limit
+                    Files.writeString(swap, "0", StandardCharsets.UTF_8);
+                }
+            }
+        } catch (IOException e) {
+            group.close();
+            throw e;
+        }
+        return group;
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.dd2480group14.ciserver;
+
+/**
+ * How the repository of a push is fetched into a build workspace.
+ */
+enum CloneMode {
+    /** Clone the whole repository from the remote for every build. */
+    FULL,
+    /** Fetch into a cached bare mirror and clone the workspace from it. */
+    MIRROR,
+    /** Fetch only the pushed commit at depth 1 into an empty repository. */
+    SHALLOW;
+
+    /**
+     * Parses a clone mode name, ignoring case.
+     * @throws IllegalArgumentException If the name is not a clone mode.
+     */
+    static CloneMode parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown clone mode: " + name, e);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs external commands such as git and mvn and collects their output.
+ *
+ * The process started by each thread is remembered, so a cancelled
+ * build can be stopped by killing the process its worker waits for.
+ * A command whose process was killed that way ends with an
+ * InterruptedException, also if its thread is interrupted only afterwards.
+ */
+class CommandRunner {
+    private final Map<Thread, Process> running = new ConcurrentHashMap<>();
+    private final Set<Process> cancelled = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Outcome of a finished command.
+     * @param exitCode Exit code of the process.
+     * @param output   Combined standard output and standard error.
+     */
+    record Result(int exitCode, String output) {
+
+        /**
+         * Returns true if the command exited with code 0.
+         */
+        boolean succeeded() {
+            return exitCode == 0;
+        }
+    }
+
+    /**
+     * Executes command in specificed directory
+     * @param command The command to run.
+     * @param directory The directory to run it in.
+     * @return The exit code and the terminal output of the command.
+     */
+    Result run(List<String> command, File directory) throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(directory);
+        processBuilder.redirectErrorStream(true);
+        Process process = start(processBuilder);
+
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            StringBuilder stringBuilder = new StringBuilder();
+            String line;
+            boolean firstLine = true;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (!firstLine) {
+                        stringBuilder.append("\n");
+                }
+                stringBuilder.append(line);
+                firstLine = false;
+            }
+            int exitCode = waitFor(process);
+            return new Result(exitCode, stringBuilder.toString());
+        } catch (IOException e) {
+            throw cancelledOr(e, process);
+        } finally {
+            running.remove(Thread.currentThread(), process);
+            cancelled.remove(process);
+            process.destroy();
+        }
+    }
+
+    /**
+     * Executes command in specified directory and streams its output
+     * to the given stream as it is produced, without keeping it in memory.
+     * @param command The command to run.
+     * @param directory The directory to run it in.
+     * @param output Receives the combined standard output and standard error.
+     * @return The exit code of the command.
+     */
+    int runStreaming(List<String> command, File directory, OutputStream output) throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(directory);
+        processBuilder.redirectErrorStream(true);
+        Process process = start(processBuilder);
+
+        try (InputStream inputStream = process.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            return waitFor(process);
+        } catch (IOException e) {
+            throw cancelledOr(e, process);
+        } finally {
+            running.remove(Thread.currentThread(), process);
+            cancelled.remove(process);
+            process.destroy();
+        }
+    }
+
+    /**
+     * Starts the process and registers it for the current thread. If the thread was
+     * interrupted before the process could be registered, the process is killed right
+     * away, so its output ends and the caller's waitFor throws InterruptedException.
+     */
+    private Process start(ProcessBuilder processBuilder) throws IOException, InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Cancelled before " + processBuilder.command().get(0) + " was started");
+        }
+        Process process = processBuilder.start();
+        running.put(Thread.currentThread(), process);
+        if (Thread.currentThread().isInterrupted()) {
+            destroyTree(process);
+        }
+        return process;
+    }
+
+    /**
+     * Waits for the process to exit. A killed process may have exited before
+     * waitFor is called, which then returns without checking the interrupt,
+     * so an interrupted thread or a cancelled process is checked here.
+     */
+    private int waitFor(Process process) throws InterruptedException {
+        int exitCode = process.waitFor();
+        if (wasCancelled(process)) {
+            throw new InterruptedException("Command cancelled");
+        }
+        return exitCode;
+    }
+
+    /**
+     * Killing a process closes its output under the reader, so a read that
+     * fails on an interrupted thread or a cancelled process means the command was cancelled.
+     */
+    private IOException cancelledOr(IOException e, Process process) throws InterruptedException {
+        if (wasCancelled(process)) {
+            throw new InterruptedException("Command cancelled");
+        }
+        return e;
+    }
+
+    /**
+     * Returns true, and clears the interrupt, if the current thread was
+     * interrupted or the process was killed by cancel.
+     */
+    private boolean wasCancelled(Process process) {
+        boolean interrupted = Thread.interrupted();
+        return cancelled.remove(process) || interrupted;
+    }
+
+    /**
+     * Kills the process the given thread is waiting for, including the
+     * processes it started (e.g. the JVMs forked by mvn for tests).
+     * @param thread The thread that runs the command.
+     */
+    void cancel(Thread thread) {
+        Process process = running.get(thread);
+        if (process != null) {
+            cancelled.add(process);
+            destroyTree(process);
+            if (running.get(thread) != process) {
+                // The command ended before it was marked
+                cancelled.remove(process);
+            }
+        }
+    }
+
+    private static void destroyTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /**
+     * Executes command in specified directory and fails if it does not succeed.
+     * @param command The command to run.
+     * @param directory The directory to run it in.
+     * @return The terminal output of the command.
+     * @throws IOException If the command exits with a non-zero exit code.
+     */
+    String runChecked(List<String> command, File directory) throws IOException, InterruptedException {
+        Result result = run(command, directory);
+        if (!result.succeeded()) {
+            throw new IOException(String.join(" ", command) + " exited with code " + result.exitCode() + ": " + result.output());
+        }
+        return result.output();
+    }
+}
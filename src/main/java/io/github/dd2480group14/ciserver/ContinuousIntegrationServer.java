@@ -1,35 +1,41 @@
 package io.github.dd2480group14.ciserver;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URLDecoder;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 
-import javax.servlet.ServletException;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
-import org.apache.commons.codec.digest.HmacUtils;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringUtils;
-import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.ee10.servlet.ServletContextHandler;
+import org.eclipse.jetty.ee10.servlet.ServletHolder;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -38,27 +44,46 @@ import io.github.cdimascio.dotenv.Dotenv;
 /** 
  *A ContinuousIntegrationServer which acts as webhook.
  */
-public class ContinuousIntegrationServer extends AbstractHandler {
+public class ContinuousIntegrationServer extends HttpServlet {
+    /** Status code for rejected webhooks, missing from the servlet constants. */
+    static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final List<String> TEST_COMMAND = List.of("mvn", "clean", "test");
+    private static final String BUILD_ID_FILE_NAME = "last-build-id";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final long BUILD_ID_PERSIST_INTERVAL_MILLIS = 5000;
+    /** Identifies the JDK mvn runs on, part of the build result cache key. */
+    private static final String BUILD_JDK = System.getProperty("java.vendor") + " "
+        + System.getProperty("java.version") + " " + System.getenv("JAVA_HOME");
+
     private final File logsFolder;
     private final GitHubApiClient githubClient;
-    private final String signature;
+    private final WebhookReader webhookReader;
+    private final BuildQueue buildQueue;
+    private final CommandRunner commandRunner = new CommandRunner();
+    private final RepositoryFetcher repositoryFetcher;
+    private final WorkspaceManager workspaceManager;
+    private final Map<String, LiveBuildLog> liveLogs = new ConcurrentHashMap<>();
+    private final boolean earlyFailureStatus;
+    private final BuildIndex buildIndex;
+    private final BuildIdAllocator idAllocator;
+    private final LogCompression logCompression;
+    private final LogRetention logRetention;
+    private final BuildResultCache resultCache;
+    private final DeliveryDeduplicator deduplicator;
+    /** Plans incremental builds, null if every build is clean. */
+    private final MavenBuildPlanner buildPlanner;
+    private final BuildExecutor buildExecutor;
+    private final PipelineRunner pipelineRunner;
+    private final BuildWatchdog watchdog;
+    private final CgroupLimits cgroupLimits;
     
     /**
      * Constructs a new ContinuousIntegrationServer instance with the default logs folder path.
      */
     public ContinuousIntegrationServer(String signature, String githubToken, File logsFolder) {
-        this.logsFolder = logsFolder;
-
-
-        if (!logsFolder.exists()) {
-            logsFolder.mkdir();
-        }
-
-        if (logsFolder.isFile()) {
-            throw new IllegalArgumentException("logsFolder can not be an already existing file.");
-        }
-		this.signature = signature;
-        githubClient = new GitHubApiClient(githubToken);
+        this(signature, logsFolder, new GitHubApiClient(githubToken));
     }
 
 
@@ -66,6 +91,14 @@ public class ContinuousIntegrationServer extends AbstractHandler {
      * Constructs a new ContinuousIntegrationServer instance
      */
     public ContinuousIntegrationServer(String signature, File logsFolder, GitHubApiClient githubClient) {
+        this(signature, logsFolder, githubClient, ServerConfig.defaults());
+    }
+
+
+    /**
+     * Constructs a new ContinuousIntegrationServer instance with the given configuration.
+     */
+    ContinuousIntegrationServer(String signature, File logsFolder, GitHubApiClient githubClient, ServerConfig config) {
         this.logsFolder = logsFolder;
 
 
@@ -76,8 +109,51 @@ public class ContinuousIntegrationServer extends AbstractHandler {
         if (logsFolder.isFile()) {
             throw new IllegalArgumentException("logsFolder can not be an already existing file.");
         }
-		this.signature = signature;
+        List<String> secrets = new ArrayList<>(List.of(signature));
+        secrets.addAll(config.webhookAdditionalSecrets());
+        this.webhookReader = new WebhookReader(new SignatureVerifier(secrets),
+            config.webhookMaxBodyBytes(), config.webhookBufferPoolSize());
         	this.githubClient = githubClient;
+        try {
+            this.buildIndex = new BuildIndex(logsFolder);
+            this.idAllocator = new BuildIdAllocator(new File(logsFolder, BUILD_ID_FILE_NAME),
+                buildIndex.getMaxId(), BUILD_ID_PERSIST_INTERVAL_MILLIS);
+            this.resultCache = new BuildResultCache(logsFolder, config.buildResultCacheMaxEntries());
+            this.deduplicator = new DeliveryDeduplicator(logsFolder, config.webhookDedupMaxEntries(),
+                TimeUnit.HOURS.toMillis(config.webhookDedupTtlHours()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load build index", e);
+        }
+        this.buildQueue = new BuildQueue(config.buildWorkers(), config.buildQueueCapacity(), this::runBuild,
+            config.supersedePolicy(), this::markSuperseded, commandRunner::cancel);
+        CloneMode cloneMode = config.cloneMode();
+        try {
+            GitMirrorCache mirrorCache = cloneMode == CloneMode.MIRROR
+                ? new GitMirrorCache(config.gitCacheFolder(logsFolder), config.gitCacheMaxBytes(), commandRunner)
+                : null;
+            this.repositoryFetcher = new RepositoryFetcher(cloneMode, mirrorCache,
+                config.shallowFilter(), config.sparsePaths(), commandRunner, config.incrementalBuilds(), logsFolder);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create git cache folder or load fetch baselines", e);
+        }
+        this.workspaceManager = new WorkspaceManager(config.workspaceQuotaBytes(), config.workspaceReuse());
+        this.earlyFailureStatus = config.earlyFailureStatus();
+        this.buildPlanner = config.incrementalBuilds() ? new MavenBuildPlanner(commandRunner) : null;
+        this.buildExecutor = new BuildExecutor(config.mavenDaemonCommand(), config.mavenLocalRepository(), commandRunner);
+        this.pipelineRunner = new PipelineRunner(commandRunner, buildExecutor::commandFor, config.pipelineMaxParallel());
+        this.watchdog = new BuildWatchdog(TimeUnit.MINUTES.toMillis(config.buildTimeoutMinutes()), commandRunner);
+        this.cgroupLimits = config.buildCgroup() == null ? null : new CgroupLimits(config.buildCgroup(),
+            config.buildCpuLimitMillicores(), config.buildMemoryLimitMegabytes() * 1024 * 1024);
+        this.logCompression = config.logCompression();
+        if (logCompression != LogCompression.NONE) {
+            long lastOldBuild = buildIndex.getMaxId();
+            Thread compactor = new Thread(() -> compressExistingLogs(lastOldBuild), "log-compactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+        this.logRetention = new LogRetention(logsFolder, buildIndex, config.logRetention(),
+            id -> liveLogs.containsKey(Long.toString(id)));
+        logRetention.start(config.logRetentionIntervalMinutes());
     }
     
 
@@ -89,29 +165,37 @@ public class ContinuousIntegrationServer extends AbstractHandler {
     }
     
 
+    /**
+     * Handles incoming HTTP requests, the servlet is mapped to every path.
+     */
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response)
+        throws IOException, ServletException
+    {
+        String target = request.getPathInfo();
+        handle(target == null ? "/" : target, request, response);
+    }
+
     /**
      * Handles incoming HTTP requests 
      * @param target                target of the request.
-     * @param baseRequest           Request to signal to Jetty that the request has been processed
      * @param request               HttpServletRequest request containing headers and payload.
      * @param response              HttpServletResponse reponse acknowledge webhook. 
      */
     public void handle(String target,
-                       Request baseRequest,
                        HttpServletRequest request,
                        HttpServletResponse response) 
         throws IOException, ServletException
     {
         response.setContentType("text/html;charset=utf-8");
-        baseRequest.setHandled(true);
 
         switch (request.getMethod().toUpperCase()) {
             case "POST":
-                handlePost(target, baseRequest, request, response);
+                handlePost(target, request, response);
                 break;
 
             case "GET":
-                handleGet(target, baseRequest, request, response);
+                handleGet(target, request, response);
                 break;
 
             default:
@@ -123,15 +207,17 @@ public class ContinuousIntegrationServer extends AbstractHandler {
 
     /**
      * Handles incoming webhook notifications from Github 
-     * by parsing the JSON payload and trigger the build process.
+     * by parsing the JSON payload and queueing the build.
+     * The webhook is acknowledged with 202 Accepted before the build runs,
+     * or rejected with 429 Too Many Requests if the build queue is full.
+     * A redelivery, or a push of a commit that was already scheduled,
+     * is acknowledged with 200 OK without building again.
      * 
      * @param target                target of the request.
-     * @param baseRequest           
      * @param request               HttpServletRequest request containing headers and payload.
      * @param response              HttpServletResponse reponse acknowledge webhook. 
      */
     private void handlePost(String target,
-                       Request baseRequest,
                        HttpServletRequest request,
                        HttpServletResponse response) 
         throws IOException, ServletException
@@ -139,32 +225,28 @@ public class ContinuousIntegrationServer extends AbstractHandler {
         try {
             String githubEvent = request.getHeader("X-GitHub-Event");
             String githubSignature = request.getHeader("X-Hub-Signature-256");
-            String body = IOUtils.toString(request.getReader());
-			validateGithubSignature(githubSignature, body);
-            String urlDecoded = URLDecoder.decode(body, StandardCharsets.UTF_8);
-            String jsonStr = urlDecoded.replace("payload=", "");
-            JSONObject jsonObject = new JSONObject(jsonStr);
-
-            if ("push".equals(githubEvent)) {
-                PushEventInfo info = PushEventInfo.fromJSON(jsonObject);
-                response.setStatus(HttpServletResponse.SC_OK);
-                response.getWriter().println("Push event recieved.");
+            PushEventInfo info = null;
+            try (WebhookReader.Payload payload = webhookReader.read(request.getInputStream(),
+                    request.getContentLengthLong(), request.getContentType(), githubSignature)) {
+                if ("push".equals(githubEvent)) {
+                    info = PushEventInfo.fromJSON(payload.parser());
+                }
+            }
 
-                File gitDirectory = gitClone(info.repoURL(), info.SHA());
-                String testLog = runTests(gitDirectory);
-				String description;
-                storeBuildLog(testLog, info.SHA());
-				String state;
-				if (mvnTestOutputSucceeded(testLog)) {
-							state = "success";
-							description = "mvn test succeeded";
-				} else {
-							state = "failure";
-							description = "mvn test failed";
-				}
-				githubClient.updateCommitStatus(info.repoURL(), info.SHA(), state, description, null);
-
-                // TO DO: Run CI Pipeline
+            if (info != null) {
+                String deliveryId = request.getHeader("X-GitHub-Delivery");
+                if (deduplicator.claim(deliveryId, info.repoURL(), info.SHA()) != DeliveryDeduplicator.Result.NEW) {
+                    response.setStatus(HttpServletResponse.SC_OK);
+                    response.getWriter().println("Duplicate delivery, build already scheduled. Event ignored.");
+                    return;
+                }
+                if (!buildQueue.submit(info)) {
+                    deduplicator.release(info.repoURL(), info.SHA());
+                    response.sendError(SC_TOO_MANY_REQUESTS);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_ACCEPTED);
+                response.getWriter().println("Push event recieved.");
 
             } else {
                 response.setStatus(HttpServletResponse.SC_OK);
@@ -172,53 +254,382 @@ public class ContinuousIntegrationServer extends AbstractHandler {
             }
         } catch (SecurityException e) {
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
-        } catch (IllegalArgumentException | JSONException | InterruptedException e) {
+        } catch (IllegalArgumentException | JSONException e) {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST);
         } catch (Exception e) {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST);
         }
     }
 
-	private boolean mvnTestOutputSucceeded(String testLog) {
-		if (testLog.contains("BUILD SUCCESS")) {
-			return true;
-		} else {
-			return false;
-		}
-	}
+    /**
+     * Clones, builds and tests the pushed commit, streams the output
+     * to the build log and reports the result as a commit status.
+     * Runs on a build queue worker. A build that runs out of time is
+     * stopped and reported as "error".
+     *
+     * @param info The push to build.
+     */
+    void runBuild(PushEventInfo info) {
+        WorkspaceManager.Workspace workspace = null;
+        LiveBuildLog buildLog = null;
+        CgroupLimits.Group cgroup = null;
+        long startTime = System.currentTimeMillis();
+        String status = "error";
+        BuildWatchdog.Deadline deadline = watchdog.start();
+        try {
+            buildLog = startBuildLog(info);
+            if (cgroupLimits != null) {
+                cgroup = cgroupLimits.create("build-" + buildLog.getBuildId());
+            }
+            UnaryOperator<List<String>> limits = cgroup == null ? UnaryOperator.identity() : cgroup::wrap;
+            String treeHash = repositoryFetcher.treeHashBeforeFetch(info.repoURL(), info.SHA());
+            BuildResultCache.CachedResult cached = findCachedResult(treeHash);
+            if (cached != null) {
+                status = reuseCachedResult(info, treeHash, cached, buildLog);
+                return;
+            }
+            workspace = workspaceManager.acquire(info.repoURL());
+            RepositoryFetcher.Result fetch = repositoryFetcher.fetch(info.repoURL(), info.SHA(), workspace.directory());
+            buildLog.writeLine(fetch.summary());
+            if (treeHash == null) {
+                treeHash = repositoryFetcher.treeHashOf(fetch.directory());
+                cached = findCachedResult(treeHash);
+                if (cached != null) {
+                    status = reuseCachedResult(info, treeHash, cached, buildLog);
+                    return;
+                }
+            }
+            Pipeline pipeline = Pipeline.load(fetch.directory());
+            if (pipeline != null) {
+                status = runPipeline(info, pipeline, fetch.directory(), limits, buildLog);
+                cacheResult(treeHash, pipelineCommand(), new BuildResultCache.CachedResult(status,
+                    "pipeline " + (status.equals("success") ? "succeeded" : "failed"), Long.parseLong(buildLog.getBuildId())));
+                return;
+            }
+            BuildOutputAnalyzer analyzer = new BuildOutputAnalyzer(reason -> {
+                if (earlyFailureStatus) {
+                    githubClient.updateCommitStatus(info.repoURL(), info.SHA(), "failure", reason, null);
+                }
+            });
+            MavenBuildPlanner.Plan plan = new MavenBuildPlanner.Plan(TEST_COMMAND, List.of(), "clean build");
+            if (buildPlanner != null) {
+                plan = buildPlanner.plan(fetch.directory(), info.changes());
+                buildLog.writeLine(plan.summary());
+            }
+            int exitCode = runTests(fetch.directory(), plan.command(), limits,
+                new TeeOutputStream(buildLog.asOutputStream(), analyzer));
+            if (buildPlanner != null) {
+                buildPlanner.markBuilt(fetch.directory(), info.SHA());
+            }
+            analyzer.close();
+            buildLog.writeLine(analyzer.summary());
+            buildLog.writeLine(analyzer.getTimings().summary());
+            buildExecutor.record(analyzer.getTimings());
+			String description;
+			String state;
+			if (exitCode == 0 && analyzer.succeeded()) {
+						state = "success";
+						description = "mvn test succeeded";
+			} else {
+						state = "failure";
+						description = "mvn test failed";
+			}
+			githubClient.updateCommitStatus(info.repoURL(), info.SHA(), state, description, null);
+            status = state;
+            if (plan.isComplete()) {
+                // A build restricted to some modules says nothing about the others
+                cacheResult(treeHash, buildExecutor.commandFor(plan.command()),
+                    new BuildResultCache.CachedResult(state, description, Long.parseLong(buildLog.getBuildId())));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            if (deadline.hasExpired()) {
+                reportTimeout(info, buildLog);
+            } else {
+                writeToBuildLog(buildLog, "Build could not be run: " + e.getMessage());
+                githubClient.updateCommitStatus(info.repoURL(), info.SHA(), "error", "build could not be run", null);
+            }
+        } catch (InterruptedException e) {
+            if (deadline.hasExpired()) {
+                reportTimeout(info, buildLog);
+            } else {
+                // Otherwise builds are only interrupted when a newer push to the branch cancels them
+                writeToBuildLog(buildLog, "Build cancelled, superseded by a newer push");
+                status = "superseded";
+            }
+        } finally {
+            deadline.close();
+            if (cgroup != null) {
+                cgroup.close();
+            }
+            closeBuildLog(buildLog);
+            finishBuild(buildLog, status, System.currentTimeMillis() - startTime);
+            if (status.equals("success") || status.equals("failure")) {
+                deduplicator.complete(info.repoURL(), info.SHA());
+            } else if (!status.equals("superseded")) {
+                // Superseded builds were released by markSuperseded
+                deduplicator.release(info.repoURL(), info.SHA());
+            }
+            releaseWorkspace(workspace);
+        }
+    }
 
     /**
-     * Validates the incoming github webhook signature of the
-     * payload and throws SecurityException if invalid
+     * Runs the stages of the repository's pipeline and reports every stage as its
+     * own commit status context, e.g. "ci/dd2480-group14/test", next to the overall status.
+     * @return The status of the build.
      */
-    private void validateGithubSignature(String githubSignature, String body) throws SecurityException, IllegalArgumentException {
-		if (githubSignature == null || githubSignature.isEmpty()) {
-			throw new IllegalArgumentException("Github Signature cant be null");
-		}
-		String calculatedHmac = new HmacUtils("HmacSHA256", signature).hmacHex(body);
-		boolean signaturesAreEqual = githubSignature.equals("sha256=" + calculatedHmac);
-		if (!signaturesAreEqual) {
-			throw new SecurityException("Signature does not match webhook");
-		}
+    private String runPipeline(PushEventInfo info, Pipeline pipeline, File directory,
+                               UnaryOperator<List<String>> limits, LiveBuildLog buildLog)
+            throws IOException, InterruptedException {
+        List<String> names = pipeline.stages().stream().map(Pipeline.Stage::name).toList();
+        buildLog.writeLine("Pipeline: " + String.join(", ", names));
+        List<PipelineRunner.StageResult> results = pipelineRunner.run(pipeline, directory, buildLog.asOutputStream(),
+            limits, result -> postStageStatus(info, result));
+        String failedStage = null;
+        for (PipelineRunner.StageResult result : results) {
+            buildLog.writeLine(result.summary());
+            if (failedStage == null && result.status() == PipelineRunner.StageStatus.FAILED) {
+                failedStage = result.name();
+            }
+        }
+        String state = failedStage == null ? "success" : "failure";
+        String description = failedStage == null ? "pipeline succeeded" : "stage " + failedStage + " failed";
+        githubClient.updateCommitStatus(info.repoURL(), info.SHA(), state, description, null);
+        return state;
+    }
+
+    private void postStageStatus(PushEventInfo info, PipelineRunner.StageResult result) {
+        String seconds = String.format("%.1f s", result.durationMillis() / 1000.0);
+        String[] stateAndDescription = switch (result.status()) {
+            case RUNNING -> new String[] {"pending", "running"};
+            case PASSED -> new String[] {"success", "passed in " + seconds};
+            case FAILED -> new String[] {"failure", "failed after " + seconds};
+            case CANCELLED -> new String[] {"error", "cancelled after " + seconds};
+            case SKIPPED -> null;
+        };
+        if (stateAndDescription == null) {
+            // Never started, so there is no pending status to resolve
+            return;
+        }
+        githubClient.updateCommitStatus(info.repoURL(), info.SHA(),
+            GitHubApiClient.STATUS_CONTEXT + "/" + result.name(), stateAndDescription[0], stateAndDescription[1], null);
+    }
+
+    /**
+     * Returns the stored result of an earlier complete build of the same tree,
+     * or null if there is none or its log has been removed since.
+     * @param treeHash The tree of the commit, or null if it is not known.
+     */
+    private BuildResultCache.CachedResult findCachedResult(String treeHash) {
+        if (treeHash == null || !resultCache.isEnabled()) {
+            return null;
+        }
+        for (List<String> command : completeBuildCommands()) {
+            String key = BuildResultCache.keyOf(treeHash, command, BUILD_JDK);
+            BuildResultCache.CachedResult cached = resultCache.get(key);
+            if (cached != null && LogCompression.findLog(logsFolder, Long.toString(cached.buildId())) == null) {
+                try {
+                    resultCache.remove(key);
+                } catch (IOException e) {
+                    System.err.println("Could not update build result cache: " + e.getMessage());
+                }
+                cached = null;
+            }
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the commands a build that tests every module of a tree runs, as
+     * they are executed: the clean build, the incremental build of a reused
+     * workspace and the pipeline. Whether a tree has a pipeline is only known
+     * once it is fetched, so a cached result is looked up under all of them.
+     */
+    private List<List<String>> completeBuildCommands() {
+        return List.of(buildExecutor.commandFor(TEST_COMMAND),
+            buildExecutor.commandFor(List.of("mvn", "test")), pipelineCommand());
+    }
+
+    /**
+     * Returns the stand-in command of a pipeline in the cache key. The stages
+     * are defined in the tree, so only the way mvn stages are run is added.
+     */
+    private List<String> pipelineCommand() {
+        List<String> command = new ArrayList<>(List.of("pipeline", Pipeline.PIPELINE_FILE_NAME));
+        command.addAll(buildExecutor.commandFor(List.of("mvn")));
+        return command;
+    }
+
+    /**
+     * Posts the result of an earlier build of the same tree instead of building again.
+     * @return The status of the build.
+     */
+    private String reuseCachedResult(PushEventInfo info, String treeHash, BuildResultCache.CachedResult cached,
+                                     LiveBuildLog buildLog) throws IOException {
+        buildLog.writeLine("Tree " + treeHash + " was already built, see build " + cached.buildId());
+        buildLog.writeLine("Result: " + cached.state() + " (reused)");
+        githubClient.updateCommitStatus(info.repoURL(), info.SHA(), cached.state(),
+            cached.description() + " (build " + cached.buildId() + ")", null);
+        return cached.state();
+    }
+
+    /**
+     * Stores the result of a complete build of a tree.
+     * @param command The command the build ran, as it was executed.
+     */
+    private void cacheResult(String treeHash, List<String> command, BuildResultCache.CachedResult result) {
+        if (treeHash == null) {
+            return;
+        }
+        try {
+            resultCache.put(BuildResultCache.keyOf(treeHash, command, BUILD_JDK), result);
+        } catch (IOException e) {
+            System.err.println("Could not update build result cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records in the log and the commit status that the build was stopped by the build timeout.
+     */
+    private void reportTimeout(PushEventInfo info, LiveBuildLog buildLog) {
+        // The interrupt that stopped the build must not abort the status update as well
+        Thread.interrupted();
+        long minutes = TimeUnit.MILLISECONDS.toMinutes(watchdog.getTimeoutMillis());
+        writeToBuildLog(buildLog, "Build timed out after " + minutes + " minutes");
+        githubClient.updateCommitStatus(info.repoURL(), info.SHA(), "error",
+            "build timed out after " + minutes + " min", null);
+    }
+
+    /**
+     * Marks the commit of a build that was dropped or cancelled because
+     * a newer push to the same branch arrived. GitHub has no state for
+     * this, so "error" is used with a description naming the newer commit.
+     * The commit is released, so a redelivery of its push builds it.
+     */
+    private void markSuperseded(PushEventInfo older, PushEventInfo newer) {
+        deduplicator.release(older.repoURL(), older.SHA());
+        githubClient.updateCommitStatus(older.repoURL(), older.SHA(), "error",
+            "superseded by " + StringUtils.left(newer.SHA(), 7), null);
+    }
+
+    private void writeToBuildLog(LiveBuildLog buildLog, String line) {
+        if (buildLog == null) {
+            return;
+        }
+        try {
+            buildLog.writeLine(line);
+        } catch (IOException e) {
+            System.err.println("Could not write to build log " + buildLog.getBuildId() + ": " + e.getMessage());
+        }
+    }
+
+    private void closeBuildLog(LiveBuildLog buildLog) {
+        if (buildLog == null) {
+            return;
+        }
+        try {
+            buildLog.close();
+        } catch (IOException e) {
+            System.err.println("Could not close build log " + buildLog.getBuildId() + ": " + e.getMessage());
+        } finally {
+            liveLogs.remove(buildLog.getBuildId());
+        }
+        compressLog(new File(logsFolder, buildLog.getBuildId() + ".log"));
+    }
+
+    /**
+     * Compresses a finished plain log file with the configured compression.
+     */
+    private void compressLog(File logFile) {
+        if (logCompression == LogCompression.NONE) {
+            return;
+        }
+        try {
+            logCompression.compressFile(logFile);
+        } catch (IOException e) {
+            System.err.println("Could not compress build log " + logFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compresses the plain log files of builds that finished before the
+     * server started. Runs once in the background at startup, so logs
+     * written by older versions take less space over time.
+     *
+     * @param lastOldBuild The highest build ID known at startup
+     */
+    synchronized void compressExistingLogs(long lastOldBuild) {
+        String[] names = logsFolder.list((dir, name) -> name.endsWith(".log"));
+        if (names == null) {
+            return;
+        }
+        int compressed = 0;
+        for (String name : names) {
+            String buildId = LogCompression.buildIdOf(name);
+            if (!StringUtils.isNumeric(buildId) || Long.parseLong(buildId) > lastOldBuild
+                    || liveLogs.containsKey(buildId)) {
+                continue;
+            }
+            compressLog(new File(logsFolder, name));
+            compressed++;
+        }
+        if (compressed > 0) {
+            System.out.println("Compressed " + compressed + " existing build logs with " + logCompression.getContentEncoding());
+        }
+    }
+
+    private void releaseWorkspace(WorkspaceManager.Workspace workspace) {
+        if (workspace == null) {
+            return;
+        }
+        try {
+            workspaceManager.release(workspace);
+        } catch (IOException e) {
+            System.err.println("Could not release workspace " + workspace.directory() + ": " + e.getMessage());
+        }
     }
 
     private void handleGet(String target,
-                       Request baseRequest,
                        HttpServletRequest request,
                        HttpServletResponse response) 
         throws IOException, ServletException
     {
 
         if (target.equals("/logs")) {
-            response.getWriter().println(getBuilds());
+            try {
+                BuildFilter filter = BuildFilter.fromRequest(request);
+                String before = request.getParameter("before");
+                String size = request.getParameter("size");
+                response.getWriter().println(getBuilds(filter,
+                    before == null ? null : Long.valueOf(before),
+                    size == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(size)));
+            } catch (IllegalArgumentException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            }
+            return;
+        }
+
+        if (target.equals("/metrics")) {
+            response.setContentType("application/json;charset=utf-8");
+            response.getWriter().println(getMetrics().toString(2));
+            return;
+        }
+
+        // "/logs/stream" itself has no build ID and is looked up as a log named stream
+        if (target.startsWith("/logs/") && target.endsWith("/stream")
+                && target.length() > "/logs/".length() + "/stream".length()) {
+            String buildId = target.substring("/logs/".length(), target.length() - "/stream".length());
+            streamBuildLog(buildId, request, response);
             return;
         }
 
         if (target.startsWith("/logs/")) {
             String subString = target.substring(6);
             try {
-                String logText = getBuildLog(subString);
-                response.getWriter().write(logText);
+                LogFileSender.send(getBuildLogFile(subString), request, response);
                 return;
             } catch (FileNotFoundException e) {
                 response.sendError(HttpServletResponse.SC_NOT_FOUND);
@@ -239,56 +650,67 @@ public class ContinuousIntegrationServer extends AbstractHandler {
     }
 
     /**
-     * Executes command in specificed directory 
-     * @param command The command to run.
-     * @param directory The directory to run it in.
-     * @return Returns the terminal output after the command.
+     * Sends the log with the given build ID using chunked transfer encoding.
+     * If the build is still running the log is followed until it is complete.
+     * @param buildId The build ID of the log
+     * @param request The GET request
+     * @param response The response to stream the log to
      */
-    String runCommand(List<String> command, File directory) throws IOException, InterruptedException {
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        processBuilder.directory(directory);
-        processBuilder.redirectErrorStream(true);
-        Process process = processBuilder.start();
-
-        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            StringBuilder stringBuilder = new StringBuilder();
-            String line;
-            boolean firstLine = true;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (!firstLine) {
-                        stringBuilder.append("\n");
-                }
-                stringBuilder.append(line);
-                firstLine = false;
+    private void streamBuildLog(String buildId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LiveBuildLog liveLog = liveLogs.get(buildId);
+        if (liveLog == null || liveLog.isComplete()) {
+            try {
+                LogFileSender.send(getBuildLogFile(buildId), request, response);
+            } catch (FileNotFoundException e) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            } catch (IllegalArgumentException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST);
             }
-            process.waitFor();
-            String output = stringBuilder.toString();
-            return output;
-        } finally {
-            process.destroy();
+            return;
+        }
+
+        response.setContentType("text/plain;charset=utf-8");
+        response.setHeader("Cache-Control", "no-cache");
+        try {
+            liveLog.follow(response.getOutputStream());
+        } catch (NoSuchFileException e) {
+            // The build finished and its log was compressed before it could be opened
+            LogFileSender.send(getBuildLogFile(buildId), request, response);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Collects the runtime metrics of the server as JSON.
+     * @return The metrics of each server component.
+     */
+    JSONObject getMetrics() {
+        JSONObject metrics = new JSONObject();
+        metrics.put("buildQueue", buildQueue.getStatistics());
+        metrics.put("repositoryFetcher", repositoryFetcher.getStatistics());
+        metrics.put("workspaces", workspaceManager.getStatistics());
+        metrics.put("logRetention", logRetention.getStatistics());
+        metrics.put("resultCache", resultCache.getStatistics());
+        metrics.put("buildExecutor", buildExecutor.getStatistics());
+        metrics.put("watchdog", watchdog.getStatistics());
+        metrics.put("commitStatuses", githubClient.getStatistics());
+        metrics.put("webhooks", webhookReader.getStatistics());
+        metrics.put("deliveries", deduplicator.getStatistics());
+        return metrics;
+    }
 
     /**
-     * Clones git repository into a temporary directory
-     *
-     * @param url The url of the repository
-     * @param branch The branch that we want
-     * @param commitId The specific commit ID. If null, the latest commit is used.
-     * @return directory The temporary directory containing the repo
+     * Executes command in specificed directory 
+     * @param command The command to run.
+     * @param directory The directory to run it in.
+     * @return Returns the terminal output after the command.
      */
-    File gitClone(String url, String commitId) throws IOException, InterruptedException {
-		File directory = Files.createTempDirectory("repository").toFile();
-		List<String> command = List.of("git", "clone", url, ".");
-		runCommand(command, directory);
-        if (commitId != null) {
-            command = List.of("git", "checkout", commitId);
-		    runCommand(command, directory);
-        }
-		return directory;
+    String runCommand(List<String> command, File directory) throws IOException, InterruptedException {
+        return commandRunner.run(command, directory).output();
     }
 
+
     /**
      * Recursively removes specified directory, 
      * subfiles and subdirectories if located in
@@ -297,26 +719,7 @@ public class ContinuousIntegrationServer extends AbstractHandler {
      * @param directory The directory to remove 
      */
     void removeDirectoryInTmp(File directory) throws IOException {
-		Path verifiedDirectoryPath = getVerifiedPath(directory);
-		try ( Stream<Path> paths = Files.walk(verifiedDirectoryPath)) {
-				for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
-					Files.delete(path);
-				}
-		};
-    }
-
-    private Path getVerifiedPath(File directory) throws IllegalArgumentException, IOException {
-		if (directory == null || !directory.exists()) {
-				throw new IllegalArgumentException("Directory does not exists");
-		}
-		Path directoryPath = directory.toPath().toRealPath();
-		Path systemTmpPath = Paths.get(System.getProperty("java.io.tmpdir")).toRealPath();
-		if (!directoryPath.startsWith(systemTmpPath)) {
-				throw new IllegalArgumentException(
-					String.format("Only allowed to remove directories in %s", systemTmpPath)
-				);
-		}
-		return directoryPath;
+        WorkspaceManager.removeDirectoryInTmp(directory);
     }
 
     /**
@@ -325,8 +728,20 @@ public class ContinuousIntegrationServer extends AbstractHandler {
      * @return The terminal output after trying to build and test
      */
     public String runTests(File directory) throws IOException, InterruptedException {
-        List<String> testCommand = Arrays.asList("mvn", "clean", "test");
-        return runCommand(testCommand, directory);
+        return runCommand(TEST_COMMAND, directory);
+    }
+
+    /**
+     * Runs the given Maven command in the cloned repo, streaming the output as it is produced
+     * @param directory The path to the cloned directory
+     * @param command The Maven command, e.g. from an incremental build plan
+     * @param limits Wraps the command, e.g. to run it in the cgroup of the build
+     * @param output Receives the terminal output of the build and tests
+     * @return The exit code of mvn, 0 if the build succeeded
+     */
+    int runTests(File directory, List<String> command, UnaryOperator<List<String>> limits, OutputStream output)
+            throws IOException, InterruptedException {
+        return buildExecutor.run(directory, command, limits, output);
     }
 
     /**
@@ -337,13 +752,10 @@ public class ContinuousIntegrationServer extends AbstractHandler {
      * @throws IllegalArgumentException If argument leads to a path outside of the logs folder.
      */
     public String getBuildLog(String buildId) throws IOException, IllegalArgumentException {
-        File file = new File(logsFolder.getPath() + "/" + buildId + ".log");
-		if (!isInLogDirectory(file)) {
-			throw new IllegalArgumentException("Build log must be in logs directory");
-		};
+        File file = getBuildLogFile(buildId);
         StringBuilder stringBuilder = new StringBuilder();
 
-        try (Scanner scanner = new Scanner(file)) {
+        try (Scanner scanner = new Scanner(LogCompression.open(file), StandardCharsets.UTF_8)) {
             while (scanner.hasNextLine()) {
             stringBuilder.append(scanner.nextLine()).append("\n");
             }
@@ -351,6 +763,25 @@ public class ContinuousIntegrationServer extends AbstractHandler {
         return stringBuilder.toString();
     }
 
+    /**
+     * Returns the log file with the specified build ID.
+     * @param buildId The build ID of the log
+     * @return The log file, possibly compressed
+     * @throws FileNotFoundException If file does not exist.
+     * @throws IllegalArgumentException If argument leads to a path outside of the logs folder.
+     */
+    File getBuildLogFile(String buildId) throws FileNotFoundException, IllegalArgumentException {
+        File file = new File(logsFolder.getPath() + "/" + buildId + ".log");
+		if (!isInLogDirectory(file)) {
+			throw new IllegalArgumentException("Build log must be in logs directory");
+		};
+        File log = LogCompression.findLog(logsFolder, buildId);
+        if (log == null) {
+            throw new FileNotFoundException("No build log with build ID " + buildId);
+        }
+        return log;
+    }
+
     /**
      * Checks wheter the given file is inside the log directory.
      * @param file The specified file.
@@ -364,113 +795,106 @@ public class ContinuousIntegrationServer extends AbstractHandler {
     };
 
     /**
-     * Returns an HTML table row containing a summary of the
-     * log with the given build ID.
-     * @param buildId Build ID of the log
-     * @return The summary of the log with the following format:
-     * <tr>
-     *  <td> [Build ID (as a href)] </td>
-     *  <td> [Date] </td>
-     *  <td> [Commit ID] </td>
-     * </tr>
-     * Metadata is replaced by "null" if it does not exist.
-     * @throws IOException If the file does not exist
-     * @throws IllegalArgumentException If the argument leads to a path outisde of the logs folder
-     */
-    String getBuildLogHTMLTableRow(String buildId) throws IOException, IllegalArgumentException {
-        String fullText = getBuildLog(buildId);
-        String commitId = StringUtils.substringBetween(fullText, "Commit ID: ", "\n");
-        String date = StringUtils.substringBetween(fullText, "Build date: ", "\n");
-        String output = "<tr><td><a href=\"/logs/" + buildId + "\"</a>" + buildId + "</td>" 
-        + "<td>" + date + "</td>" +  "<td>" + commitId + "</td></tr>";
-        return output;
-    }
-
-    /**
-     * Creates HTML output based on Build IDs. The HTML output also
+     * Creates HTML output based on the index entries of builds. The HTML output also
      * contains a style tag used to put borders and centralize text
      * in cells.
      *
-     * @param buildIds The list of Build IDs currently in the log folder
+     * @param builds The index entries of the builds to list
+     * @param nextPage Link to the next page of builds, or null if this is the last page
      * @return An HTML table containing Build ID, date and Commit ID for all builds
      */ 
-    private String createHTMLTableWithLogSummaries(List<String> buildIds) {
+    private String createHTMLTableWithLogSummaries(List<BuildIndex.Entry> builds, String nextPage) {
         StringBuilder logTable = new StringBuilder();
 
         logTable.append("<table><tr><td> Build ID </td><td> Date </td><td> Commit ID </td></tr>");
 
-        for (String buildId : buildIds) {
-            try {
-                logTable.append(getBuildLogHTMLTableRow(buildId));
-            } catch (IOException e) {
-                continue;
-            }
+        for (BuildIndex.Entry build : builds) {
+            logTable.append("<tr><td><a href=\"/logs/").append(build.id()).append("\"</a>").append(build.id()).append("</td>")
+                .append("<td>").append(build.date()).append("</td>")
+                .append("<td>").append(build.sha()).append("</td></tr>");
         }
         logTable.append("</table>");
+        if (nextPage != null) {
+            logTable.append("<p><a href=\"").append(nextPage).append("\">Older builds</a></p>");
+        }
         logTable.append("<style>table, th, td {border: 1px solid black;border-collapse: collapse;text-align: center;}</style>");
         return logTable.toString();
     }
 
     /**
-     * Searches the log directory for log files, and returns a string.
-     * The string contains a HTML table, with rows for each log entry
-     * and cells with Build ID, date and Commit ID.
-     * @return A string containing information of all logs in the log directory.
+     * Returns the first page of builds, newest first, as a HTML table
+     * with rows for each log entry and cells with Build ID, date and Commit ID.
+     * @return A string containing information of the newest logs in the log directory.
      */
     public String getBuilds() {
-        Path logsFolderPath = logsFolder.toPath();
-
-        // List to store all build IDs found in the log folder
-        List<String> buildIds = new ArrayList<>();
-
-        // Iterate the log directory and save file names that have
-        // the ".log" extension
-		try ( Stream<Path> paths = Files.walk(logsFolderPath)) {
-            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
-                String buildId = path.getFileName().toString();
-                
-                if(!buildId.endsWith(".log")) {
-                    continue;
-                }
+        return getBuilds(BuildFilter.NONE, null, DEFAULT_PAGE_SIZE);
+    }
 
-                // Extract the file name without extension and
-                // append to buildIds
-                buildId = buildId.substring(0, buildId.length() - 4);
-                buildIds.add(buildId);
-            }
-	    } catch (Exception e) {
-            return null;
+    /**
+     * Returns a page of the builds matching the filter, newest first, as a HTML table.
+     * The page is read from the build index, no log files are opened.
+     *
+     * @param filter The builds to list
+     * @param before Only builds with a lower build ID are listed, or null to start at the newest build
+     * @param size Number of builds per page, at most {@value #MAX_PAGE_SIZE}
+     * @return A HTML table with the builds and a link to the next page if there is one
+     * @throws IllegalArgumentException If the page size is not positive
+     */
+    String getBuilds(BuildFilter filter, Long before, int size) throws IllegalArgumentException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
         }
-
-        // Sort the buildId list to display the 
-        // builds in ascending order
-        buildIds.sort(Comparator.comparingInt(Integer::parseInt));
-        String logTable;
-        // Get an HTML table containing summaries for 
-        // the found buildIds
-        logTable = createHTMLTableWithLogSummaries(buildIds);
-
-        return logTable;
+        size = Math.min(size, MAX_PAGE_SIZE);
+        List<BuildIndex.Entry> builds = buildIndex.query(filter, before, size + 1);
+        String nextPage = null;
+        if (builds.size() > size) {
+            builds = builds.subList(0, size);
+            long oldest = builds.get(builds.size() - 1).id();
+            nextPage = "/logs?before=" + oldest + "&size=" + size + filter.toQueryString();
+        }
+        return createHTMLTableWithLogSummaries(builds, nextPage);
     }
 
     /**
-     * Get the next number to be
-     * used for the name of a new
-     * log file
+     * Creates the log file of a build that is starting, writes its
+     * header and returns it so the build output can be appended to it
+     * while the build runs. The build is added to the build index as running.
      *
-     * @return The next number
-     */ 
-    private int getLogCount() {
-        Path logsFolderPath = logsFolder.toPath();
+     * @param info The push that is built
+     * @return The log, registered for followers until it is closed
+     */
+    LiveBuildLog startBuildLog(PushEventInfo info) throws IOException {
+        BuildIndex.Entry build = new BuildIndex.Entry(createLogFile(), info.SHA(), info.branch(),
+            info.author(), LocalDate.now().toString(), "running", 0);
+        File logFile = new File(logsFolder, build.id() + ".log");
 
-        List<Path> fileList;
-        try (Stream<Path> logFiles = Files.walk(logsFolderPath)){
-            fileList = logFiles.filter(fileName -> fileName.getFileName().toString().endsWith(".log")).toList();
+        // Registered before it is indexed, so log retention never sees it unused
+        String buildId = Long.toString(build.id());
+        LiveBuildLog buildLog = new LiveBuildLog(buildId, logFile.toPath());
+        liveLogs.put(buildId, buildLog);
+        buildIndex.put(build);
+        buildLog.writeLine("Commit ID: " + build.sha());
+        buildLog.writeLine("Build date: " + build.date());
+        return buildLog;
+    }
+
+    /**
+     * Records the result of a finished build in the build index.
+     */
+    private void finishBuild(LiveBuildLog buildLog, String status, long durationMillis) {
+        if (buildLog == null) {
+            return;
+        }
+        BuildIndex.Entry build = buildIndex.get(Long.parseLong(buildLog.getBuildId()));
+        if (build == null) {
+            // Already removed by log retention
+            return;
+        }
+        try {
+            buildIndex.put(build.finish(status, durationMillis));
         } catch (IOException e) {
-            return 0;
+            System.err.println("Could not update build index for build " + build.id() + ": " + e.getMessage());
         }
-
-        return fileList.size();
     }
 
     /**
@@ -483,29 +907,101 @@ public class ContinuousIntegrationServer extends AbstractHandler {
      * @param commitId The commit id used to identify a specific log
      */ 
     public void storeBuildLog(String log, String commitId) {
-        StringBuilder fileName = new StringBuilder();
-        int nextNumber = getLogCount() + 1;
-
-        fileName.append(logsFolder.getPath()).append("/").append(nextNumber).append(".log");
-        File logFile = new File(fileName.toString());
-
-        if(logFile.exists()) {
-            return;
-        }
-
         StringBuilder fullLog = new StringBuilder();
+        String date = LocalDate.now().toString();
         fullLog.append("Commit ID: ").append(commitId).append("\n");
-        fullLog.append("Build date: ").append(LocalDate.now().toString()).append("\n");
+        fullLog.append("Build date: ").append(date).append("\n");
         fullLog.append(log);
-        
 
+        try {
+            long buildId = createLogFile();
+            File logFile = new File(logsFolder, buildId + ".log");
+            Files.writeString(logFile.toPath(), fullLog.toString());
+            compressLog(logFile);
+            buildIndex.put(new BuildIndex.Entry(buildId, commitId, null, null, date, "unknown", 0));
+        } catch (IOException e) {
+            System.err.println("Could not store build log of " + commitId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Allocates a new build ID and creates its empty log file.
+     * IDs whose log file already exists are skipped, so a log
+     * is never overwritten.
+     *
+     * @return The build ID of the created log file
+     */
+    private long createLogFile() throws IOException {
+        while (true) {
+            long buildId = idAllocator.next();
+            if (new File(logsFolder, buildId + ".log").createNewFile()) {
+                return buildId;
+            }
+        }
+    }
 
+    /**
+     * Stops the server: waits for queued builds, stops log retention and persists the build ID counter.
+     * Called by Jetty when the server stops.
+     */
+    @Override
+    public void destroy() {
         try {
-            logFile.createNewFile();
-            Files.writeString(Path.of(fileName.toString()), fullLog.toString());
-        } catch (Exception e) {
-            return;
+            buildQueue.shutdown(10, TimeUnit.MINUTES);
+            logRetention.close();
+            watchdog.close();
+            if (!githubClient.flush(30, TimeUnit.SECONDS)) {
+                System.err.println("Some commit statuses could not be sent before shutdown");
+            }
+            githubClient.close();
+            idAllocator.close();
+        } catch (IOException e) {
+            System.err.println("Could not stop cleanly: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        super.destroy();
+    }
+
+    /**
+     * Creates the Jetty server running the CI server as its only servlet.
+     *
+     * Requests are handled on virtual threads when the JVM supports them
+     * (Java 21 and later), so a blocking handler such as a followed build
+     * log does not take a thread from the pool. The connector speaks
+     * HTTP/1.1 and, if enabled, HTTP/2 over cleartext (h2c).
+     *
+     * @param ciServer The CI server handling the requests.
+     * @param config   Port, connector and thread settings.
+     */
+    static Server createServer(ContinuousIntegrationServer ciServer, ServerConfig config) {
+        QueuedThreadPool threadPool = new QueuedThreadPool(config.httpMaxThreads());
+        threadPool.setName("http");
+        if (config.httpVirtualThreads()) {
+            if (VirtualThreads.areSupported()) {
+                threadPool.setVirtualThreadsExecutor(VirtualThreads.getNamedVirtualThreadsExecutor("http-virtual-"));
+            } else {
+                System.err.println("Virtual threads are not supported by this JVM, requests use the thread pool");
+            }
+        }
+        Server server = new Server(threadPool);
+
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        httpConfig.setSendServerVersion(false);
+        HttpConnectionFactory http11 = new HttpConnectionFactory(httpConfig);
+        ServerConnector connector = config.httpH2c()
+            ? new ServerConnector(server, config.httpAcceptors(), config.httpSelectors(),
+                http11, new HTTP2CServerConnectionFactory(httpConfig))
+            : new ServerConnector(server, config.httpAcceptors(), config.httpSelectors(), http11);
+        connector.setPort(config.httpPort());
+        connector.setIdleTimeout(config.httpIdleTimeoutMillis());
+        server.addConnector(connector);
+
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(ciServer), "/*");
+        server.setHandler(context);
+        server.setStopAtShutdown(true);
+        return server;
     }
  
     /**
@@ -524,8 +1020,9 @@ public class ContinuousIntegrationServer extends AbstractHandler {
         if (githubToken == null || githubToken.isEmpty()) {
 			throw new IllegalStateException("env variable GITHUB_TOKEN must be set in .env file");
 		}
-        Server server = new Server(8080);
-        server.setHandler(new ContinuousIntegrationServer(webhookSignature, githubToken)); 
+        ServerConfig config = new ServerConfig(dotenv::get);
+        Server server = createServer(new ContinuousIntegrationServer(webhookSignature, new File("logs"),
+            new GitHubApiClient(githubToken, config.githubHttp()), config), config);
         server.start();
         server.join();
     }
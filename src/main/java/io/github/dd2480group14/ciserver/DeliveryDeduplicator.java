@@ -0,0 +1,287 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Recognizes webhook deliveries that were already scheduled.
+ *
+ * GitHub redelivers a webhook with the same X-GitHub-Delivery ID when a
+ * delivery times out or is redelivered by hand, and the same commit can
+ * arrive in several deliveries. A delivery whose ID or (repository, SHA)
+ * was seen before is acknowledged without building again. Commit statuses
+ * belong to the SHA, so the first build reports for every push of it.
+ *
+ * A claim lasts until its build ends. A build that succeeded or failed
+ * makes it permanent, while a build that was superseded, timed out or
+ * could not be run releases the commit together with the deliveries
+ * that claimed it, so a redelivery builds the commit again.
+ *
+ * Entries expire after a while and the oldest are evicted when the
+ * cache is full. Permanent entries are appended to a file in the logs
+ * folder, which is compacted when it grows, so the cache survives restarts.
+ * Claims of builds that had not ended are lost with the build queue on a restart.
+ */
+class DeliveryDeduplicator {
+    static final String FILE_NAME = "deliveries.dedup";
+
+    /**
+     * Whether a delivery is new.
+     */
+    enum Result { NEW, DUPLICATE_DELIVERY, DUPLICATE_COMMIT }
+
+    private final Path path;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    /** Time each key was first seen, in the order the keys were added. */
+    private final LinkedHashMap<String, Long> seen = new LinkedHashMap<>();
+    /** The delivery keys claiming each commit key whose build has not ended. */
+    private final Map<String, List<String>> claims = new HashMap<>();
+    private int linesInFile;
+
+    private final AtomicLong deliveryHits = new AtomicLong();
+    private final AtomicLong commitHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Loads the deliveries seen before a restart.
+     * @param logsFolder The folder the file is kept in.
+     * @param maxEntries Number of keys kept, 0 disables deduplication.
+     * @param ttlMillis How long a key is remembered.
+     */
+    DeliveryDeduplicator(File logsFolder, int maxEntries, long ttlMillis) throws IOException {
+        this(logsFolder, maxEntries, ttlMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Loads the deliveries seen before a restart, with the given clock.
+     */
+    DeliveryDeduplicator(File logsFolder, int maxEntries, long ttlMillis, LongSupplier clock) throws IOException {
+        this.path = new File(logsFolder, FILE_NAME).toPath();
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        if (maxEntries > 0 && Files.exists(path)) {
+            load();
+        }
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                linesInFile++;
+                try {
+                    JSONObject json = new JSONObject(line);
+                    seen.put(json.getString("key"), json.getLong("at"));
+                } catch (JSONException e) {
+                    // A line cut short by a crash, the delivery is built if it comes again
+                }
+            }
+        }
+        expire(clock.getAsLong());
+        evictOverflow();
+    }
+
+    /**
+     * Claims a delivery unless it, or its commit, was seen before. The
+     * claim must be completed or released when the build of the commit ends.
+     *
+     * @param deliveryId The X-GitHub-Delivery header, or null if there is none.
+     * @param repoURL    The repository that was pushed to.
+     * @param sha        The pushed commit.
+     * @return NEW if the delivery should be built.
+     */
+    synchronized Result claim(String deliveryId, String repoURL, String sha) {
+        if (maxEntries <= 0) {
+            return Result.NEW;
+        }
+        long now = clock.getAsLong();
+        expire(now);
+        String deliveryKey = deliveryId == null || deliveryId.isEmpty() ? null : "delivery:" + deliveryId;
+        String commitKey = commitKey(repoURL, sha);
+        if (deliveryKey != null && seen.containsKey(deliveryKey)) {
+            deliveryHits.incrementAndGet();
+            return Result.DUPLICATE_DELIVERY;
+        }
+        if (seen.containsKey(commitKey)) {
+            commitHits.incrementAndGet();
+            if (deliveryKey != null) {
+                // Later redeliveries of this delivery count as delivery hits
+                List<String> claimed = claims.get(commitKey);
+                if (claimed != null) {
+                    claimed.add(deliveryKey);
+                }
+                put(deliveryKey, now, claimed == null);
+            }
+            return Result.DUPLICATE_COMMIT;
+        }
+        misses.incrementAndGet();
+        List<String> claimed = new ArrayList<>();
+        if (deliveryKey != null) {
+            claimed.add(deliveryKey);
+            put(deliveryKey, now, false);
+        }
+        claims.put(commitKey, claimed);
+        put(commitKey, now, false);
+        return Result.NEW;
+    }
+
+    /**
+     * Makes the claim of a commit permanent, because its build
+     * succeeded or failed and building it again gives the same result.
+     */
+    synchronized void complete(String repoURL, String sha) {
+        String commitKey = commitKey(repoURL, sha);
+        List<String> claimed = claims.remove(commitKey);
+        if (claimed == null) {
+            return;
+        }
+        claimed.add(commitKey);
+        for (String key : claimed) {
+            Long at = seen.get(key);
+            if (at != null) {
+                append(key, at);
+            }
+        }
+    }
+
+    /**
+     * Forgets the claim of a commit and of the deliveries that claimed it,
+     * e.g. because the build queue was full or the build did not come
+     * to a result, so that a redelivery is built.
+     */
+    synchronized void release(String repoURL, String sha) {
+        String commitKey = commitKey(repoURL, sha);
+        List<String> claimed = claims.remove(commitKey);
+        if (claimed == null) {
+            return;
+        }
+        for (String key : claimed) {
+            seen.remove(key);
+        }
+        seen.remove(commitKey);
+    }
+
+    private static String commitKey(String repoURL, String sha) {
+        return "commit:" + repoURL + "@" + sha;
+    }
+
+    private void put(String key, long at, boolean persist) {
+        seen.put(key, at);
+        evictOverflow();
+        if (persist) {
+            append(key, at);
+        }
+    }
+
+    /**
+     * Drops every key that has expired. The keys are not in time order:
+     * completed claims are appended to the file with the time they were
+     * first seen, after keys seen since. So the whole cache is scanned,
+     * which holds at most maxEntries keys.
+     */
+    private void expire(long now) {
+        Iterator<Map.Entry<String, Long>> iterator = seen.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getValue() + ttlMillis <= now) {
+                iterator.remove();
+                claims.remove(entry.getKey());
+            }
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<String> iterator = seen.keySet().iterator();
+        while (seen.size() > maxEntries && iterator.hasNext()) {
+            claims.remove(iterator.next());
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Appends a key to the file, and rewrites the file with only the live
+     * keys once it has twice as many lines as the cache can hold.
+     * Failures are logged, a lost entry only means a duplicate may be built.
+     */
+    private void append(String key, long at) {
+        try {
+            if (linesInFile >= 2 * maxEntries) {
+                compact();
+            }
+            JSONObject json = new JSONObject();
+            json.put("key", key);
+            json.put("at", at);
+            Files.writeString(path, json.toString() + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            linesInFile++;
+        } catch (IOException e) {
+            System.err.println("Could not persist webhook delivery: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the file with one line per permanent key and replaces the old one atomically.
+     */
+    private void compact() throws IOException {
+        Set<String> claimed = new HashSet<>(claims.keySet());
+        claims.values().forEach(claimed::addAll);
+        Path temporary = path.resolveSibling(FILE_NAME + ".tmp");
+        int lines = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : seen.entrySet()) {
+                if (claimed.contains(entry.getKey())) {
+                    continue;
+                }
+                lines++;
+                JSONObject json = new JSONObject();
+                json.put("key", entry.getKey());
+                json.put("at", entry.getValue());
+                writer.write(json.toString());
+                writer.write("\n");
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        linesInFile = lines;
+    }
+
+    /**
+     * Returns the hit and miss counters as JSON.
+     */
+    synchronized JSONObject getStatistics() {
+        JSONObject stats = new JSONObject();
+        stats.put("entries", seen.size());
+        stats.put("pending", claims.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("deliveryHits", deliveryHits.get());
+        stats.put("commitHits", commitHits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+}
@@ -1,80 +1,370 @@
 package io.github.dd2480group14.ciserver;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.json.JSONObject;
 
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 
-class GitHubApiClient {
-    private final OkHttpClient client;
-    private final String token;
+/**
+ * Publishes commit statuses to GitHub in the background.
+ *
+ * Updates are queued and sent with OkHttp's asynchronous calls, so builds
+ * never wait for GitHub. While an update for a commit and context waits or
+ * is being sent, newer updates for the same commit and context replace the
+ * waiting one, since only the latest state is shown on GitHub. Updates that
+ * fail with a server or network error are retried with exponential backoff
+ * and jitter, and all updates wait while GitHub reports the rate limit as
+ * exhausted.
+ */
+class GitHubApiClient implements Closeable {
     private static final String GITHUB_API_BASE = "https://api.github.com";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    /** Status context of the whole build, stages get their name appended to it. */
+    static final String STATUS_CONTEXT = "ci/dd2480-group14";
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    private static final long DEFAULT_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final int DEFAULT_MAX_ATTEMPTS = 6;
+
+    private final SharedHttpClient http;
+    private final String token;
+    private final String apiBase;
+    private final int queueCapacity;
+    private final long backoffMillis;
+    private final int maxAttempts;
+
+    /** Updates waiting to be sent, by commit and context. */
+    private final Map<String, StatusUpdate> pending = new LinkedHashMap<>();
+    /** Commits and contexts with an update being sent. */
+    private final Set<String> inFlight = new HashSet<>();
+    /** Nothing is sent before this time while the rate limit is exhausted. */
+    private long pausedUntilMillis;
+    /** Time the next dispatch is scheduled for, so waiting updates do not schedule one each. */
+    private long wakeupAtMillis = Long.MAX_VALUE;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "github-status");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A commit status to send.
+     * @param key       Commit and context, updates with the same key replace each other.
+     * @param url       The statuses URL of the commit.
+     * @param payload   The status as JSON.
+     * @param attempts  Number of times the update has been sent.
+     * @param notBefore Time the update may be sent again after a failed attempt.
+     */
+    private record StatusUpdate(String key, String url, String payload, int attempts, long notBefore) {
+
+        StatusUpdate retryAt(long time) {
+            return new StatusUpdate(key, url, payload, attempts, time);
+        }
+
+        StatusUpdate attempted() {
+            return new StatusUpdate(key, url, payload, attempts + 1, notBefore);
+        }
+    }
 
     /**
-     * Creates a new GitHub API client.
+     * Creates a new GitHub API client using the shared HTTP client with the default settings.
      */
     GitHubApiClient(String token) {
-        this.client = new OkHttpClient();
+        this(token, SharedHttpClient.Settings.DEFAULTS);
+    }
+
+    /**
+     * Creates a new GitHub API client using the shared HTTP client with the given settings.
+     */
+    GitHubApiClient(String token, SharedHttpClient.Settings httpSettings) {
+        this(token, GITHUB_API_BASE, SharedHttpClient.forSettings(httpSettings),
+            DEFAULT_QUEUE_CAPACITY, DEFAULT_BACKOFF_MILLIS, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Creates a client for the given API server.
+     * @param token         Token used to authenticate.
+     * @param apiBase       Base URL of the API, e.g. "https://api.github.com".
+     * @param http          The HTTP client.
+     * @param queueCapacity Maximum number of updates waiting to be sent.
+     * @param backoffMillis Delay before the first retry, doubled for every further retry.
+     * @param maxAttempts   Number of times an update is sent before it is given up.
+     */
+    GitHubApiClient(String token, String apiBase, SharedHttpClient http, int queueCapacity,
+                    long backoffMillis, int maxAttempts) {
+        this.http = http;
         this.token = token;
+        this.apiBase = apiBase;
+        this.queueCapacity = queueCapacity;
+        this.backoffMillis = backoffMillis;
+        this.maxAttempts = maxAttempts;
     }
 
     /**
-     * Updates the commit status on GitHub.
+     * Queues an update of the commit status on GitHub.
+     * @return False if the update could not be queued.
      */
     boolean updateCommitStatus(String repoURL, String sha, String state, 
                                      String description, String targetUrl) {
+        return updateCommitStatus(repoURL, sha, STATUS_CONTEXT, state, description, targetUrl);
+    }
+
+    /**
+     * Queues an update of the commit status of the given context on GitHub, e.g. of a single pipeline stage.
+     * @return False if the update could not be queued.
+     */
+    boolean updateCommitStatus(String repoURL, String sha, String context, String state,
+                               String description, String targetUrl) {
+        String ownerRepo;
         try {
-            // Extract owner or repo from clone URL
-            String ownerRepo = extractOwnerRepo(repoURL);
-            
-            // Build API URL
-            String url = String.format("%s/repos/%s/statuses/%s", 
-                                      GITHUB_API_BASE, ownerRepo, sha);
-            
-            // Build payload
-            JSONObject payload = new JSONObject();
-            payload.put("state", state);
-            payload.put("description", description);
-            payload.put("context", "ci/dd2480-group14"); // Identifier for your CI
-            
-            if (targetUrl != null && !targetUrl.isEmpty()) {
-                payload.put("target_url", targetUrl);
+            ownerRepo = extractOwnerRepo(repoURL);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Could not update commit status: " + e.getMessage());
+            return false;
+        }
+        String url = String.format("%s/repos/%s/statuses/%s", apiBase, ownerRepo, sha);
+
+        JSONObject payload = new JSONObject();
+        payload.put("state", state);
+        payload.put("description", description);
+        payload.put("context", context); // Identifier for your CI
+        if (targetUrl != null && !targetUrl.isEmpty()) {
+            payload.put("target_url", targetUrl);
+        }
+
+        String key = ownerRepo + "@" + sha + "#" + context;
+        synchronized (this) {
+            if (scheduler.isShutdown()) {
+                return false;
             }
-            
-            // Create request
-            RequestBody body = RequestBody.create(
-                payload.toString(), 
-                MediaType.get("application/json; charset=utf-8")
-            );
-            
-            Request request = new Request.Builder()
-                .url(url)
-                .header("Authorization", "Bearer " + token)
-                .header("Accept", "application/vnd.github+json")
-                .header("X-GitHub-Api-Version", "2022-11-28")
-                .post(body)
-                .build();
-            
-            // Execute request
-            try (Response response = client.newCall(request).execute()) {
-                if (response.isSuccessful()) {
-                    System.out.println(" Successfully updated commit status: " + state);
-                    return true;
-                } else {
-                    System.err.println(" Failed to update commit status: " + response.code());
-                    System.err.println("Response: " + response.body().string());
-                    return false;
+            if (pending.remove(key) != null) {
+                collapsed.incrementAndGet();
+            } else if (pending.size() >= queueCapacity) {
+                rejected.incrementAndGet();
+                System.err.println("Commit status queue is full, dropped " + state + " for " + key);
+                return false;
+            }
+            pending.put(key, new StatusUpdate(key, url, payload.toString(), 0, 0));
+            queued.incrementAndGet();
+            scheduler.execute(this::dispatch);
+        }
+        return true;
+    }
+
+    /**
+     * Sends every waiting update that is due and has no update for the same
+     * commit and context in flight, then schedules itself for the next update
+     * that is not due yet.
+     */
+    private synchronized void dispatch() {
+        long now = System.currentTimeMillis();
+        long nextDue = Long.MAX_VALUE;
+        if (now < pausedUntilMillis) {
+            nextDue = pausedUntilMillis;
+        } else {
+            for (Iterator<StatusUpdate> it = pending.values().iterator(); it.hasNext();) {
+                StatusUpdate update = it.next();
+                if (inFlight.contains(update.key())) {
+                    continue;
                 }
+                if (update.notBefore() > now) {
+                    nextDue = Math.min(nextDue, update.notBefore());
+                    continue;
+                }
+                it.remove();
+                inFlight.add(update.key());
+                send(update.attempted());
             }
-            
-        } catch (Exception e) {
-            System.err.println(" Error updating commit status: " + e.getMessage());
-            e.printStackTrace();
-            return false;
         }
+        if (nextDue < wakeupAtMillis && !scheduler.isShutdown()) {
+            wakeupAtMillis = nextDue;
+            scheduler.schedule(this::wakeUp, nextDue - now, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void wakeUp() {
+        wakeupAtMillis = Long.MAX_VALUE;
+        dispatch();
+    }
+
+    private void send(StatusUpdate update) {
+        Request request = new Request.Builder()
+            .url(update.url())
+            .header("Authorization", "Bearer " + token)
+            .header("Accept", "application/vnd.github+json")
+            .header("X-GitHub-Api-Version", "2022-11-28")
+            .post(RequestBody.create(update.payload(), JSON))
+            .build();
+        http.client().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    handleResponse(update, response);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                retryOrGiveUp(update, 0, "network error: " + e.getMessage());
+            }
+        });
+    }
+
+    private void handleResponse(StatusUpdate update, Response response) {
+        long rateLimitWait = rateLimitWaitMillis(response);
+        if (response.isSuccessful()) {
+            sent.incrementAndGet();
+            finish(update, rateLimitWait);
+        } else if (response.code() >= 500
+                || ((response.code() == 403 || response.code() == 429) && rateLimitWait > 0)) {
+            if (response.code() < 500) {
+                rateLimited.incrementAndGet();
+            }
+            retryOrGiveUp(update, rateLimitWait, "HTTP " + response.code());
+        } else {
+            failed.incrementAndGet();
+            System.err.println("Failed to update commit status " + update.key() + ": " + response.code());
+            finish(update, rateLimitWait);
+        }
+    }
+
+    /**
+     * Returns how long GitHub asks clients to wait, from the Retry-After header or,
+     * if no requests are left, the X-RateLimit-Reset time. 0 if there is no need to wait.
+     */
+    private static long rateLimitWaitMillis(Response response) {
+        try {
+            String retryAfter = response.header("Retry-After");
+            if (retryAfter != null) {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+            }
+            String remaining = response.header("X-RateLimit-Remaining");
+            String reset = response.header("X-RateLimit-Reset");
+            if ("0".equals(remaining) && reset != null) {
+                return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(reset.trim())) - System.currentTimeMillis());
+            }
+        } catch (NumberFormatException e) {
+            // Ignored, the usual backoff applies
+        }
+        return 0;
+    }
+
+    /**
+     * Queues a failed update again unless it has been sent too often or a newer
+     * update for the same commit and context has been queued in the meantime.
+     * @param waitMillis Time GitHub asked to wait, 0 to use exponential backoff with jitter.
+     */
+    private void retryOrGiveUp(StatusUpdate update, long waitMillis, String reason) {
+        synchronized (this) {
+            if (pending.containsKey(update.key())) {
+                // Superseded by a newer state, which is sent instead
+            } else if (update.attempts() >= maxAttempts) {
+                failed.incrementAndGet();
+                System.err.println("Gave up updating commit status " + update.key() + " after "
+                    + update.attempts() + " attempts: " + reason);
+            } else {
+                long delay = waitMillis > 0 ? waitMillis : backoff(update.attempts());
+                retried.incrementAndGet();
+                pending.put(update.key(), update.retryAt(System.currentTimeMillis() + delay));
+            }
+        }
+        finish(update, waitMillis);
+    }
+
+    /**
+     * Returns a random delay between half and all of the exponential backoff of the attempt,
+     * so updates that failed at the same time are not retried at the same time.
+     */
+    private long backoff(int attempts) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempts - 1, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    /**
+     * Marks the update as no longer in flight, pauses all updates if GitHub asked to wait,
+     * and sends what is waiting.
+     */
+    private void finish(StatusUpdate update, long rateLimitWait) {
+        synchronized (this) {
+            inFlight.remove(update.key());
+            if (rateLimitWait > 0) {
+                pausedUntilMillis = Math.max(pausedUntilMillis, System.currentTimeMillis() + rateLimitWait);
+            }
+            notifyAll();
+            if (!scheduler.isShutdown()) {
+                scheduler.execute(this::dispatch);
+            }
+        }
+    }
+
+    /**
+     * Waits until every queued update has been sent or given up.
+     * @return True if nothing is left to send.
+     */
+    synchronized boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (!pending.isEmpty() || !inFlight.isEmpty()) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the counters of the status queue and of the HTTP client as JSON.
+     */
+    synchronized JSONObject getStatistics() {
+        JSONObject stats = new JSONObject();
+        stats.put("pending", pending.size());
+        stats.put("inFlight", inFlight.size());
+        stats.put("queued", queued.get());
+        stats.put("collapsed", collapsed.get());
+        stats.put("sent", sent.get());
+        stats.put("retried", retried.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("rateLimited", rateLimited.get());
+        stats.put("pausedUntilMillis", pausedUntilMillis);
+        stats.put("http", http.getStatistics());
+        return stats;
+    }
+
+    /**
+     * Stops sending, updates still waiting are dropped.
+     */
+    @Override
+    public synchronized void close() {
+        scheduler.shutdownNow();
     }
 
     /**
@@ -92,4 +382,4 @@ class GitHubApiClient {
         
         throw new IllegalArgumentException("Invalid GitHub URL: " + cloneURL);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,300 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
+
+/**
+ * Cache of bare mirrors of the repositories the server builds.
+ *
+ * Each repository is cloned with "git clone --mirror" the first time it is
+ * built and only fetched incrementally afterwards. Build workspaces are
+ * created as local clones of the mirror, so no history is downloaded
+ * from the remote twice. The least recently used mirrors are deleted
+ * when the cache grows above its size limit.
+ */
+class GitMirrorCache {
+    static final String DEFAULT_FOLDER_NAME = "git-cache";
+
+    /**
+     * Data fetched from the remote into a mirror for a build.
+     * @param bytes         Growth of the mirror's object store, close to the bytes received.
+     * @param earlierMillis Time spent fetching for the build before the call that returned this,
+     *                      e.g. while looking up the tree hash.
+     * @param fullClone     True if the mirror was cloned from scratch.
+     */
+    record Transfer(long bytes, long earlierMillis, boolean fullClone) {
+        static final Transfer NONE = new Transfer(0, 0, false);
+
+        private Transfer plus(Transfer other) {
+            return new Transfer(bytes + other.bytes, earlierMillis + other.earlierMillis, fullClone || other.fullClone);
+        }
+    }
+
+    private final File cacheFolder;
+    private final long maxBytes;
+    private final CommandRunner commandRunner;
+
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    private final Map<String, Long> sizes = new ConcurrentHashMap<>();
+    /** Transfers done by treeHash, reported by the next cloneInto or fetchInto of the mirror. */
+    private final Map<String, Transfer> unreported = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a mirror cache in the given folder.
+     * @param cacheFolder Folder holding the mirrors, created if missing.
+     * @param maxBytes Size limit of the folder before mirrors are evicted.
+     * @param commandRunner Runs the git commands.
+     */
+    GitMirrorCache(File cacheFolder, long maxBytes, CommandRunner commandRunner) throws IOException {
+        if (cacheFolder.isFile()) {
+            throw new IllegalArgumentException("cacheFolder can not be an already existing file.");
+        }
+        Files.createDirectories(cacheFolder.toPath());
+        this.cacheFolder = cacheFolder;
+        this.maxBytes = maxBytes;
+        this.commandRunner = commandRunner;
+
+        File[] mirrors = cacheFolder.listFiles(File::isDirectory);
+        if (mirrors != null) {
+            for (File mirror : mirrors) {
+                sizes.put(mirror.getName(), sizeOf(mirror.toPath()));
+            }
+        }
+    }
+
+    /**
+     * Updates the mirror of the repository and clones it into the workspace.
+     * The workspace gets its own copy of the objects (hard linked when possible),
+     * so it stays valid even if the mirror is evicted later.
+     *
+     * @param url The url of the repository
+     * @param workspace An empty directory to clone into
+     * @return What was fetched from the remote for the build.
+     * @throws IOException If the mirror could not be updated or cloned.
+     */
+    Transfer cloneInto(String url, File workspace) throws IOException, InterruptedException {
+        String key = keyOf(url);
+        File mirror = new File(cacheFolder, key);
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+
+        Transfer transfer;
+        lock.lock();
+        try {
+            transfer = withUnreported(key, updateMirror(url, mirror, null));
+            commandRunner.runChecked(List.of("git", "clone", "--local", "--no-checkout", mirror.getAbsolutePath(), "."), workspace);
+        } finally {
+            lock.unlock();
+        }
+        commandRunner.runChecked(List.of("git", "remote", "set-url", "origin", url), workspace);
+
+        evictLeastRecentlyUsed(key);
+        return transfer;
+    }
+
+    /**
+     * Updates the mirror of the repository and fetches the commit from it
+     * into an existing clone of the repository.
+     *
+     * @param url The url of the repository
+     * @param commitId The commit to fetch. If null, the default branch is fetched.
+     * @param workspace A directory holding an earlier clone of the repository
+     * @return What was fetched from the remote for the build.
+     * @throws IOException If the mirror could not be updated or fetched from.
+     */
+    Transfer fetchInto(String url, String commitId, File workspace) throws IOException, InterruptedException {
+        String key = keyOf(url);
+        File mirror = new File(cacheFolder, key);
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+
+        Transfer transfer;
+        lock.lock();
+        try {
+            transfer = withUnreported(key, updateMirror(url, mirror, commitId));
+            commandRunner.runChecked(List.of("git", "fetch", "--no-tags", mirror.getAbsolutePath(),
+                commitId != null ? commitId : "HEAD"), workspace);
+        } finally {
+            lock.unlock();
+        }
+
+        evictLeastRecentlyUsed(key);
+        return transfer;
+    }
+
+    /**
+     * Updates the mirror of the repository and returns the hash of the
+     * tree of the commit, without checking anything out.
+     *
+     * @param url The url of the repository
+     * @param commitId The commit
+     * @return The tree hash, or null if the commit is not in the repository.
+     * @throws IOException If the mirror could not be updated.
+     */
+    String treeHash(String url, String commitId) throws IOException, InterruptedException {
+        String key = keyOf(url);
+        File mirror = new File(cacheFolder, key);
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            Transfer transfer = updateMirror(url, mirror, commitId);
+            if (transfer.bytes() > 0 || transfer.fullClone()) {
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                unreported.merge(key, new Transfer(transfer.bytes(), millis, transfer.fullClone()), Transfer::plus);
+            }
+            CommandRunner.Result result = commandRunner.run(
+                List.of("git", "rev-parse", "--verify", "--quiet", commitId + "^{tree}"), mirror);
+            return result.succeeded() ? result.output().trim() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the transfers of earlier tree hash lookups to a transfer.
+     */
+    private Transfer withUnreported(String key, Transfer transfer) {
+        Transfer earlier = unreported.remove(key);
+        return earlier == null ? transfer : earlier.plus(transfer);
+    }
+
+    /**
+     * Creates the mirror, or fetches into it if it already exists and does not
+     * hold the commit yet. Must be called while holding the lock of the mirror.
+     * @param commitId The commit that is needed, or null to always fetch.
+     * @return What was fetched from the remote, without earlier time.
+     */
+    private Transfer updateMirror(String url, File mirror, String commitId) throws IOException, InterruptedException {
+        if (commitId != null && new File(mirror, "HEAD").exists()
+                && commandRunner.run(List.of("git", "cat-file", "-e", commitId + "^{commit}"), mirror).succeeded()) {
+            // Commits never change, so a mirror that has it is up to date for this build
+            hits.incrementAndGet();
+            mirror.setLastModified(System.currentTimeMillis());
+            return Transfer.NONE;
+        }
+        long before = 0;
+        boolean fullClone = !new File(mirror, "HEAD").exists();
+        if (!fullClone) {
+            hits.incrementAndGet();
+            before = objectBytes(mirror, commandRunner);
+            commandRunner.runChecked(List.of("git", "remote", "update", "--prune"), mirror);
+        } else {
+            misses.incrementAndGet();
+            FileUtils.deleteDirectory(mirror);
+            commandRunner.runChecked(List.of("git", "clone", "--mirror", url, mirror.getName()), cacheFolder);
+        }
+        mirror.setLastModified(System.currentTimeMillis());
+        sizes.put(mirror.getName(), sizeOf(mirror.toPath()));
+        return new Transfer(Math.max(0, objectBytes(mirror, commandRunner) - before), 0, fullClone);
+    }
+
+    /**
+     * Returns the size of the objects of a repository as counted by
+     * "git count-objects", loose and packed, or 0 if it is no repository.
+     * Fetched objects are stored as they are received, so the growth of
+     * this size is close to the number of bytes fetched.
+     */
+    static long objectBytes(File repository, CommandRunner commandRunner) throws IOException, InterruptedException {
+        CommandRunner.Result result = commandRunner.run(List.of("git", "count-objects", "-v"), repository);
+        if (!result.succeeded()) {
+            return 0;
+        }
+        long kibibytes = 0;
+        for (String line : result.output().split("\n")) {
+            if (line.startsWith("size: ") || line.startsWith("size-pack: ")) {
+                kibibytes += Long.parseLong(line.substring(line.indexOf(' ') + 1).trim());
+            }
+        }
+        return kibibytes * 1024;
+    }
+
+    /**
+     * Deletes least recently used mirrors until the cache is below its size limit.
+     * Mirrors that are being updated are skipped, and so is the given mirror.
+     *
+     * @param keep Key of the mirror that was just used.
+     */
+    private synchronized void evictLeastRecentlyUsed(String keep) throws IOException {
+        long total = getSize();
+        if (total <= maxBytes) {
+            return;
+        }
+
+        List<String> keys = new ArrayList<>(sizes.keySet());
+        keys.sort(Comparator.comparingLong(key -> new File(cacheFolder, key).lastModified()));
+        for (String key : keys) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (key.equals(keep)) {
+                continue;
+            }
+            ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                FileUtils.deleteDirectory(new File(cacheFolder, key));
+                Long size = sizes.remove(key);
+                unreported.remove(key);
+                total -= size == null ? 0 : size;
+                evictions.incrementAndGet();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the total size of the mirrors in bytes.
+     */
+    long getSize() {
+        return sizes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Returns the statistics of the cache as JSON.
+     */
+    JSONObject getStatistics() {
+        JSONObject stats = new JSONObject();
+        stats.put("mirrors", sizes.size());
+        stats.put("sizeBytes", getSize());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    /**
+     * Returns the name of the mirror folder for a repository url.
+     */
+    static String keyOf(String url) {
+        return DigestUtils.sha256Hex(url).substring(0, 24) + ".git";
+    }
+
+    private static long sizeOf(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONObject;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+/**
+ * Counts the calls of an OkHttp client: calls in flight, a latency
+ * histogram, and how often a pooled connection is reused instead of a
+ * new connection (and TLS handshake) being made.
+ */
+class HttpClientMetrics implements EventListener.Factory {
+    /** Upper bounds of the latency buckets in milliseconds, the last bucket has no bound. */
+    private static final long[] LATENCY_BUCKETS_MILLIS = {50, 100, 250, 500, 1000, 2500, 5000};
+
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failedCalls = new AtomicLong();
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong http2Connections = new AtomicLong();
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS_MILLIS.length + 1);
+
+    @Override
+    public EventListener create(Call call) {
+        return new EventListener() {
+            private long startNanos;
+
+            @Override
+            public void callStart(Call call) {
+                startNanos = System.nanoTime();
+                inFlight.incrementAndGet();
+            }
+
+            @Override
+            public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+                connectionsOpened.incrementAndGet();
+                if (protocol == Protocol.HTTP_2) {
+                    http2Connections.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void connectionAcquired(Call call, Connection connection) {
+                connectionsAcquired.incrementAndGet();
+            }
+
+            @Override
+            public void callEnd(Call call) {
+                finish(false);
+            }
+
+            @Override
+            public void callFailed(Call call, IOException e) {
+                finish(true);
+            }
+
+            private void finish(boolean failed) {
+                inFlight.decrementAndGet();
+                calls.incrementAndGet();
+                if (failed) {
+                    failedCalls.incrementAndGet();
+                }
+                latencyBuckets.incrementAndGet(bucketOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+            }
+        };
+    }
+
+    private static int bucketOf(long millis) {
+        for (int i = 0; i < LATENCY_BUCKETS_MILLIS.length; i++) {
+            if (millis <= LATENCY_BUCKETS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BUCKETS_MILLIS.length;
+    }
+
+    /**
+     * Returns the counters as JSON. The latency histogram maps the upper bound
+     * of each bucket in milliseconds ("+Inf" for the last) to the number of calls.
+     */
+    JSONObject getStatistics() {
+        JSONObject stats = new JSONObject();
+        stats.put("inFlight", inFlight.get());
+        stats.put("calls", calls.get());
+        stats.put("failedCalls", failedCalls.get());
+        long acquired = connectionsAcquired.get();
+        long opened = connectionsOpened.get();
+        stats.put("connectionsOpened", opened);
+        stats.put("http2Connections", http2Connections.get());
+        stats.put("connectionReuseRate", acquired == 0 ? 0 : Math.max(0, acquired - opened) / (double) acquired);
+        JSONObject latency = new JSONObject();
+        for (int i = 0; i < latencyBuckets.length(); i++) {
+            String bound = i < LATENCY_BUCKETS_MILLIS.length ? Long.toString(LATENCY_BUCKETS_MILLIS[i]) : "+Inf";
+            latency.put(bound, latencyBuckets.get(i));
+        }
+        stats.put("latencyMillis", latency);
+        return stats;
+    }
+}
@@ -0,0 +1,426 @@
+package io.github.dd2480group14.ciserver;
+
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONException;
+
+/**
+ * Reads a JSON document from UTF-8 bytes one token at a time.
+ *
+ * Unlike JSONObject, which builds the whole tree, the parser only turns
+ * the values that are asked for into Strings. Values that are skipped
+ * are checked for valid syntax without being copied. The parser accepts
+ * strict JSON only and throws JSONException on anything else.
+ */
+class JsonPullParser {
+
+    /**
+     * Kinds of tokens.
+     */
+    enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, TRUE, FALSE, NULL, END_DOCUMENT }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private final byte[] bytes;
+    private final int end;
+    private int position;
+
+    private int[] stack = new int[16];
+    private int depth = 1;
+
+    private Token peeked;
+    private int numberStart;
+
+    /**
+     * Creates a parser of the given part of a buffer.
+     */
+    JsonPullParser(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.position = offset;
+        this.end = offset + length;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Returns the kind of the next token without consuming it.
+     */
+    Token peek() {
+        if (peeked == null) {
+            peeked = readToken();
+        }
+        return peeked;
+    }
+
+    /**
+     * Returns true if the current object or array has more elements.
+     */
+    boolean hasNext() {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    void beginObject() {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    void endObject() {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    void beginArray() {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    void endArray() {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * Returns the name of the next member of the current object.
+     */
+    String nextName() {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * Returns the next value, which must be a string.
+     */
+    String nextString() {
+        if (peek() != Token.STRING) {
+            throw syntaxError("Expected a string but was " + peeked);
+        }
+        peeked = null;
+        return readString();
+    }
+
+    /**
+     * Returns the next value as text the way JSONObject.optString does:
+     * strings as they are, numbers and booleans as written, and the
+     * default for null, objects and arrays, which are skipped.
+     */
+    String nextOptString(String defaultValue) {
+        Token token = peek();
+        switch (token) {
+            case STRING:
+                return nextString();
+            case NUMBER:
+                peeked = null;
+                return new String(bytes, numberStart, position - numberStart, StandardCharsets.US_ASCII);
+            case TRUE:
+            case FALSE:
+                peeked = null;
+                return token == Token.TRUE ? "true" : "false";
+            default:
+                skipValue();
+                return defaultValue;
+        }
+    }
+
+    /**
+     * Skips the next value, including everything nested in it.
+     */
+    void skipValue() {
+        int nesting = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT -> {
+                    beginObject();
+                    nesting++;
+                }
+                case BEGIN_ARRAY -> {
+                    beginArray();
+                    nesting++;
+                }
+                case END_OBJECT -> {
+                    endObject();
+                    nesting--;
+                }
+                case END_ARRAY -> {
+                    endArray();
+                    nesting--;
+                }
+                case NAME, STRING -> {
+                    peeked = null;
+                    skipString();
+                }
+                case END_DOCUMENT -> throw syntaxError("Unexpected end of document");
+                default -> peeked = null;
+            }
+        } while (nesting > 0);
+    }
+
+    private void expect(Token token) {
+        if (peek() != token) {
+            throw syntaxError("Expected " + token + " but was " + peeked);
+        }
+        peeked = null;
+    }
+
+    private void push(int context) {
+        if (depth == stack.length) {
+            int[] larger = new int[depth * 2];
+            System.arraycopy(stack, 0, larger, 0, depth);
+            stack = larger;
+        }
+        stack[depth++] = context;
+    }
+
+    /**
+     * Reads the punctuation up to the next token. Strings are left
+     * unread, just after their opening quote.
+     */
+    private Token readToken() {
+        int context = stack[depth - 1];
+        switch (context) {
+            case EMPTY_ARRAY, NONEMPTY_ARRAY -> {
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                int c = nextNonWhitespace();
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                }
+                if (c == -1) {
+                    throw syntaxError("Unterminated array");
+                }
+                if (context == NONEMPTY_ARRAY) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or ']'");
+                    }
+                } else {
+                    position--;
+                }
+                return readValue();
+            }
+            case EMPTY_OBJECT, NONEMPTY_OBJECT -> {
+                stack[depth - 1] = DANGLING_NAME;
+                int c = nextNonWhitespace();
+                if (c == '}') {
+                    return Token.END_OBJECT;
+                }
+                if (context == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                return Token.NAME;
+            }
+            case DANGLING_NAME -> {
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                return readValue();
+            }
+            case EMPTY_DOCUMENT -> {
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                return readValue();
+            }
+            default -> {
+                if (nextNonWhitespace() != -1) {
+                    throw syntaxError("Expected end of document");
+                }
+                return Token.END_DOCUMENT;
+            }
+        }
+    }
+
+    private Token readValue() {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+                readLiteral("rue");
+                return Token.TRUE;
+            case 'f':
+                readLiteral("alse");
+                return Token.FALSE;
+            case 'n':
+                readLiteral("ull");
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber();
+                    return Token.NUMBER;
+                }
+                throw syntaxError(c == -1 ? "Unexpected end of document" : "Unexpected character");
+        }
+    }
+
+    private void readLiteral(String rest) {
+        for (int i = 0; i < rest.length(); i++) {
+            if (position >= end || bytes[position++] != rest.charAt(i)) {
+                throw syntaxError("Invalid literal");
+            }
+        }
+    }
+
+    private void readNumber() {
+        numberStart = --position;
+        if (bytes[position] == '-') {
+            position++;
+        }
+        if (position < end && bytes[position] == '0') {
+            position++;
+        } else if (skipDigits() == 0) {
+            throw syntaxError("Invalid number");
+        }
+        if (position < end && bytes[position] == '.') {
+            position++;
+            if (skipDigits() == 0) {
+                throw syntaxError("Invalid number");
+            }
+        }
+        if (position < end && (bytes[position] == 'e' || bytes[position] == 'E')) {
+            position++;
+            if (position < end && (bytes[position] == '+' || bytes[position] == '-')) {
+                position++;
+            }
+            if (skipDigits() == 0) {
+                throw syntaxError("Invalid number");
+            }
+        }
+    }
+
+    private int skipDigits() {
+        int start = position;
+        while (position < end && bytes[position] >= '0' && bytes[position] <= '9') {
+            position++;
+        }
+        return position - start;
+    }
+
+    private int nextNonWhitespace() {
+        while (position < end) {
+            byte b = bytes[position++];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b & 0xff;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a string after its opening quote. Strings without escapes
+     * are decoded straight from the buffer.
+     */
+    private String readString() {
+        int start = position;
+        while (position < end) {
+            byte b = bytes[position];
+            if (b == '"') {
+                String value = new String(bytes, start, position - start, StandardCharsets.UTF_8);
+                position++;
+                return value;
+            }
+            if (b == '\\') {
+                return readEscapedString(start);
+            }
+            if ((b & 0xff) < 0x20) {
+                throw syntaxError("Unescaped control character in string");
+            }
+            position++;
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private String readEscapedString(int start) {
+        StringBuilder builder = new StringBuilder();
+        int segment = start;
+        while (position < end) {
+            byte b = bytes[position];
+            if (b == '"') {
+                builder.append(new String(bytes, segment, position - segment, StandardCharsets.UTF_8));
+                position++;
+                return builder.toString();
+            }
+            if ((b & 0xff) < 0x20) {
+                throw syntaxError("Unescaped control character in string");
+            }
+            if (b != '\\') {
+                position++;
+                continue;
+            }
+            builder.append(new String(bytes, segment, position - segment, StandardCharsets.UTF_8));
+            if (position + 1 >= end) {
+                break;
+            }
+            byte escaped = bytes[position + 1];
+            position += 2;
+            switch (escaped) {
+                case '"', '\\', '/' -> builder.append((char) escaped);
+                case 'b' -> builder.append('\b');
+                case 'f' -> builder.append('\f');
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 't' -> builder.append('\t');
+                case 'u' -> builder.append(readUnicodeEscape());
+                default -> throw syntaxError("Invalid escape");
+            }
+            segment = position;
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private char readUnicodeEscape() {
+        if (position + 4 > end) {
+            throw syntaxError("Invalid unicode escape");
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(bytes[position++], 16);
+            if (digit < 0) {
+                throw syntaxError("Invalid unicode escape");
+            }
+            value = value << 4 | digit;
+        }
+        return (char) value;
+    }
+
+    /**
+     * Skips a string after its opening quote without decoding it.
+     */
+    private void skipString() {
+        while (position < end) {
+            byte b = bytes[position++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                if (position >= end) {
+                    break;
+                }
+                switch (bytes[position++]) {
+                    case '"', '\\', '/', 'b', 'f', 'n', 'r', 't' -> { }
+                    case 'u' -> readUnicodeEscape();
+                    default -> throw syntaxError("Invalid escape");
+                }
+            } else if ((b & 0xff) < 0x20) {
+                throw syntaxError("Unescaped control character in string");
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at byte " + position);
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes each line to the target with a prefix, in a single write, so
+ * the output of stages running in parallel can share a build log
+ * without lines getting mixed up.
+ */
+class LinePrefixOutputStream extends OutputStream {
+    private final byte[] prefix;
+    private final OutputStream target;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    /**
+     * Creates a stream prefixing lines written to the target.
+     * @param prefix Written before every line, e.g. "[test] ".
+     * @param target Receives the prefixed lines. Must write each call atomically.
+     */
+    LinePrefixOutputStream(String prefix, OutputStream target) {
+        this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+        this.target = target;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (line.size() == 0) {
+            line.write(prefix);
+        }
+        line.write(b);
+        if (b == '\n') {
+            writeLine();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        for (int i = offset; i < offset + count; i++) {
+            write(bytes[i]);
+        }
+    }
+
+    private void writeLine() throws IOException {
+        target.write(line.toByteArray());
+        line.reset();
+    }
+
+    /**
+     * Writes the last line if it did not end with a newline. The target is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (line.size() > 0) {
+            line.write('\n');
+            writeLine();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Log file of a build that is still running.
+ *
+ * Output is appended to the file as it is produced instead of being
+ * collected in memory, and any number of followers can tail the file
+ * while it grows. Each follower keeps its own position in the file, so
+ * nothing is read twice.
+ *
+ * The file is written through a FileOutputStream rather than a
+ * FileChannel, because interrupting a thread that writes to a channel
+ * closes the channel. A build stopped by the watchdog is interrupted
+ * and must still be able to log why it was stopped.
+ */
+class LiveBuildLog implements Closeable {
+    private final String buildId;
+    private final Path path;
+    private final FileOutputStream file;
+
+    private long length;
+    private boolean complete;
+
+    /**
+     * Opens the (already created) log file for appending.
+     * @param buildId The build ID of the log.
+     * @param path Path of the log file.
+     */
+    LiveBuildLog(String buildId, Path path) throws IOException {
+        this.buildId = buildId;
+        this.path = path;
+        this.length = Files.size(path);
+        this.file = new FileOutputStream(path.toFile(), true);
+    }
+
+    /**
+     * Returns the build ID of the log.
+     */
+    String getBuildId() {
+        return buildId;
+    }
+
+    /**
+     * Returns true once the build has finished writing the log.
+     */
+    synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Appends bytes to the log and wakes up the followers.
+     */
+    synchronized void write(byte[] bytes, int offset, int count) throws IOException {
+        file.write(bytes, offset, count);
+        length += count;
+        notifyAll();
+    }
+
+    /**
+     * Appends a line of text to the log.
+     */
+    void writeLine(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns an output stream appending to the log, e.g. for process output.
+     * Closing the stream does not close the log.
+     */
+    OutputStream asOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                LiveBuildLog.this.write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int count) throws IOException {
+                LiveBuildLog.this.write(bytes, offset, count);
+            }
+        };
+    }
+
+    /**
+     * Marks the log as complete, closes the file and releases the followers.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        complete = true;
+        file.close();
+        notifyAll();
+    }
+
+    /**
+     * Copies the log to the output, from the beginning, as it is written.
+     * Returns once the log is complete and everything has been copied.
+     *
+     * @param out The stream to copy the log to. Flushed after every chunk.
+     */
+    void follow(OutputStream out) throws IOException, InterruptedException {
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = 0;
+            while (true) {
+                long available;
+                boolean done;
+                synchronized (this) {
+                    while (position >= length && !complete) {
+                        wait();
+                    }
+                    available = length;
+                    done = complete;
+                }
+                while (position < available) {
+                    position += reader.transferTo(position, available - position, target);
+                }
+                out.flush();
+                if (done) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * How build logs are compressed on disk.
+ *
+ * The compression of a log is recognized from its file name: "12.log" is
+ * plain text, "12.log.gz" is gzip and "12.log.zst" is zstd compressed.
+ */
+enum LogCompression {
+    NONE("", null),
+    GZIP(".gz", "gzip"),
+    ZSTD(".zst", "zstd");
+
+    private final String suffix;
+    private final String contentEncoding;
+
+    LogCompression(String suffix, String contentEncoding) {
+        this.suffix = suffix;
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * Returns the suffix added after ".log" in the file name.
+     */
+    String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Returns the HTTP Content-Encoding of the compression, or null if uncompressed.
+     */
+    String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * Parses a compression name, ignoring case.
+     * @throws IllegalArgumentException If the name is not a compression.
+     */
+    static LogCompression parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown log compression: " + name, e);
+        }
+    }
+
+    /**
+     * Returns the compression of a log file based on its name.
+     */
+    static LogCompression of(File file) {
+        String name = file.getName();
+        for (LogCompression compression : values()) {
+            if (compression != NONE && name.endsWith(".log" + compression.suffix)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the build ID of a log file name, or null if it is not a log file.
+     */
+    static String buildIdOf(String fileName) {
+        for (LogCompression compression : values()) {
+            String extension = ".log" + compression.suffix;
+            if (fileName.endsWith(extension)) {
+                return fileName.substring(0, fileName.length() - extension.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the log file of a build in the folder, or null if there is none.
+     * A compressed log is preferred over a plain one, since the plain file of a
+     * log that is being compressed is deleted only after the compressed file is complete.
+     */
+    static File findLog(File folder, String buildId) {
+        for (LogCompression compression : List.of(ZSTD, GZIP, NONE)) {
+            File file = new File(folder, buildId + ".log" + compression.suffix);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wraps a stream so that what is written to it is compressed.
+     */
+    OutputStream compress(OutputStream out) throws IOException {
+        return switch (this) {
+            case NONE -> out;
+            case GZIP -> new GZIPOutputStream(out, 65536);
+            case ZSTD -> new BufferedOutputStream(new ZstdOutputStream(out), 65536);
+        };
+    }
+
+    /**
+     * Wraps a stream of compressed data so that it is decompressed on the fly.
+     */
+    InputStream decompress(InputStream in) throws IOException {
+        return switch (this) {
+            case NONE -> in;
+            case GZIP -> new GZIPInputStream(in, 65536);
+            case ZSTD -> new BufferedInputStream(new ZstdInputStream(in), 65536);
+        };
+    }
+
+    /**
+     * Opens a log file for reading its decompressed content.
+     */
+    static InputStream open(File file) throws IOException {
+        return of(file).decompress(Files.newInputStream(file.toPath()));
+    }
+
+    /**
+     * Compresses a plain log file into a sibling file with this compression's suffix
+     * and deletes the plain file. The compressed file is moved into place atomically,
+     * so readers see either the plain or the complete compressed log.
+     *
+     * @param plain The uncompressed log file.
+     * @return The compressed log file.
+     */
+    File compressFile(File plain) throws IOException {
+        if (this == NONE) {
+            return plain;
+        }
+        Path target = plain.toPath().resolveSibling(plain.getName() + suffix);
+        Path temporary = plain.toPath().resolveSibling(plain.getName() + suffix + ".tmp");
+        try (OutputStream out = compress(Files.newOutputStream(temporary))) {
+            Files.copy(plain.toPath(), out);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(plain.toPath());
+        return target.toFile();
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Sends a log file as the response to a GET request.
+ *
+ * The file is copied straight from its FileChannel to the response
+ * without being read into a String first. Conditional requests
+ * (If-None-Match, If-Modified-Since) are answered with 304 Not Modified,
+ * and a single byte range (e.g. "bytes=-10000" for the tail of a log)
+ * is answered with 206 Partial Content. Ranges of a compressed log refer
+ * to its compressed bytes.
+ */
+class LogFileSender {
+    private static final Pattern SINGLE_RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
+    /**
+     * Sends the file, or the part of it selected by the Range header.
+     * A compressed log is sent as it is stored, with a Content-Encoding header,
+     * if the client accepts that encoding, and decompressed on the fly otherwise.
+     *
+     * @param file The log file, must exist.
+     * @param request The GET request.
+     * @param response The response to write the file to.
+     */
+    static void send(File file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        LogCompression compression = LogCompression.of(file);
+        boolean decompress = compression != LogCompression.NONE
+            && !acceptsEncoding(request.getHeader("Accept-Encoding"), compression.getContentEncoding());
+        String representation = compression == LogCompression.NONE ? ""
+            : decompress ? "-identity" : "-" + compression.getContentEncoding();
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + representation + "\"";
+
+        response.setContentType("text/plain;charset=utf-8");
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+        if (compression != LogCompression.NONE) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (decompress) {
+            // The decompressed length is unknown, so neither Content-Length nor ranges can be sent
+            response.setHeader("Accept-Ranges", "none");
+            try (InputStream in = LogCompression.open(file)) {
+                in.transferTo(response.getOutputStream());
+            }
+            return;
+        }
+
+        response.setHeader("Accept-Ranges", "bytes");
+        if (compression != LogCompression.NONE) {
+            response.setHeader("Content-Encoding", compression.getContentEncoding());
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader("Range");
+        String ifRange = request.getHeader("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            Matcher matcher = SINGLE_RANGE.matcher(range.trim());
+            if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+                if (matcher.group(1).isEmpty()) {
+                    // Suffix range, the last n bytes
+                    start = Math.max(0, length - Long.parseLong(matcher.group(2)));
+                } else {
+                    start = Long.parseLong(matcher.group(1));
+                    if (!matcher.group(2).isEmpty()) {
+                        end = Math.min(end, Long.parseLong(matcher.group(2)));
+                    }
+                }
+                if (start >= length || start > end) {
+                    response.setHeader("Content-Range", "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+            // Multiple or malformed ranges are ignored and the whole file is sent
+        }
+
+        long count = end - start + 1;
+        response.setHeader("Content-Length", Long.toString(count));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                position += channel.transferTo(position, end + 1 - position, target);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the Accept-Encoding header allows the given encoding.
+     */
+    static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String name = tokens[0].trim();
+            if (!name.equalsIgnoreCase(encoding) && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < tokens.length; i++) {
+                String parameter = tokens[i].trim().replace(" ", "");
+                if (parameter.equals("q=0") || parameter.matches("q=0\\.0*")) {
+                    rejected = true;
+                }
+            }
+            return !rejected;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the client's cached copy, identified by its ETag
+     * or modification date, is still current.
+     */
+    private static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String trimmed = tag.trim();
+                if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        // HTTP dates have second precision
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+}
@@ -0,0 +1,251 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.json.JSONObject;
+
+/**
+ * Removes old build logs so the logs folder does not grow forever.
+ *
+ * A background thread applies the retention policy every few minutes.
+ * Builds that fall outside the policy are deleted, or moved into a zip
+ * segment in the archive folder together with their index entries, and
+ * the build index is rewritten without them.
+ */
+class LogRetention implements Closeable {
+    static final String ARCHIVE_FOLDER_NAME = "archive";
+
+    /**
+     * Which builds are kept. A limit of 0 means no limit.
+     * @param keepPerBranch Number of newest builds kept for each branch.
+     * @param maxAgeDays    Builds started more days ago than this are removed.
+     * @param maxTotalBytes The oldest builds are removed until all logs fit in this size.
+     * @param archive       True to move removed logs into the archive instead of deleting them.
+     */
+    record Policy(int keepPerBranch, int maxAgeDays, long maxTotalBytes, boolean archive) {
+
+        /**
+         * Returns true if any limit is set.
+         */
+        boolean isEnabled() {
+            return keepPerBranch > 0 || maxAgeDays > 0 || maxTotalBytes > 0;
+        }
+    }
+
+    private final File logsFolder;
+    private final BuildIndex buildIndex;
+    private final Policy policy;
+    private final LongPredicate inUse;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong deletedBuilds = new AtomicLong();
+    private final AtomicLong archivedBuilds = new AtomicLong();
+    private final AtomicLong freedBytes = new AtomicLong();
+    private volatile long lastRunMillis;
+
+    /**
+     * Creates the retention engine. Nothing is removed until {@link #start} or {@link #apply} is called.
+     * @param logsFolder The folder holding the build logs.
+     * @param buildIndex The index of the builds in the folder.
+     * @param policy     Which builds to keep.
+     * @param inUse      Returns true for build IDs whose log must not be touched, e.g. running builds.
+     */
+    LogRetention(File logsFolder, BuildIndex buildIndex, Policy policy, LongPredicate inUse) {
+        this.logsFolder = logsFolder;
+        this.buildIndex = buildIndex;
+        this.policy = policy;
+        this.inUse = inUse;
+    }
+
+    /**
+     * Applies the policy now and then every interval, if the policy sets any limit.
+     */
+    void start(long intervalMinutes) {
+        if (policy.isEnabled()) {
+            scheduler.scheduleWithFixedDelay(this::applyQuietly, 0, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    private void applyQuietly() {
+        try {
+            apply(LocalDate.now());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not apply log retention: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the builds outside the policy.
+     * @param today The date the maximum age is counted from.
+     * @return The number of builds removed.
+     */
+    synchronized int apply(LocalDate today) throws IOException {
+        long start = System.currentTimeMillis();
+        List<BuildIndex.Entry> expired = selectExpired(today);
+        if (!expired.isEmpty()) {
+            if (policy.archive()) {
+                archive(expired);
+            }
+            List<Long> ids = new ArrayList<>();
+            for (BuildIndex.Entry entry : expired) {
+                ids.add(entry.id());
+            }
+            buildIndex.removeAll(ids);
+            for (BuildIndex.Entry entry : expired) {
+                File log = LogCompression.findLog(logsFolder, Long.toString(entry.id()));
+                if (log != null) {
+                    long bytes = log.length();
+                    Files.deleteIfExists(log.toPath());
+                    freedBytes.addAndGet(bytes);
+                }
+            }
+            (policy.archive() ? archivedBuilds : deletedBuilds).addAndGet(expired.size());
+        }
+        runs.incrementAndGet();
+        lastRunMillis = System.currentTimeMillis() - start;
+        return expired.size();
+    }
+
+    /**
+     * Returns the builds outside the policy, oldest first.
+     */
+    private List<BuildIndex.Entry> selectExpired(LocalDate today) {
+        Map<Long, BuildIndex.Entry> expired = new LinkedHashMap<>();
+        List<BuildIndex.Entry> kept = new ArrayList<>();
+        Map<String, Integer> newerBuildsOfBranch = new HashMap<>();
+
+        List<BuildIndex.Entry> newestFirst = buildIndex.list();
+        Collections.reverse(newestFirst);
+        for (BuildIndex.Entry entry : newestFirst) {
+            if (inUse.test(entry.id())) {
+                continue;
+            }
+            int newer = newerBuildsOfBranch.merge(String.valueOf(entry.branch()), 1, Integer::sum) - 1;
+            if ((policy.keepPerBranch() > 0 && newer >= policy.keepPerBranch()) || isTooOld(entry, today)) {
+                expired.put(entry.id(), entry);
+            } else {
+                kept.add(entry);
+            }
+        }
+
+        if (policy.maxTotalBytes() > 0) {
+            long totalBytes = 0;
+            for (BuildIndex.Entry entry : kept) {
+                totalBytes += logSize(entry.id());
+            }
+            // Oldest kept builds go first until the rest fits
+            for (int i = kept.size() - 1; i >= 0 && totalBytes > policy.maxTotalBytes(); i--) {
+                BuildIndex.Entry entry = kept.get(i);
+                totalBytes -= logSize(entry.id());
+                expired.put(entry.id(), entry);
+            }
+        }
+
+        List<BuildIndex.Entry> oldestFirst = new ArrayList<>(expired.values());
+        oldestFirst.sort((a, b) -> Long.compare(a.id(), b.id()));
+        return oldestFirst;
+    }
+
+    private boolean isTooOld(BuildIndex.Entry entry, LocalDate today) {
+        if (policy.maxAgeDays() <= 0 || entry.date() == null) {
+            return false;
+        }
+        try {
+            return LocalDate.parse(entry.date()).isBefore(today.minusDays(policy.maxAgeDays()));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private long logSize(long id) {
+        File log = LogCompression.findLog(logsFolder, Long.toString(id));
+        return log == null ? 0 : log.length();
+    }
+
+    /**
+     * Writes the logs and index entries of the builds into a new zip segment,
+     * named after the first and last build ID in it. The segment is moved into
+     * place only when it is complete.
+     */
+    private void archive(List<BuildIndex.Entry> builds) throws IOException {
+        File archiveFolder = new File(logsFolder, ARCHIVE_FOLDER_NAME);
+        Files.createDirectories(archiveFolder.toPath());
+        String name = "segment-" + builds.get(0).id() + "-" + builds.get(builds.size() - 1).id() + ".zip";
+        Path segment = archiveFolder.toPath().resolve(name);
+        Path temporary = archiveFolder.toPath().resolve(name + ".tmp");
+
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(temporary))) {
+            StringBuilder index = new StringBuilder();
+            for (BuildIndex.Entry entry : builds) {
+                index.append(entry.toJSON()).append("\n");
+                File log = LogCompression.findLog(logsFolder, Long.toString(entry.id()));
+                if (log == null) {
+                    continue;
+                }
+                ZipEntry zipEntry = new ZipEntry(log.getName());
+                // Compressed logs would not get any smaller
+                zip.setLevel(LogCompression.of(log) == LogCompression.NONE ? 6 : 0);
+                zip.putNextEntry(zipEntry);
+                Files.copy(log.toPath(), zip);
+                zip.closeEntry();
+            }
+            zip.setLevel(6);
+            zip.putNextEntry(new ZipEntry(BuildIndex.INDEX_FILE_NAME));
+            zip.write(index.toString().getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        Files.move(temporary, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns statistics about the removed builds as JSON.
+     */
+    JSONObject getStatistics() {
+        JSONObject stats = new JSONObject();
+        stats.put("enabled", policy.isEnabled());
+        stats.put("keepPerBranch", policy.keepPerBranch());
+        stats.put("maxAgeDays", policy.maxAgeDays());
+        stats.put("maxTotalBytes", policy.maxTotalBytes());
+        stats.put("runs", runs.get());
+        stats.put("deletedBuilds", deletedBuilds.get());
+        stats.put("archivedBuilds", archivedBuilds.get());
+        stats.put("freedBytes", freedBytes.get());
+        stats.put("lastRunMillis", lastRunMillis);
+        stats.put("indexedBuilds", buildIndex.size());
+        return stats;
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,180 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Decides how much of a reused workspace has to be rebuilt.
+ *
+ * The workspace remembers the commit its target directories were built
+ * from. The files changed since then come from the push payload when the
+ * push starts at that commit, and from git otherwise. A build without
+ * removed files or changed poms keeps the compiled classes, and in a
+ * multi-module project only the modules with changes and the modules
+ * depending on them are built. The modules they depend on are built as
+ * well, since a reactor resolves the other modules from its own build
+ * rather than from the local repository, where they may never have been installed.
+ */
+class MavenBuildPlanner {
+    /** File in the .git folder of a workspace holding the SHA its target directories were built from. */
+    static final String LAST_BUILD_FILE_NAME = "ci-last-build";
+    /** Nesting depth up to which modules of modules are found. */
+    private static final int MAX_MODULE_DEPTH = 4;
+
+    /**
+     * How a build is run.
+     * @param command The Maven command.
+     * @param modules The modules the build is restricted to, empty for the whole project.
+     * @param reason  Why this plan was chosen, for the build log.
+     */
+    record Plan(List<String> command, List<String> modules, String reason) {
+
+        /**
+         * Returns true if every module is built and tested.
+         */
+        boolean isComplete() {
+            return modules.isEmpty();
+        }
+
+        /**
+         * Returns a one line summary of the plan for the build log.
+         */
+        String summary() {
+            return "Build plan: " + String.join(" ", command) + " (" + reason + ")";
+        }
+    }
+
+    private final CommandRunner commandRunner;
+
+    MavenBuildPlanner(CommandRunner commandRunner) {
+        this.commandRunner = commandRunner;
+    }
+
+    /**
+     * Plans the build of a commit checked out in a workspace, and forgets
+     * the last built commit until {@link #markBuilt} is called, so a build
+     * that is cut short is followed by a clean one.
+     *
+     * @param workspace The workspace with the commit checked out.
+     * @param changes   The files changed by the push.
+     * @return The build to run.
+     */
+    Plan plan(File workspace, PushChanges changes) throws IOException, InterruptedException {
+        File marker = new File(workspace, ".git/" + LAST_BUILD_FILE_NAME);
+        String lastBuilt = marker.isFile() ? Files.readString(marker.toPath(), StandardCharsets.UTF_8).trim() : null;
+        Files.deleteIfExists(marker.toPath());
+
+        if (lastBuilt == null) {
+            return clean("no earlier build in workspace");
+        }
+
+        List<String> changed;
+        List<String> removed;
+        if (changes.complete() && lastBuilt.equals(changes.before())) {
+            changed = changes.changed();
+            removed = changes.removed();
+        } else {
+            CommandRunner.Result diff = commandRunner.run(
+                List.of("git", "diff", "--name-status", "--no-renames", lastBuilt, "HEAD"), workspace);
+            if (!diff.succeeded()) {
+                return clean("changes since " + lastBuilt + " unknown");
+            }
+            changed = new ArrayList<>();
+            removed = new ArrayList<>();
+            for (String line : diff.output().split("\n")) {
+                String[] parts = line.split("\t", 2);
+                if (parts.length == 2) {
+                    (parts[0].startsWith("D") ? removed : changed).add(parts[1]);
+                }
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            return clean("files removed, compiled classes may be stale");
+        }
+        if (changed.stream().anyMatch(path -> path.equals("pom.xml") || path.endsWith("/pom.xml"))) {
+            return clean("pom.xml changed");
+        }
+
+        List<String> modules = findModules(workspace, "", 0);
+        if (modules.isEmpty() || changed.isEmpty()) {
+            return new Plan(List.of("mvn", "test"), List.of(), changed.size() + " files changed");
+        }
+        Set<String> affected = new LinkedHashSet<>();
+        for (String path : changed) {
+            String module = moduleOf(path, modules);
+            if (module == null) {
+                return new Plan(List.of("mvn", "test"), List.of(), path + " is outside the modules");
+            }
+            affected.add(module);
+        }
+        List<String> command = new ArrayList<>(List.of("mvn", "test", "-pl", String.join(",", affected), "-am", "-amd"));
+        return new Plan(command, List.copyOf(affected), changed.size() + " files changed in " + affected.size() + " modules");
+    }
+
+    private static Plan clean(String reason) {
+        return new Plan(List.of("mvn", "clean", "test"), List.of(), reason);
+    }
+
+    /**
+     * Remembers that the target directories of the workspace are built from the commit.
+     */
+    void markBuilt(File workspace, String sha) throws IOException {
+        Files.writeString(new File(workspace, ".git/" + LAST_BUILD_FILE_NAME).toPath(), sha, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the module whose directory holds the path, the most deeply nested one if several do.
+     */
+    private static String moduleOf(String path, List<String> modules) {
+        String best = null;
+        for (String module : modules) {
+            if (path.startsWith(module + "/") && (best == null || module.length() > best.length())) {
+                best = module;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the module directories declared in the pom of the directory and
+     * its modules, relative to the workspace.
+     */
+    private static List<String> findModules(File workspace, String directory, int depth) throws IOException {
+        List<String> modules = new ArrayList<>();
+        File pom = new File(workspace, directory.isEmpty() ? "pom.xml" : directory + "/pom.xml");
+        if (depth >= MAX_MODULE_DEPTH || !pom.isFile()) {
+            return modules;
+        }
+        NodeList declared;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            Document document = factory.newDocumentBuilder().parse(pom);
+            declared = document.getElementsByTagName("module");
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Could not read " + pom.getName() + " of " + (directory.isEmpty() ? "project" : directory), e);
+        }
+        for (int i = 0; i < declared.getLength(); i++) {
+            String module = declared.item(i).getTextContent().trim();
+            String path = module.replace('\\', '/').replaceAll("/+$", "");
+            path = directory.isEmpty() ? path : directory + "/" + path;
+            modules.add(path);
+            modules.addAll(findModules(workspace, path, depth + 1));
+        }
+        return modules;
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The build stages of a repository, read from a pipeline file in the
+ * root of the repository:
+ *
+ * <pre>
+ * {
+ *   "stages": [
+ *     { "name": "compile", "command": ["mvn", "compile"] },
+ *     { "name": "test", "command": ["mvn", "test"], "needs": ["compile"] },
+ *     { "name": "checkstyle", "command": ["mvn", "checkstyle:check"], "needs": ["compile"] }
+ *   ]
+ * }
+ * </pre>
+ *
+ * A stage starts once the stages it needs have passed, so stages that
+ * do not need each other run in parallel.
+ *
+ * @param stages The stages in the order they are declared.
+ */
+record Pipeline(List<Stage> stages) {
+    static final String PIPELINE_FILE_NAME = ".ci-pipeline.json";
+
+    /**
+     * A single stage.
+     * @param name    Name of the stage, unique in the pipeline.
+     * @param command The command run in the workspace.
+     * @param needs   Names of the stages that must pass before this one starts.
+     */
+    record Stage(String name, List<String> command, List<String> needs) {}
+
+    /**
+     * Reads the pipeline file of a workspace.
+     * @param workspace The cloned repository.
+     * @return The pipeline, or null if the repository has no pipeline file.
+     * @throws IllegalArgumentException If the pipeline file is not valid.
+     */
+    static Pipeline load(File workspace) throws IOException {
+        File file = new File(workspace, PIPELINE_FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return fromJSON(new JSONObject(Files.readString(file.toPath(), StandardCharsets.UTF_8)));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(PIPELINE_FILE_NAME + " is not valid: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates a pipeline from its JSON definition.
+     * @throws IllegalArgumentException If stages are missing, duplicated, need unknown stages or need each other.
+     */
+    static Pipeline fromJSON(JSONObject json) {
+        JSONArray stageArray = json.getJSONArray("stages");
+        Map<String, Stage> stages = new LinkedHashMap<>();
+        for (int i = 0; i < stageArray.length(); i++) {
+            JSONObject stageObject = stageArray.getJSONObject(i);
+            String name = stageObject.getString("name");
+            List<String> command = toStrings(stageObject.getJSONArray("command"));
+            JSONArray needs = stageObject.optJSONArray("needs");
+            if (command.isEmpty()) {
+                throw new IllegalArgumentException("Stage " + name + " has no command");
+            }
+            if (stages.put(name, new Stage(name, command, needs == null ? List.of() : toStrings(needs))) != null) {
+                throw new IllegalArgumentException("Stage " + name + " is defined twice");
+            }
+        }
+        if (stages.isEmpty()) {
+            throw new IllegalArgumentException("Pipeline has no stages");
+        }
+
+        // Every stage must be reachable by repeatedly starting the stages whose needs have passed
+        Set<String> done = new HashSet<>();
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (Stage stage : stages.values()) {
+                for (String need : stage.needs()) {
+                    if (!stages.containsKey(need)) {
+                        throw new IllegalArgumentException("Stage " + stage.name() + " needs unknown stage " + need);
+                    }
+                }
+                if (!done.contains(stage.name()) && done.containsAll(stage.needs())) {
+                    done.add(stage.name());
+                    progress = true;
+                }
+            }
+        }
+        if (done.size() < stages.size()) {
+            throw new IllegalArgumentException("Stages need each other in a cycle");
+        }
+        return new Pipeline(List.copyOf(stages.values()));
+    }
+
+    private static List<String> toStrings(JSONArray array) {
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            strings.add(array.getString(i));
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,266 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import org.apache.commons.io.output.TeeOutputStream;
+
+/**
+ * Runs the stages of a pipeline, each as its own process.
+ *
+ * A stage is started as soon as all stages it needs have passed, so
+ * independent stages run at the same time. When a stage fails, the stages
+ * still running are cancelled by killing their processes, and the stages
+ * that have not started yet are skipped. Every line a stage prints is
+ * written to the build log prefixed with the name of the stage.
+ */
+class PipelineRunner {
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /**
+     * State of a stage.
+     */
+    enum StageStatus { RUNNING, PASSED, FAILED, CANCELLED, SKIPPED }
+
+    /**
+     * State of a stage and the time it has taken.
+     * @param name           Name of the stage.
+     * @param status         RUNNING when the stage starts, the outcome when it is done.
+     * @param durationMillis Time the stage ran, 0 if it did not run.
+     */
+    record StageResult(String name, StageStatus status, long durationMillis) {
+
+        /**
+         * Returns a one line summary of the stage for the build log.
+         */
+        String summary() {
+            return "Stage " + name + ": " + status.name().toLowerCase()
+                + (status == StageStatus.SKIPPED ? "" : " in " + durationMillis + " ms");
+        }
+    }
+
+    /** A stage that has been submitted and has not finished yet. */
+    private record Started(Pipeline.Stage stage, long startMillis) {}
+
+    private final CommandRunner commandRunner;
+    private final UnaryOperator<List<String>> mavenCommand;
+    private final int maxParallel;
+
+    /**
+     * Creates a runner.
+     * @param commandRunner Runs the commands of the stages.
+     * @param mavenCommand  Turns a stage command starting with "mvn" into the command to run,
+     *                      e.g. to run it on the Maven daemon.
+     * @param maxParallel   Maximum number of stages running at the same time.
+     */
+    PipelineRunner(CommandRunner commandRunner, UnaryOperator<List<String>> mavenCommand, int maxParallel) {
+        if (maxParallel < 1) {
+            throw new IllegalArgumentException("maxParallel must be at least 1");
+        }
+        this.commandRunner = commandRunner;
+        this.mavenCommand = mavenCommand;
+        this.maxParallel = maxParallel;
+    }
+
+    /**
+     * Runs the pipeline in the workspace and waits until all started stages are done.
+     * If the calling thread is interrupted, the running stages are cancelled first.
+     *
+     * @param pipeline  The stages to run.
+     * @param directory The workspace the commands run in.
+     * @param log       Receives the prefixed output of all stages. Must write each call atomically.
+     * @param listener  Called with a RUNNING result when a stage starts and with the outcome
+     *                  of every stage when it is known, on the calling thread.
+     * @return The outcome of every stage in the order the stages are declared.
+     */
+    List<StageResult> run(Pipeline pipeline, File directory, OutputStream log, Consumer<StageResult> listener)
+            throws InterruptedException {
+        return run(pipeline, directory, log, UnaryOperator.identity(), listener);
+    }
+
+    /**
+     * Runs the pipeline in the workspace with every stage command wrapped, e.g. to run
+     * it in the cgroup of the build.
+     * @see #run(Pipeline, File, OutputStream, Consumer)
+     */
+    List<StageResult> run(Pipeline pipeline, File directory, OutputStream log, UnaryOperator<List<String>> limits,
+                          Consumer<StageResult> listener) throws InterruptedException {
+        int threads = Math.min(maxParallel, pipeline.stages().size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-stage-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<StageResult> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<StageResult>, Started> running = new HashMap<>();
+        Map<String, Thread> stageThreads = new ConcurrentHashMap<>();
+        Map<String, StageResult> results = new HashMap<>();
+        boolean failed = false;
+        try {
+            while (true) {
+                if (!failed) {
+                    for (Pipeline.Stage stage : pipeline.stages()) {
+                        if (running.size() >= maxParallel) {
+                            break;
+                        }
+                        if (isReady(stage, results, running)) {
+                            long startMillis = System.currentTimeMillis();
+                            listener.accept(new StageResult(stage.name(), StageStatus.RUNNING, 0));
+                            running.put(completion.submit(() -> runStage(stage, directory, log, limits, stageThreads)),
+                                new Started(stage, startMillis));
+                        }
+                    }
+                }
+                if (running.isEmpty()) {
+                    break;
+                }
+
+                Future<StageResult> done = completion.take();
+                Started started = running.remove(done);
+                StageResult result = resultOf(done, started);
+                results.put(result.name(), result);
+                listener.accept(result);
+                if (result.status() != StageStatus.PASSED && !failed) {
+                    failed = true;
+                    cancel(running.keySet(), stageThreads);
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel(running.keySet(), stageThreads);
+            for (Started started : running.values()) {
+                listener.accept(new StageResult(started.stage().name(), StageStatus.CANCELLED,
+                    System.currentTimeMillis() - started.startMillis()));
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+            awaitQuietly(executor);
+        }
+
+        List<StageResult> ordered = new ArrayList<>();
+        for (Pipeline.Stage stage : pipeline.stages()) {
+            StageResult result = results.get(stage.name());
+            if (result == null) {
+                result = new StageResult(stage.name(), StageStatus.SKIPPED, 0);
+                listener.accept(result);
+            }
+            ordered.add(result);
+        }
+        return ordered;
+    }
+
+    private static boolean isReady(Pipeline.Stage stage, Map<String, StageResult> results,
+                                   Map<Future<StageResult>, Started> running) {
+        if (results.containsKey(stage.name())) {
+            return false;
+        }
+        for (Started started : running.values()) {
+            if (started.stage() == stage) {
+                return false;
+            }
+        }
+        for (String need : stage.needs()) {
+            StageResult result = results.get(need);
+            if (result == null || result.status() != StageStatus.PASSED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the command of a stage on a pipeline thread.
+     * @return PASSED if the command exits with code 0 and Maven, if it ran, did not report a failure.
+     */
+    private StageResult runStage(Pipeline.Stage stage, File directory, OutputStream log,
+                                 UnaryOperator<List<String>> limits, Map<String, Thread> stageThreads) {
+        stageThreads.put(stage.name(), Thread.currentThread());
+        long start = System.currentTimeMillis();
+        StageStatus status;
+        List<String> command = limits.apply(stage.command().get(0).equals("mvn")
+            ? mavenCommand.apply(stage.command())
+            : stage.command());
+        BuildOutputAnalyzer analyzer = new BuildOutputAnalyzer(reason -> {});
+        try (LinePrefixOutputStream output = new LinePrefixOutputStream("[" + stage.name() + "] ", log)) {
+            try {
+                int exitCode = commandRunner.runStreaming(command, directory, new TeeOutputStream(output, analyzer));
+                analyzer.close();
+                status = exitCode == 0 && analyzer.getOutcome() != BuildOutputAnalyzer.Outcome.FAILURE
+                    ? StageStatus.PASSED
+                    : StageStatus.FAILED;
+            } catch (IOException e) {
+                output.write(("Stage could not be run: " + e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+                status = StageStatus.FAILED;
+            } catch (InterruptedException e) {
+                status = StageStatus.CANCELLED;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write output of stage " + stage.name() + ": " + e.getMessage());
+            status = StageStatus.FAILED;
+        } finally {
+            stageThreads.remove(stage.name());
+        }
+        return new StageResult(stage.name(), status, System.currentTimeMillis() - start);
+    }
+
+    private static StageResult resultOf(Future<StageResult> done, Started started) throws InterruptedException {
+        try {
+            return done.get();
+        } catch (CancellationException e) {
+            return new StageResult(started.stage().name(), StageStatus.CANCELLED,
+                System.currentTimeMillis() - started.startMillis());
+        } catch (ExecutionException e) {
+            System.err.println("Stage " + started.stage().name() + " failed: " + e.getCause());
+            return new StageResult(started.stage().name(), StageStatus.FAILED,
+                System.currentTimeMillis() - started.startMillis());
+        }
+    }
+
+    /**
+     * Cancels the running stages. Interrupting a stage thread does not stop the
+     * process it waits for, so the process is killed as well. A stage that has
+     * not started its process yet sees the interrupt and does not start it.
+     */
+    private void cancel(Iterable<Future<StageResult>> futures, Map<String, Thread> stageThreads) {
+        for (Future<StageResult> future : futures) {
+            future.cancel(true);
+        }
+        for (Thread thread : stageThreads.values()) {
+            commandRunner.cancel(thread);
+        }
+    }
+
+    /**
+     * Waits for cancelled stages to finish writing to the log before it is closed.
+     */
+    private static void awaitQuietly(ExecutorService executor) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
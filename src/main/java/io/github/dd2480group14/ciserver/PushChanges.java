@@ -0,0 +1,111 @@
+package io.github.dd2480group14.ciserver;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The files changed by a push, taken from the commits of the push payload.
+ *
+ * GitHub lists at most 20 commits in a push event and leaves out the
+ * files of forced pushes, so the list is only complete for ordinary
+ * pushes of up to 20 commits onto an existing branch.
+ *
+ * @param before   SHA the branch pointed to before the push, or null.
+ * @param changed  Files added or modified by the push.
+ * @param removed  Files removed by the push.
+ * @param complete True if the lists contain every file changed since before.
+ */
+record PushChanges(String before, List<String> changed, List<String> removed, boolean complete) {
+    /** Most commits GitHub includes in a push event. */
+    static final int MAX_PAYLOAD_COMMITS = 20;
+    static final PushChanges UNKNOWN = new PushChanges(null, List.of(), List.of(), false);
+
+    private static final String NULL_SHA = "0000000000000000000000000000000000000000";
+
+    /**
+     * Collects the changed files of the commits in a push payload.
+     * The commits are applied oldest first, so a file that is added
+     * again after being removed counts as changed.
+     */
+    static PushChanges fromPayload(JSONObject payload) {
+        String before = payload.optString("before", null);
+        JSONArray commits = payload.optJSONArray("commits");
+        Collector collector = new Collector();
+        for (int i = 0; commits != null && hasBase(before) && i < commits.length(); i++) {
+            collector.commit();
+            JSONObject commit = commits.optJSONObject(i);
+            if (commit == null) {
+                continue;
+            }
+            for (String key : List.of("added", "modified")) {
+                JSONArray files = commit.optJSONArray(key);
+                for (int j = 0; files != null && j < files.length(); j++) {
+                    collector.changed(files.getString(j));
+                }
+            }
+            JSONArray files = commit.optJSONArray("removed");
+            for (int j = 0; files != null && j < files.length(); j++) {
+                collector.removed(files.getString(j));
+            }
+        }
+        return collector.build(before, commits != null, payload.optBoolean("forced", false));
+    }
+
+    /**
+     * Returns true if the branch existed before the push, so its changes can be listed.
+     */
+    static boolean hasBase(String before) {
+        return before != null && !before.equals(NULL_SHA);
+    }
+
+    /**
+     * Collects changed files commit by commit, for payloads that are
+     * read without building a JSONObject.
+     */
+    static class Collector {
+        private final Set<String> changed = new LinkedHashSet<>();
+        private final Set<String> removed = new LinkedHashSet<>();
+        private int commits;
+
+        /**
+         * Counts a commit of the payload, the files of which follow.
+         */
+        void commit() {
+            commits++;
+        }
+
+        /**
+         * Records a file added or modified by the current commit.
+         */
+        void changed(String file) {
+            changed.add(file);
+            removed.remove(file);
+        }
+
+        /**
+         * Records a file removed by the current commit.
+         */
+        void removed(String file) {
+            removed.add(file);
+            changed.remove(file);
+        }
+
+        /**
+         * Returns the changes of the push.
+         * @param before      SHA the branch pointed to before the push, or null.
+         * @param hasCommits  True if the payload had a list of commits.
+         * @param forced      True if the push was forced.
+         */
+        PushChanges build(String before, boolean hasCommits, boolean forced) {
+            if (!hasCommits || !hasBase(before)) {
+                return new PushChanges(before, List.of(), List.of(), false);
+            }
+            boolean complete = !forced && commits < MAX_PAYLOAD_COMMITS;
+            return new PushChanges(before, List.copyOf(changed), List.copyOf(removed), complete);
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package io.github.dd2480group14.ciserver;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -15,6 +20,7 @@ import org.json.JSONObject;
  * @param SHA           SHA identifying the commit
  * @param branch        Branch name where push occured
  * @param commitMessage Commit message of the push event
+ * @param changes       Files changed by the push
 */
 
 record PushEventInfo (
@@ -24,7 +30,16 @@ record PushEventInfo (
     String branch,
     String commitMessage,
     String owner,
-    String repoName ) {
+    String repoName,
+    PushChanges changes ) {
+
+        /**
+         * Creates PushEventInfo without knowing which files the push changed.
+         */
+        PushEventInfo(String author, String repoURL, String SHA, String branch,
+                      String commitMessage, String owner, String repoName) {
+            this(author, repoURL, SHA, branch, commitMessage, owner, repoName, PushChanges.UNKNOWN);
+        }
 
         /**
          * Creates PushEventInfo from Github push payload.
@@ -77,12 +92,249 @@ record PushEventInfo (
                         branch,
                         commitMessage,
                         owner,
-                        repoName
+                        repoName,
+                        PushChanges.fromPayload(jsonObject)
                 );
                 
             } catch (JSONException e) {
                     throw new IllegalArgumentException("Invalid Github push payload", e);
             }
         }
+
+        /**
+         * Creates PushEventInfo from a Github push payload that has not been
+         * parsed yet. Only the fields used by the server are read, everything
+         * else is skipped. The result and the errors are the same as for
+         * {@link #fromJSON(JSONObject)}, except that duplicate keys are only
+         * rejected where a field is read.
+         *
+         * @param parser A parser positioned at the start of the payload.
+         * @return a PushEventInfo record containing extracted data.
+         * @throws IllegalArgumentException if payload is not valid.
+         */
+        static PushEventInfo fromJSON(JsonPullParser parser) throws IllegalArgumentException {
+            try {
+                String[] repository = null;
+                String SHA = null;
+                String ref = null;
+                String author = null;
+                String before = null;
+                boolean forced = false;
+                boolean hasCommits = false;
+                String commitMessage = "No commit message";
+                PushChanges.Collector changes = new PushChanges.Collector();
+
+                Set<String> seen = new HashSet<>();
+                parser.beginObject();
+                while (parser.hasNext()) {
+                    String name = parser.nextName();
+                    switch (name) {
+                        case "repository", "after", "ref", "pusher", "before", "forced", "commits" -> {
+                            if (!seen.add(name)) {
+                                throw new JSONException("Duplicate key \"" + name + "\"");
+                            }
+                        }
+                        default -> {
+                            parser.skipValue();
+                            continue;
+                        }
+                    }
+                    switch (name) {
+                        case "repository" -> repository = readRepository(parser);
+                        case "after" -> SHA = parser.nextString();
+                        case "ref" -> ref = parser.nextString();
+                        case "pusher" -> author = readPusher(parser);
+                        case "before" -> before = parser.nextOptString(null);
+                        case "forced" -> forced = readOptBoolean(parser);
+                        default -> {
+                            if (parser.peek() != JsonPullParser.Token.BEGIN_ARRAY) {
+                                parser.skipValue();
+                                break;
+                            }
+                            hasCommits = true;
+                            parser.beginArray();
+                            for (int i = 0; parser.hasNext(); i++) {
+                                changes.commit();
+                                if (parser.peek() != JsonPullParser.Token.BEGIN_OBJECT) {
+                                    if (i == 0) {
+                                        throw new JSONException("JSONArray[0] is not a JSONObject.");
+                                    }
+                                    parser.skipValue();
+                                    continue;
+                                }
+                                String message = readCommit(parser, changes, i == 0);
+                                if (i == 0) {
+                                    commitMessage = message;
+                                }
+                            }
+                            parser.endArray();
+                        }
+                    }
+                }
+                parser.endObject();
+
+                // Checked in the same order as fromJSON(JSONObject)
+                if (repository == null) {
+                    throw new JSONException("JSONObject[\"repository\"] not found.");
+                }
+                if (repository[0] == null) {
+                    throw new JSONException("JSONObject[\"clone_url\"] not found.");
+                }
+                if (SHA == null || ref == null || author == null) {
+                    throw new JSONException("JSONObject[\"after\"], [\"ref\"] or [\"pusher\"] not found.");
+                }
+                return new PushEventInfo(
+                        author,
+                        repository[0],
+                        SHA,
+                        ref.replace("refs/heads/", ""),
+                        commitMessage,
+                        repository[2],
+                        repository[1],
+                        changes.build(before, hasCommits, forced)
+                );
+
+            } catch (JSONException e) {
+                    throw new IllegalArgumentException("Invalid Github push payload", e);
+            }
+        }
+
+        /**
+         * Reads the repository object.
+         * @return The clone URL, name and owner login, with null for a missing clone URL.
+         */
+        private static String[] readRepository(JsonPullParser parser) {
+            expectObject(parser, "repository");
+            String[] repository = {null, "Unknown", "Unknown"};
+            Set<String> seen = new HashSet<>();
+            parser.beginObject();
+            while (parser.hasNext()) {
+                String name = parser.nextName();
+                if (!name.equals("clone_url") && !name.equals("name") && !name.equals("owner")) {
+                    parser.skipValue();
+                    continue;
+                }
+                if (!seen.add(name)) {
+                    throw new JSONException("Duplicate key \"" + name + "\"");
+                }
+                switch (name) {
+                    case "clone_url" -> repository[0] = parser.nextString();
+                    case "name" -> repository[1] = parser.nextOptString("Unknown");
+                    default -> repository[2] = readOwner(parser);
+                }
+            }
+            parser.endObject();
+            return repository;
+        }
+
+        private static String readOwner(JsonPullParser parser) {
+            if (parser.peek() != JsonPullParser.Token.BEGIN_OBJECT) {
+                parser.skipValue();
+                return "Unknown";
+            }
+            String login = "Unknown";
+            parser.beginObject();
+            while (parser.hasNext()) {
+                if (parser.nextName().equals("login")) {
+                    login = parser.nextOptString("Unknown");
+                } else {
+                    parser.skipValue();
+                }
+            }
+            parser.endObject();
+            return login;
+        }
+
+        private static String readPusher(JsonPullParser parser) {
+            expectObject(parser, "pusher");
+            String author = null;
+            parser.beginObject();
+            while (parser.hasNext()) {
+                if (parser.nextName().equals("name")) {
+                    if (author != null) {
+                        throw new JSONException("Duplicate key \"name\"");
+                    }
+                    author = parser.nextString();
+                } else {
+                    parser.skipValue();
+                }
+            }
+            parser.endObject();
+            if (author == null) {
+                throw new JSONException("JSONObject[\"name\"] not found.");
+            }
+            return author;
+        }
+
+        /**
+         * Reads a commit and records its files. The files are applied
+         * added, modified, removed, whatever order the keys come in.
+         * @param readMessage False to skip the message.
+         * @return The commit message.
+         */
+        private static String readCommit(JsonPullParser parser, PushChanges.Collector changes, boolean readMessage) {
+            String message = "No commit message";
+            List<String> added = List.of();
+            List<String> modified = List.of();
+            List<String> removed = List.of();
+            parser.beginObject();
+            while (parser.hasNext()) {
+                switch (parser.nextName()) {
+                    case "message" -> {
+                        if (readMessage) {
+                            message = parser.nextOptString("No commit message");
+                        } else {
+                            parser.skipValue();
+                        }
+                    }
+                    case "added" -> added = readFiles(parser);
+                    case "modified" -> modified = readFiles(parser);
+                    case "removed" -> removed = readFiles(parser);
+                    default -> parser.skipValue();
+                }
+            }
+            parser.endObject();
+            added.forEach(changes::changed);
+            modified.forEach(changes::changed);
+            removed.forEach(changes::removed);
+            return message;
+        }
+
+        private static List<String> readFiles(JsonPullParser parser) {
+            if (parser.peek() != JsonPullParser.Token.BEGIN_ARRAY) {
+                parser.skipValue();
+                return List.of();
+            }
+            List<String> files = new ArrayList<>();
+            parser.beginArray();
+            while (parser.hasNext()) {
+                files.add(parser.nextString());
+            }
+            parser.endArray();
+            return files;
+        }
+
+        /**
+         * Reads a boolean the way JSONObject.optBoolean does, false if it is not one.
+         */
+        private static boolean readOptBoolean(JsonPullParser parser) {
+            return switch (parser.peek()) {
+                case TRUE -> {
+                    parser.skipValue();
+                    yield true;
+                }
+                case STRING -> "true".equalsIgnoreCase(parser.nextString());
+                default -> {
+                    parser.skipValue();
+                    yield false;
+                }
+            };
+        }
+
+        private static void expectObject(JsonPullParser parser, String name) {
+            if (parser.peek() != JsonPullParser.Token.BEGIN_OBJECT) {
+                throw new JSONException("JSONObject[\"" + name + "\"] is not a JSONObject.");
+            }
+        }
     }
 
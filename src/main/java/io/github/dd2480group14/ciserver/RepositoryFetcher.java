@@ -0,0 +1,343 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Fetches the repository of a push into a build workspace using the
+ * configured {@link CloneMode}, and keeps track of how much data and
+ * time each fetch took.
+ *
+ * The data of a fetch is the growth of the object store of the repository
+ * that fetched from the remote: the mirror in mirror mode, the workspace
+ * otherwise. The time is compared with the last full clone of the
+ * repository, which is kept in a file in the logs folder so the savings
+ * are known after a restart as well.
+ */
+class RepositoryFetcher {
+    static final String BASELINE_FILE_NAME = "fetch.baselines";
+
+    private final CloneMode mode;
+    private final GitMirrorCache mirrorCache;
+    private final String shallowFilter;
+    private final List<String> sparsePaths;
+    private final CommandRunner commandRunner;
+    private final boolean keepBuildOutput;
+
+    private final Path baselinePath;
+
+    /** Duration and size of the last full clone of each repository, used as baseline. */
+    private final Map<String, Baseline> fullCloneBaselines = new ConcurrentHashMap<>();
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    private final AtomicLong millisSaved = new AtomicLong();
+
+    /**
+     * Outcome of fetching a repository into a workspace.
+     * @param directory   The workspace containing the checked out commit.
+     * @param mode        The clone mode that was actually used.
+     * @param bytes       Bytes of git data fetched from the remote.
+     * @param millis      Time the fetch took.
+     * @param savedMillis Time saved compared to the last full clone of the repository, or -1 if unknown.
+     * @param reused      True if an earlier clone in the directory was updated instead of cloning.
+     */
+    record Result(File directory, CloneMode mode, long bytes, long millis, long savedMillis, boolean reused) {
+
+        /**
+         * Returns a one line summary of the fetch for the build log.
+         */
+        String summary() {
+            String saved = savedMillis < 0 ? "unknown" : savedMillis + " ms";
+            String workspace = reused ? " (reused workspace)" : "";
+            return "Fetch: " + mode.name().toLowerCase() + workspace + ", " + bytes + " bytes fetched in " + millis + " ms, saved " + saved;
+        }
+    }
+
+    /**
+     * The last full clone of a repository.
+     */
+    private record Baseline(long bytes, long millis) {}
+
+    /**
+     * Creates a new fetcher that keeps its baselines in memory only.
+     * @param mode How repositories are fetched.
+     * @param mirrorCache The mirror cache, required in mirror mode.
+     * @param shallowFilter Partial clone filter for shallow fetches (e.g. "blob:none"), or null.
+     * @param sparsePaths Directories to check out in shallow mode, or empty for the whole tree.
+     * @param commandRunner Runs the git commands.
+     */
+    RepositoryFetcher(CloneMode mode, GitMirrorCache mirrorCache, String shallowFilter,
+                      List<String> sparsePaths, CommandRunner commandRunner) throws IOException {
+        this(mode, mirrorCache, shallowFilter, sparsePaths, commandRunner, false, null);
+    }
+
+    /**
+     * Creates a new fetcher.
+     * @param mode How repositories are fetched.
+     * @param mirrorCache The mirror cache, required in mirror mode.
+     * @param shallowFilter Partial clone filter for shallow fetches (e.g. "blob:none"), or null.
+     * @param sparsePaths Directories to check out in shallow mode, or empty for the whole tree.
+     * @param commandRunner Runs the git commands.
+     * @param keepBuildOutput True to keep the target directories when a workspace is reused.
+     * @param logsFolder The folder the full clone baselines are kept in, or null to keep them in memory.
+     */
+    RepositoryFetcher(CloneMode mode, GitMirrorCache mirrorCache, String shallowFilter, List<String> sparsePaths,
+                      CommandRunner commandRunner, boolean keepBuildOutput, File logsFolder) throws IOException {
+        if (mode == CloneMode.MIRROR && mirrorCache == null) {
+            throw new IllegalArgumentException("Mirror mode requires a mirror cache");
+        }
+        this.mode = mode;
+        this.mirrorCache = mirrorCache;
+        this.shallowFilter = shallowFilter;
+        this.sparsePaths = List.copyOf(sparsePaths);
+        this.commandRunner = commandRunner;
+        this.keepBuildOutput = keepBuildOutput;
+        this.baselinePath = logsFolder == null ? null : new File(logsFolder, BASELINE_FILE_NAME).toPath();
+        if (baselinePath != null && Files.exists(baselinePath)) {
+            loadBaselines();
+        }
+    }
+
+    private void loadBaselines() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(baselinePath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    JSONObject json = new JSONObject(line);
+                    fullCloneBaselines.put(json.getString("url"), new Baseline(json.getLong("bytes"), json.getLong("millis")));
+                } catch (JSONException e) {
+                    // Skipped, the savings are unknown until the next full clone
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the hash of the tree of a commit without fetching it into a
+     * workspace. Only possible with the mirror cache.
+     *
+     * @param url The url of the repository
+     * @param commitId The commit
+     * @return The tree hash, or null if it is not known before the commit is fetched.
+     */
+    String treeHashBeforeFetch(String url, String commitId) throws InterruptedException {
+        if (mirrorCache == null || commitId == null) {
+            return null;
+        }
+        try {
+            return mirrorCache.treeHash(url, commitId);
+        } catch (IOException e) {
+            System.err.println("Could not look up the tree of " + commitId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the hash of the tree checked out in a fetched directory.
+     * @param directory The directory returned by fetch.
+     * @return The tree hash, or null if it could not be determined.
+     */
+    String treeHashOf(File directory) throws InterruptedException {
+        try {
+            CommandRunner.Result result = commandRunner.run(List.of("git", "rev-parse", "HEAD^{tree}"), directory);
+            return result.succeeded() ? result.output().trim() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Fetches the repository into the directory and checks out the commit.
+     * If the directory already holds a clone of the repository it is updated
+     * and cleaned with "git clean -fdx" instead. Falls back to a full clone
+     * if the configured mode fails.
+     *
+     * @param url The url of the repository
+     * @param commitId The specific commit ID. If null, the latest commit is used.
+     * @param directory An empty directory, or an earlier clone of the repository, to fetch into
+     * @return The outcome of the fetch.
+     */
+    Result fetch(String url, String commitId, File directory) throws IOException, InterruptedException {
+        fetches.incrementAndGet();
+        long start = System.nanoTime();
+        CloneMode used = mode;
+        boolean reused = new File(directory, ".git").exists();
+        long bytesBefore = reused && mode != CloneMode.MIRROR ? GitMirrorCache.objectBytes(directory, commandRunner) : 0;
+        GitMirrorCache.Transfer transfer = GitMirrorCache.Transfer.NONE;
+        try {
+            if (reused) {
+                transfer = updateExisting(url, commitId, directory);
+            } else if (mode == CloneMode.MIRROR) {
+                transfer = fetchFromMirror(url, commitId, directory);
+            } else if (mode == CloneMode.SHALLOW && commitId != null) {
+                fetchShallow(url, commitId, directory);
+            } else {
+                used = CloneMode.FULL;
+                cloneFull(url, commitId, directory);
+            }
+        } catch (IOException e) {
+            if (used == CloneMode.FULL && !reused) {
+                // Nothing to fall back to
+                throw e;
+            }
+            System.err.println(mode.name().toLowerCase() + " fetch of " + url + " failed, cloning from remote: " + e.getMessage());
+            fallbacks.incrementAndGet();
+            FileUtils.cleanDirectory(directory);
+            start = System.nanoTime();
+            used = CloneMode.FULL;
+            reused = false;
+            bytesBefore = 0;
+            cloneFull(url, commitId, directory);
+        }
+        // A fetch from the mirror is local, only what the mirror fetched came from the remote
+        boolean fromMirror = used == CloneMode.MIRROR;
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + (fromMirror ? transfer.earlierMillis() : 0);
+        long bytes = fromMirror ? transfer.bytes()
+            : Math.max(0, GitMirrorCache.objectBytes(directory, commandRunner) - bytesBefore);
+        bytesTransferred.addAndGet(bytes);
+
+        boolean fullClone = fromMirror ? transfer.fullClone() : used == CloneMode.FULL && !reused;
+        long savedMillis = -1;
+        Baseline baseline = fullCloneBaselines.get(url);
+        if (fullClone) {
+            savedMillis = 0;
+            saveBaseline(url, new Baseline(bytes, millis));
+        } else if (baseline != null) {
+            savedMillis = Math.max(0, baseline.millis() - millis);
+            millisSaved.addAndGet(savedMillis);
+        }
+        return new Result(directory, used, bytes, millis, savedMillis, reused);
+    }
+
+    /**
+     * Remembers the full clone of a repository and rewrites the baseline file.
+     * Failures are logged, the savings are then unknown after a restart.
+     */
+    private synchronized void saveBaseline(String url, Baseline baseline) {
+        fullCloneBaselines.put(url, baseline);
+        if (baselinePath == null) {
+            return;
+        }
+        Path temporary = baselinePath.resolveSibling(BASELINE_FILE_NAME + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Baseline> entry : fullCloneBaselines.entrySet()) {
+                    JSONObject json = new JSONObject();
+                    json.put("url", entry.getKey());
+                    json.put("bytes", entry.getValue().bytes());
+                    json.put("millis", entry.getValue().millis());
+                    writer.write(json.toString());
+                    writer.write("\n");
+                }
+            }
+            Files.move(temporary, baselinePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save fetch baselines: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fetches the commit into an earlier clone of the repository, checks it
+     * out and removes every untracked and ignored file left by the last build,
+     * except the target directories if build output is kept.
+     */
+    private GitMirrorCache.Transfer updateExisting(String url, String commitId, File directory)
+            throws IOException, InterruptedException {
+        GitMirrorCache.Transfer transfer = GitMirrorCache.Transfer.NONE;
+        if (mode == CloneMode.MIRROR) {
+            transfer = mirrorCache.fetchInto(url, commitId, directory);
+        } else {
+            List<String> fetchCommand = new ArrayList<>(List.of("git", "fetch", "--no-tags"));
+            if (mode == CloneMode.SHALLOW) {
+                fetchCommand.addAll(List.of("--depth", "1"));
+            }
+            fetchCommand.add("origin");
+            fetchCommand.add(commitId != null ? commitId : "HEAD");
+            commandRunner.runChecked(fetchCommand, directory);
+        }
+        commandRunner.runChecked(List.of("git", "checkout", "--quiet", "--force", "--detach", "FETCH_HEAD"), directory);
+        List<String> cleanCommand = new ArrayList<>(List.of("git", "clean", "-fdx", "--quiet"));
+        if (keepBuildOutput) {
+            cleanCommand.addAll(List.of("-e", "target/"));
+        }
+        commandRunner.runChecked(cleanCommand, directory);
+        return transfer;
+    }
+
+    private GitMirrorCache.Transfer fetchFromMirror(String url, String commitId, File directory)
+            throws IOException, InterruptedException {
+        GitMirrorCache.Transfer transfer = mirrorCache.cloneInto(url, directory);
+        // A commit the mirror does not have fails the fetch, which then falls back to a full clone
+        commandRunner.runChecked(List.of("git", "checkout", "--quiet", commitId != null ? commitId : "HEAD"), directory);
+        return transfer;
+    }
+
+    /**
+     * Initializes an empty repository and fetches only the given commit
+     * at depth 1, optionally without blobs outside the sparse paths.
+     */
+    private void fetchShallow(String url, String commitId, File directory) throws IOException, InterruptedException {
+        commandRunner.runChecked(List.of("git", "init", "--quiet"), directory);
+        commandRunner.runChecked(List.of("git", "remote", "add", "origin", url), directory);
+
+        List<String> fetchCommand = new ArrayList<>(List.of("git", "fetch", "--depth", "1", "--no-tags"));
+        if (shallowFilter != null) {
+            fetchCommand.add("--filter=" + shallowFilter);
+        }
+        fetchCommand.add("origin");
+        fetchCommand.add(commitId);
+        commandRunner.runChecked(fetchCommand, directory);
+
+        if (!sparsePaths.isEmpty()) {
+            List<String> sparseCommand = new ArrayList<>(List.of("git", "sparse-checkout", "set"));
+            sparseCommand.addAll(sparsePaths);
+            commandRunner.runChecked(sparseCommand, directory);
+        }
+        commandRunner.runChecked(List.of("git", "checkout", "--quiet", "--detach", "FETCH_HEAD"), directory);
+    }
+
+    /**
+     * Clones the whole repository and checks out the commit. A failed clone
+     * or checkout throws, so a build never runs on the wrong commit.
+     */
+    private void cloneFull(String url, String commitId, File directory) throws IOException, InterruptedException {
+        commandRunner.runChecked(List.of("git", "clone", "--quiet", url, "."), directory);
+        if (commitId != null) {
+            commandRunner.runChecked(List.of("git", "checkout", "--quiet", commitId), directory);
+        }
+    }
+
+    /**
+     * Returns the statistics of the fetches as JSON.
+     */
+    JSONObject getStatistics() {
+        JSONObject stats = new JSONObject();
+        stats.put("mode", mode.name().toLowerCase());
+        stats.put("fetches", fetches.get());
+        stats.put("fallbacks", fallbacks.get());
+        stats.put("bytesTransferred", bytesTransferred.get());
+        stats.put("millisSaved", millisSaved.get());
+        if (mirrorCache != null) {
+            stats.put("mirrorCache", mirrorCache.getStatistics());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,379 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Runtime configuration of the CI server.
+ *
+ * Values are looked up by name (normally from the .env file or the
+ * environment) and fall back to a default when they are not set.
+ */
+class ServerConfig {
+    private final Function<String, String> lookup;
+
+    /**
+     * Creates a configuration backed by the given lookup function.
+     * @param lookup Returns the value for a variable name, or null if it is not set.
+     */
+    ServerConfig(Function<String, String> lookup) {
+        this.lookup = lookup;
+    }
+
+    /**
+     * Returns a configuration where every value is the default.
+     */
+    static ServerConfig defaults() {
+        return new ServerConfig(key -> null);
+    }
+
+    /**
+     * Port the HTTP server listens on.
+     */
+    int httpPort() {
+        return getInt("HTTP_PORT", 8080);
+    }
+
+    /**
+     * Threads accepting connections, -1 to let Jetty choose from the number of CPUs.
+     */
+    int httpAcceptors() {
+        return getInt("HTTP_ACCEPTORS", -1);
+    }
+
+    /**
+     * Threads handling I/O on connections, -1 to let Jetty choose from the number of CPUs.
+     */
+    int httpSelectors() {
+        return getInt("HTTP_SELECTORS", -1);
+    }
+
+    /**
+     * Time an idle connection is kept open.
+     */
+    long httpIdleTimeoutMillis() {
+        return getLong("HTTP_IDLE_TIMEOUT_MILLIS", 30_000);
+    }
+
+    /**
+     * Maximum number of platform threads of the HTTP server.
+     */
+    int httpMaxThreads() {
+        return getInt("HTTP_MAX_THREADS", 200);
+    }
+
+    /**
+     * Whether requests are handled on virtual threads when the JVM supports them.
+     */
+    boolean httpVirtualThreads() {
+        return Boolean.parseBoolean(getString("HTTP_VIRTUAL_THREADS", "true"));
+    }
+
+    /**
+     * Whether the server also speaks HTTP/2 over cleartext (h2c).
+     */
+    boolean httpH2c() {
+        return Boolean.parseBoolean(getString("HTTP_H2C", "true"));
+    }
+
+    /**
+     * Secrets accepted next to WEBHOOK_SIGNATURE while the webhook secret is rotated.
+     */
+    List<String> webhookAdditionalSecrets() {
+        String secrets = getString("WEBHOOK_ADDITIONAL_SIGNATURES", "");
+        return Arrays.stream(secrets.split(",")).map(String::trim).filter(secret -> !secret.isEmpty()).toList();
+    }
+
+    /**
+     * Webhook bodies larger than this are rejected. GitHub caps payloads at 25 MB.
+     */
+    int webhookMaxBodyBytes() {
+        return getInt("WEBHOOK_MAX_BODY_BYTES", 25 * 1024 * 1024);
+    }
+
+    /**
+     * Number of buffers kept for reading webhook bodies.
+     */
+    int webhookBufferPoolSize() {
+        return getInt("WEBHOOK_BUFFER_POOL_SIZE", 16);
+    }
+
+    /**
+     * Number of delivery IDs and commits remembered to ignore redelivered
+     * webhooks, 0 to build every delivery.
+     */
+    int webhookDedupMaxEntries() {
+        return getInt("WEBHOOK_DEDUP_MAX_ENTRIES", 10000);
+    }
+
+    /**
+     * How long a delivery ID or commit is remembered. GitHub allows
+     * redelivering a webhook for three days.
+     */
+    int webhookDedupTtlHours() {
+        return getInt("WEBHOOK_DEDUP_TTL_HOURS", 72);
+    }
+
+    /**
+     * Number of worker threads running builds concurrently.
+     */
+    int buildWorkers() {
+        return getInt("BUILD_WORKERS", 2);
+    }
+
+    /**
+     * Maximum number of builds waiting for a free worker before
+     * new webhooks are rejected.
+     */
+    int buildQueueCapacity() {
+        return getInt("BUILD_QUEUE_CAPACITY", 32);
+    }
+
+    /**
+     * What happens to the builds of a branch that are superseded by a newer push.
+     */
+    SupersedePolicy supersedePolicy() {
+        return SupersedePolicy.parse(getString("BUILD_SUPERSEDE", "coalesce"));
+    }
+
+    /**
+     * Number of build results kept for reuse by pushes of an already built tree,
+     * 0 to always build.
+     */
+    int buildResultCacheMaxEntries() {
+        return getInt("BUILD_RESULT_CACHE_MAX_ENTRIES", 1000);
+    }
+
+    /**
+     * How repositories are fetched for a build.
+     */
+    CloneMode cloneMode() {
+        return CloneMode.parse(getString("GIT_CLONE_MODE", "mirror"));
+    }
+
+    /**
+     * Folder holding the cached bare mirrors of built repositories,
+     * by default inside the logs folder so the server keeps all its
+     * state in one place.
+     * @param logsFolder The folder holding the build logs.
+     */
+    File gitCacheFolder(File logsFolder) {
+        String folder = getString("GIT_CACHE_DIR", null);
+        return folder == null ? new File(logsFolder, GitMirrorCache.DEFAULT_FOLDER_NAME) : new File(folder);
+    }
+
+    /**
+     * Size limit in bytes of the mirror cache before the least
+     * recently used mirrors are evicted.
+     */
+    long gitCacheMaxBytes() {
+        return getLong("GIT_CACHE_MAX_BYTES", 2L * 1024 * 1024 * 1024);
+    }
+
+    /**
+     * Partial clone filter used by shallow fetches, e.g. "blob:none",
+     * or null to fetch every blob of the commit.
+     */
+    String shallowFilter() {
+        return getString("GIT_SHALLOW_FILTER", null);
+    }
+
+    /**
+     * Directories checked out by shallow fetches, or an empty list
+     * to check out the whole tree.
+     */
+    List<String> sparsePaths() {
+        String paths = getString("GIT_SPARSE_PATHS", "");
+        return Arrays.stream(paths.split(",")).map(String::trim).filter(path -> !path.isEmpty()).toList();
+    }
+
+    /**
+     * Maximum total size in bytes of all build workspaces.
+     */
+    long workspaceQuotaBytes() {
+        return getLong("WORKSPACE_QUOTA_BYTES", 10L * 1024 * 1024 * 1024);
+    }
+
+    /**
+     * Whether the workspace of a build is kept and cleaned for the
+     * next build of the same repository instead of being deleted.
+     * Always true for incremental builds.
+     */
+    boolean workspaceReuse() {
+        return incrementalBuilds() || Boolean.parseBoolean(getString("WORKSPACE_REUSE", "false"));
+    }
+
+    /**
+     * Whether builds keep the compiled classes of the last build in a reused
+     * workspace and only build what changed, instead of "mvn clean test".
+     */
+    boolean incrementalBuilds() {
+        String mode = getString("BUILD_MODE", "clean");
+        if (!mode.equalsIgnoreCase("clean") && !mode.equalsIgnoreCase("incremental")) {
+            throw new IllegalArgumentException("BUILD_MODE must be clean or incremental but was " + mode);
+        }
+        return mode.equalsIgnoreCase("incremental");
+    }
+
+    /**
+     * Maximum number of stages of a repository's pipeline running at the same time.
+     */
+    int pipelineMaxParallel() {
+        return getInt("PIPELINE_MAX_PARALLEL", 4);
+    }
+
+    /**
+     * Whether a "failure" commit status is sent as soon as a compile error
+     * or failing test shows up in the output, before the build has finished.
+     */
+    boolean earlyFailureStatus() {
+        return Boolean.parseBoolean(getString("EARLY_FAILURE_STATUS", "true"));
+    }
+
+    /**
+     * How build logs are compressed on disk: none, gzip or zstd.
+     */
+    LogCompression logCompression() {
+        return LogCompression.parse(getString("LOG_COMPRESSION", "none"));
+    }
+
+    /**
+     * Which build logs are kept. Every limit is off by default.
+     */
+    LogRetention.Policy logRetention() {
+        return new LogRetention.Policy(
+            getInt("LOG_RETENTION_PER_BRANCH", 0),
+            getInt("LOG_RETENTION_MAX_AGE_DAYS", 0),
+            getLong("LOG_RETENTION_MAX_BYTES", 0),
+            Boolean.parseBoolean(getString("LOG_RETENTION_ARCHIVE", "false")));
+    }
+
+    /**
+     * Minutes between two runs of log retention.
+     */
+    long logRetentionIntervalMinutes() {
+        return getLong("LOG_RETENTION_INTERVAL_MINUTES", 60);
+    }
+
+    /**
+     * The mvnd command to run builds on the Maven daemon, or null to start mvn for every build.
+     *
+     * The daemon runs the build outside the mvnd client, so killing the client
+     * neither stops the build nor keeps it in the cgroup of the build. The daemon
+     * is therefore only used if builds are never stopped from outside: without a
+     * build cgroup, without a build timeout and without cancelling superseded builds.
+     */
+    String mavenDaemonCommand() {
+        if (!Boolean.parseBoolean(getString("MAVEN_DAEMON", "false"))) {
+            return null;
+        }
+        String conflict = buildCgroup() != null ? "BUILD_CGROUP"
+            : buildTimeoutMinutes() > 0 ? "BUILD_TIMEOUT_MINUTES"
+            : supersedePolicy() == SupersedePolicy.CANCEL ? "BUILD_SUPERSEDE=cancel"
+            : null;
+        if (conflict != null) {
+            System.err.println("MAVEN_DAEMON can not be combined with " + conflict
+                + ", builds on the daemon can not be stopped. Builds use mvn");
+            return null;
+        }
+        return getString("MAVEN_DAEMON_COMMAND", "mvnd");
+    }
+
+    /**
+     * The local Maven repository shared by all builds, or null for Maven's default (~/.m2/repository).
+     */
+    File mavenLocalRepository() {
+        String folder = getString("MAVEN_REPO_LOCAL", null);
+        return folder == null ? null : new File(folder);
+    }
+
+    /**
+     * Maximum minutes a build may run before it is stopped, 0 for no limit.
+     */
+    long buildTimeoutMinutes() {
+        return getLong("BUILD_TIMEOUT_MINUTES", 60);
+    }
+
+    /**
+     * The cgroup v2 folder the cgroups of builds are created in, or null to not limit builds.
+     * The server must be allowed to create cgroups in it, e.g. a delegated systemd slice.
+     */
+    File buildCgroup() {
+        String folder = getString("BUILD_CGROUP", null);
+        return folder == null ? null : new File(folder);
+    }
+
+    /**
+     * CPU time a build may use with a build cgroup, 1000 for one core, 0 for no limit.
+     */
+    int buildCpuLimitMillicores() {
+        return getInt("BUILD_CPU_LIMIT_MILLICORES", 0);
+    }
+
+    /**
+     * Memory a build may use with a build cgroup in megabytes, 0 for no limit.
+     */
+    long buildMemoryLimitMegabytes() {
+        return getLong("BUILD_MEMORY_LIMIT_MB", 0);
+    }
+
+    /**
+     * Connection pool, dispatcher and timeouts of the HTTP client used for the GitHub API.
+     */
+    SharedHttpClient.Settings githubHttp() {
+        SharedHttpClient.Settings defaults = SharedHttpClient.Settings.DEFAULTS;
+        return new SharedHttpClient.Settings(
+            getInt("GITHUB_HTTP_MAX_IDLE_CONNECTIONS", defaults.maxIdleConnections()),
+            getLong("GITHUB_HTTP_KEEP_ALIVE_SECONDS", defaults.keepAliveSeconds()),
+            getInt("GITHUB_HTTP_MAX_REQUESTS", defaults.maxRequests()),
+            getInt("GITHUB_HTTP_MAX_REQUESTS_PER_HOST", defaults.maxRequestsPerHost()),
+            getLong("GITHUB_HTTP_CONNECT_TIMEOUT_MILLIS", defaults.connectTimeoutMillis()),
+            getLong("GITHUB_HTTP_READ_TIMEOUT_MILLIS", defaults.readTimeoutMillis()),
+            getLong("GITHUB_HTTP_CALL_TIMEOUT_MILLIS", defaults.callTimeoutMillis()));
+    }
+
+    /**
+     * Returns the raw value of a variable, or the default if it is not set.
+     */
+    String getString(String key, String defaultValue) {
+        String value = lookup.apply(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Returns the value of a variable as an int, or the default if it is not set.
+     * @throws IllegalArgumentException If the value is not an integer.
+     */
+    int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer but was " + value, e);
+        }
+    }
+
+    /**
+     * Returns the value of a variable as a long, or the default if it is not set.
+     * @throws IllegalArgumentException If the value is not an integer.
+     */
+    long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer but was " + value, e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.dd2480group14.ciserver;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * An OkHttp client shared by every GitHub client with the same settings,
+ * so status updates reuse pooled (and over HTTP/2 multiplexed) connections
+ * instead of each client opening its own.
+ */
+class SharedHttpClient {
+    private static final Map<Settings, SharedHttpClient> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * Connection pool, dispatcher and timeout settings.
+     * @param maxIdleConnections  Idle connections kept in the pool.
+     * @param keepAliveSeconds    Time an idle connection is kept.
+     * @param maxRequests         Calls running at the same time.
+     * @param maxRequestsPerHost  Calls running at the same time to one host.
+     * @param connectTimeoutMillis Timeout to connect, including the TLS handshake.
+     * @param readTimeoutMillis   Timeout between two reads or writes on the connection.
+     * @param callTimeoutMillis   Timeout of a whole call, 0 for none.
+     */
+    record Settings(int maxIdleConnections, long keepAliveSeconds, int maxRequests, int maxRequestsPerHost,
+                    long connectTimeoutMillis, long readTimeoutMillis, long callTimeoutMillis) {
+        static final Settings DEFAULTS = new Settings(5, 300, 64, 10, 10_000, 10_000, 30_000);
+    }
+
+    private final OkHttpClient client;
+    private final HttpClientMetrics metrics = new HttpClientMetrics();
+
+    /**
+     * Creates a client that is not shared, use forSettings to get the shared one.
+     */
+    SharedHttpClient(Settings settings) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(settings.maxRequests());
+        dispatcher.setMaxRequestsPerHost(settings.maxRequestsPerHost());
+        this.client = new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(settings.maxIdleConnections(), settings.keepAliveSeconds(), TimeUnit.SECONDS))
+            // HTTP/2 is negotiated during the TLS handshake, so all calls to GitHub share one connection
+            .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .pingInterval(Duration.ofSeconds(30))
+            .connectTimeout(Duration.ofMillis(settings.connectTimeoutMillis()))
+            .readTimeout(Duration.ofMillis(settings.readTimeoutMillis()))
+            .writeTimeout(Duration.ofMillis(settings.readTimeoutMillis()))
+            .callTimeout(Duration.ofMillis(settings.callTimeoutMillis()))
+            .eventListenerFactory(metrics)
+            .build();
+    }
+
+    /**
+     * Returns the client shared by everyone using the same settings.
+     */
+    static SharedHttpClient forSettings(Settings settings) {
+        return SHARED.computeIfAbsent(settings, SharedHttpClient::new);
+    }
+
+    OkHttpClient client() {
+        return client;
+    }
+
+    /**
+     * Returns the call metrics and the state of the dispatcher and connection pool as JSON.
+     */
+    JSONObject getStatistics() {
+        JSONObject stats = metrics.getStatistics();
+        stats.put("runningCalls", client.dispatcher().runningCallsCount());
+        stats.put("queuedCalls", client.dispatcher().queuedCallsCount());
+        stats.put("pooledConnections", client.connectionPool().connectionCount());
+        stats.put("idleConnections", client.connectionPool().idleConnectionCount());
+        return stats;
+    }
+}
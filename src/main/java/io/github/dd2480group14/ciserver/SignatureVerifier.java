@@ -0,0 +1,194 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Checks the X-Hub-Signature-256 of webhook deliveries.
+ *
+ * Several secrets can be active at once, so the secret of a webhook can
+ * be rotated without rejecting deliveries signed with the old one.
+ * Initialized Macs are kept in a pool and reused, and the signature is
+ * decoded to bytes once and compared in constant time.
+ */
+class SignatureVerifier {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String PREFIX = "sha256=";
+    private static final int DIGEST_LENGTH = 32;
+
+    private final List<SecretKeySpec> keys;
+    private final Queue<Verification> pool = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLongArray matchesPerSecret;
+
+    /**
+     * Creates a verifier.
+     * @param secrets The active webhook secrets, at least one.
+     */
+    SignatureVerifier(List<String> secrets) {
+        if (secrets.isEmpty()) {
+            throw new IllegalArgumentException("At least one webhook secret is needed");
+        }
+        this.keys = secrets.stream()
+            .map(secret -> new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM))
+            .toList();
+        this.matchesPerSecret = new AtomicLongArray(secrets.size());
+    }
+
+    /**
+     * A signature check in progress. The body is passed to update() as it
+     * is read, and the verification must be closed when done so its Macs
+     * can be reused.
+     */
+    final class Verification implements Closeable {
+        private final Mac[] macs = new Mac[keys.size()];
+        private final byte[] digest = new byte[DIGEST_LENGTH];
+        private byte[] expected;
+
+        private Verification() {
+            try {
+                for (int i = 0; i < macs.length; i++) {
+                    macs[i] = Mac.getInstance(ALGORITHM);
+                    macs[i].init(keys.get(i));
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(ALGORITHM + " is not available", e);
+            }
+        }
+
+        /**
+         * Adds bytes of the body to the signature.
+         */
+        void update(byte[] bytes, int offset, int length) {
+            for (Mac mac : macs) {
+                mac.update(bytes, offset, length);
+            }
+        }
+
+        /**
+         * Adds a byte of the body to the signature.
+         */
+        void update(byte b) {
+            for (Mac mac : macs) {
+                mac.update(b);
+            }
+        }
+
+        /**
+         * Returns true if the body was signed with one of the secrets.
+         * Every secret is checked, so the time taken does not depend on which one matched.
+         */
+        boolean matches() {
+            int matched = -1;
+            for (int i = 0; i < macs.length; i++) {
+                try {
+                    macs[i].doFinal(digest, 0);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Could not compute " + ALGORITHM, e);
+                }
+                if (MessageDigest.isEqual(digest, expected) && matched < 0) {
+                    matched = i;
+                }
+            }
+            if (matched < 0) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            verified.incrementAndGet();
+            matchesPerSecret.incrementAndGet(matched);
+            return true;
+        }
+
+        /**
+         * Resets the Macs and hands the verification back to the pool.
+         */
+        @Override
+        public void close() {
+            for (Mac mac : macs) {
+                mac.reset();
+            }
+            expected = null;
+            pool.offer(this);
+        }
+    }
+
+    /**
+     * Starts checking a delivery against its signature header.
+     *
+     * @param header The X-Hub-Signature-256 header, "sha256=" and the hex HMAC of the body.
+     * @return The verification to pass the body to.
+     * @throws IllegalArgumentException If the header is missing.
+     * @throws SecurityException If the header is not a SHA-256 signature.
+     */
+    Verification start(String header) {
+        if (header == null || header.isEmpty()) {
+            throw new IllegalArgumentException("Github Signature cant be null");
+        }
+        byte[] expected = decode(header);
+        Verification verification = pool.poll();
+        if (verification == null) {
+            verification = new Verification();
+        }
+        verification.expected = expected;
+        return verification;
+    }
+
+    /**
+     * Returns true if the body was signed with one of the secrets.
+     * @throws IllegalArgumentException If the header is missing.
+     */
+    boolean verify(String header, byte[] body, int offset, int length) {
+        try (Verification verification = start(header)) {
+            verification.update(body, offset, length);
+            return verification.matches();
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    private byte[] decode(String header) {
+        if (!header.startsWith(PREFIX) || header.length() != PREFIX.length() + 2 * DIGEST_LENGTH) {
+            rejected.incrementAndGet();
+            throw new SecurityException("Not a sha256 signature");
+        }
+        try {
+            return Hex.decodeHex(header.substring(PREFIX.length()));
+        } catch (DecoderException e) {
+            rejected.incrementAndGet();
+            throw new SecurityException("Not a sha256 signature", e);
+        }
+    }
+
+    /**
+     * Returns statistics about the checked signatures. "matchesPerSecret"
+     * shows whether an old secret is still in use before it is removed.
+     */
+    JSONObject getStatistics() {
+        JSONObject statistics = new JSONObject();
+        statistics.put("verified", verified.get());
+        statistics.put("rejected", rejected.get());
+        JSONArray matches = new JSONArray();
+        for (int i = 0; i < matchesPerSecret.length(); i++) {
+            matches.put(matchesPerSecret.get(i));
+        }
+        statistics.put("matchesPerSecret", matches);
+        return statistics;
+    }
+}
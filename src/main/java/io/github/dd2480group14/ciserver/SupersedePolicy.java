@@ -0,0 +1,25 @@
+package io.github.dd2480group14.ciserver;
+
+/**
+ * What happens to older builds of a branch when a newer push to it arrives.
+ */
+enum SupersedePolicy {
+    /** Build every push. */
+    NONE,
+    /** Drop the queued build of the branch, a running build is finished. */
+    COALESCE,
+    /** Drop the queued build and cancel the running build of the branch. */
+    CANCEL;
+
+    /**
+     * Parses a policy name, ignoring case.
+     * @throws IllegalArgumentException If the name is not a policy.
+     */
+    static SupersedePolicy parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown supersede policy: " + name, e);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Reads the body of a webhook delivery in one pass.
+ *
+ * The body is read from the request's input stream into a single buffer
+ * taken from a pool, and the signature is checked over the raw bytes
+ * while they arrive. A form encoded body ("payload=...") is
+ * URL decoded in place in the same buffer, so the payload is parsed
+ * straight from the bytes without being copied into Strings first.
+ */
+class WebhookReader {
+    static final String JSON = "application/json";
+    static final String FORM = "application/x-www-form-urlencoded";
+
+    /** Bodies with an unknown length start with a buffer of this size, doubled as needed. */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    /** Larger buffers are dropped after use rather than kept in the pool. */
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+    private static final byte[] PAYLOAD_NAME = "payload".getBytes(StandardCharsets.US_ASCII);
+
+    private final SignatureVerifier verifier;
+    private final int maxBodyBytes;
+    private final BlockingQueue<byte[]> pool;
+
+    private final AtomicLong bodies = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong buffersReused = new AtomicLong();
+    private final AtomicLong buffersAllocated = new AtomicLong();
+
+    /**
+     * Creates a reader.
+     * @param verifier     Checks the signatures of the deliveries.
+     * @param maxBodyBytes Bodies larger than this are rejected.
+     * @param poolSize     Number of buffers kept for reuse between deliveries.
+     */
+    WebhookReader(SignatureVerifier verifier, int maxBodyBytes, int poolSize) {
+        this.verifier = verifier;
+        this.maxBodyBytes = maxBodyBytes;
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    }
+
+    /**
+     * The payload of a delivery, held in a pooled buffer until closed.
+     * The payload must not be used after it is closed.
+     */
+    final class Payload implements Closeable {
+        private byte[] buffer;
+        private final int offset;
+        private final int length;
+
+        private Payload(byte[] buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Returns the number of bytes of the JSON payload.
+         */
+        int length() {
+            return length;
+        }
+
+        /**
+         * Returns a stream of the UTF-8 bytes of the JSON payload.
+         */
+        InputStream openStream() {
+            return new ByteArrayInputStream(buffer, offset, length);
+        }
+
+        /**
+         * Returns a parser reading the payload straight from the buffer.
+         */
+        JsonPullParser parser() {
+            return new JsonPullParser(buffer, offset, length);
+        }
+
+        /**
+         * Parses the payload into a JSONObject.
+         */
+        JSONObject toJSON() {
+            return new JSONObject(new JSONTokener(new InputStreamReader(openStream(), StandardCharsets.UTF_8)));
+        }
+
+        /**
+         * Hands the buffer back to the pool.
+         */
+        @Override
+        public void close() {
+            if (buffer != null) {
+                release(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    /**
+     * Reads a delivery and checks its signature.
+     *
+     * @param in            The body of the request.
+     * @param contentLength The Content-Length of the request, or -1 if unknown.
+     * @param contentType   The Content-Type of the request, JSON or form encoded.
+     * @param signature     The X-Hub-Signature-256 header, "sha256=" and the hex HMAC.
+     * @return The JSON payload, to be closed by the caller.
+     * @throws SecurityException If the signature is malformed or does not match the body.
+     * @throws IllegalArgumentException If the signature is missing, the body is too large
+     *                                  or the content type is not supported.
+     */
+    Payload read(InputStream in, long contentLength, String contentType, String signature) throws IOException {
+        if (signature == null || signature.isEmpty()) {
+            throw new IllegalArgumentException("Github Signature cant be null");
+        }
+        boolean form = isForm(contentType);
+        if (contentLength > maxBodyBytes) {
+            throw new IllegalArgumentException("Webhook body larger than " + maxBodyBytes + " bytes");
+        }
+
+        SignatureVerifier.Verification verification = verifier.start(signature);
+        byte[] buffer = acquire(contentLength < 0 ? Math.min(INITIAL_BUFFER_SIZE, maxBodyBytes) : (int) contentLength);
+        int length = 0;
+        try {
+            while (true) {
+                int limit = Math.min(buffer.length, maxBodyBytes);
+                if (length == limit) {
+                    // Usually the buffer has the exact Content-Length, so check for the end before growing
+                    int next = in.read();
+                    if (next < 0) {
+                        break;
+                    }
+                    if (length >= maxBodyBytes) {
+                        throw new IllegalArgumentException("Webhook body larger than " + maxBodyBytes + " bytes");
+                    }
+                    byte[] full = buffer;
+                    buffer = Arrays.copyOf(full, (int) Math.min((long) maxBodyBytes, 2L * length));
+                    buffersAllocated.incrementAndGet();
+                    release(full);
+                    buffer[length++] = (byte) next;
+                    verification.update((byte) next);
+                    continue;
+                }
+                int count = in.read(buffer, length, limit - length);
+                if (count < 0) {
+                    break;
+                }
+                verification.update(buffer, length, count);
+                length += count;
+            }
+            bodies.incrementAndGet();
+            bytesRead.addAndGet(length);
+
+            if (!verification.matches()) {
+                throw new SecurityException("Signature does not match webhook");
+            }
+            Payload payload = form ? decodeFormPayload(buffer, length) : new Payload(buffer, 0, length);
+            buffer = null;
+            return payload;
+        } finally {
+            verification.close();
+            if (buffer != null) {
+                release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the content type is form encoded, false if it is JSON.
+     * @throws IllegalArgumentException If it is neither.
+     */
+    private static boolean isForm(String contentType) {
+        String mediaType = contentType == null ? "" : contentType.split(";", 2)[0].trim();
+        if (mediaType.equalsIgnoreCase(FORM)) {
+            return true;
+        }
+        if (mediaType.equalsIgnoreCase(JSON)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Unsupported webhook content type: " + contentType);
+    }
+
+    /**
+     * Finds the "payload" field of a form encoded body and URL decodes
+     * its value in place. Decoding never makes the value longer, so the
+     * decoded bytes are written over the encoded ones.
+     */
+    private Payload decodeFormPayload(byte[] buffer, int length) {
+        int start = 0;
+        while (start <= length) {
+            int end = indexOf(buffer, (byte) '&', start, length);
+            int equals = indexOf(buffer, (byte) '=', start, end);
+            if (equals < end && Arrays.equals(buffer, start, equals, PAYLOAD_NAME, 0, PAYLOAD_NAME.length)) {
+                int decodedLength = urlDecode(buffer, equals + 1, end);
+                return new Payload(buffer, equals + 1, decodedLength);
+            }
+            start = end + 1;
+        }
+        throw new IllegalArgumentException("Form encoded webhook without payload field");
+    }
+
+    private static int indexOf(byte[] buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * URL decodes the bytes between start and end in place.
+     * @return The number of decoded bytes, written from start.
+     */
+    private static int urlDecode(byte[] buffer, int start, int end) {
+        int write = start;
+        for (int read = start; read < end; read++) {
+            byte b = buffer[read];
+            if (b == '+') {
+                b = ' ';
+            } else if (b == '%') {
+                if (read + 2 >= end) {
+                    throw new IllegalArgumentException("Incomplete escape in webhook payload");
+                }
+                int high = Character.digit(buffer[read + 1], 16);
+                int low = Character.digit(buffer[read + 2], 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Invalid escape in webhook payload");
+                }
+                b = (byte) (high << 4 | low);
+                read += 2;
+            }
+            buffer[write++] = b;
+        }
+        return write - start;
+    }
+
+    /**
+     * Takes a buffer of at least the given size from the pool, or allocates one.
+     */
+    private byte[] acquire(int size) {
+        byte[] buffer = pool.poll();
+        if (buffer != null && buffer.length >= size) {
+            buffersReused.incrementAndGet();
+            return buffer;
+        }
+        if (buffer != null) {
+            release(buffer);
+        }
+        buffersAllocated.incrementAndGet();
+        return new byte[Math.max(size, 1)];
+    }
+
+    private void release(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+            pool.offer(buffer);
+        }
+    }
+
+    /**
+     * Returns statistics about the deliveries read.
+     */
+    JSONObject getStatistics() {
+        JSONObject statistics = new JSONObject();
+        statistics.put("bodies", bodies.get());
+        statistics.put("bytesRead", bytesRead.get());
+        statistics.put("buffersReused", buffersReused.get());
+        statistics.put("buffersAllocated", buffersAllocated.get());
+        statistics.put("signatures", verifier.getStatistics());
+        statistics.put("pooledBuffers", pool.size());
+        return statistics;
+    }
+}
@@ -0,0 +1,235 @@
+package io.github.dd2480group14.ciserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.json.JSONObject;
+
+/**
+ * Owns the temporary directories that repositories are cloned into.
+ *
+ * A workspace is acquired before a build and released after it. Released
+ * workspaces are either kept for the next build of the same repository
+ * or renamed out of the way and deleted on a background thread, so the
+ * build worker does not have to wait for the delete. The total size of
+ * all workspaces is kept below a disk quota.
+ */
+class WorkspaceManager {
+    private static final String DELETING_SUFFIX = ".deleting";
+
+    /**
+     * A build workspace.
+     * @param repoURL   URL of the repository the workspace belongs to.
+     * @param directory The temporary directory.
+     * @param reused    True if the directory still holds a previous build of the repository.
+     */
+    record Workspace(String repoURL, File directory, boolean reused) {}
+
+    private record IdleWorkspace(File directory, long bytes) {}
+
+    private final long quotaBytes;
+    private final boolean reuse;
+
+    /** Idle workspaces by repository url, least recently released first. */
+    private final LinkedHashMap<String, IdleWorkspace> idle = new LinkedHashMap<>();
+    private final Map<File, String> active = new HashMap<>();
+    /** Size of the last released workspace of each repository, used to estimate active workspaces. */
+    private final Map<String, Long> lastSizes = new HashMap<>();
+
+    private final ExecutorService cleaner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "workspace-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong pendingDeletionBytes = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong deletions = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    /**
+     * Creates a workspace manager and schedules deletion of workspaces
+     * left half deleted by a previous run.
+     * @param quotaBytes Maximum total size of all workspaces.
+     * @param reuse Whether workspaces are kept for the next build of the same repository.
+     */
+    WorkspaceManager(long quotaBytes, boolean reuse) {
+        this.quotaBytes = quotaBytes;
+        this.reuse = reuse;
+
+        File[] leftovers = new File(System.getProperty("java.io.tmpdir"))
+            .listFiles(file -> file.isDirectory() && file.getName().startsWith("repository") && file.getName().endsWith(DELETING_SUFFIX));
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                scheduleDeletion(leftover, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns a workspace for a build of the repository. An idle workspace
+     * of the same repository is reused if there is one, otherwise a new
+     * temporary directory is created.
+     *
+     * @param repoURL The url of the repository
+     * @return The workspace
+     * @throws IOException If the disk quota is exceeded or the directory can not be created.
+     */
+    synchronized Workspace acquire(String repoURL) throws IOException {
+        IdleWorkspace reusable = reuse ? idle.remove(repoURL) : null;
+        if (reusable != null && reusable.directory().exists()) {
+            reuses.incrementAndGet();
+            active.put(reusable.directory(), repoURL);
+            return new Workspace(repoURL, reusable.directory(), true);
+        }
+
+        long needed = lastSizes.getOrDefault(repoURL, 0L);
+        while (getUsedBytes() + needed > quotaBytes && !idle.isEmpty()) {
+            evictOldestIdle();
+        }
+        if (getUsedBytes() + needed > quotaBytes) {
+            throw new IOException("Workspace disk quota of " + quotaBytes + " bytes exceeded");
+        }
+
+        File directory = Files.createTempDirectory("repository").toFile();
+        active.put(directory, repoURL);
+        return new Workspace(repoURL, directory, false);
+    }
+
+    /**
+     * Hands a workspace back after the build. It is kept for reuse if
+     * enabled and there is room, otherwise it is deleted in the background.
+     *
+     * @param workspace The workspace returned by {@link #acquire}.
+     */
+    void release(Workspace workspace) throws IOException {
+        File directory = workspace.directory();
+        long bytes = directory.exists() ? sizeOf(directory.toPath()) : 0;
+
+        synchronized (this) {
+            active.remove(directory);
+            lastSizes.put(workspace.repoURL(), bytes);
+            if (reuse && !idle.containsKey(workspace.repoURL()) && getUsedBytes() + bytes <= quotaBytes) {
+                idle.put(workspace.repoURL(), new IdleWorkspace(directory, bytes));
+                return;
+            }
+        }
+        deleteInBackground(directory, bytes);
+    }
+
+    private void evictOldestIdle() throws IOException {
+        String oldest = idle.keySet().iterator().next();
+        IdleWorkspace workspace = idle.remove(oldest);
+        deleteInBackground(workspace.directory(), workspace.bytes());
+    }
+
+    /**
+     * Renames the directory so it can no longer be used and deletes it
+     * on the cleaner thread.
+     */
+    private void deleteInBackground(File directory, long bytes) throws IOException {
+        if (!directory.exists()) {
+            return;
+        }
+        Path verifiedDirectoryPath = getVerifiedPath(directory);
+        Path deleting = verifiedDirectoryPath.resolveSibling(verifiedDirectoryPath.getFileName() + DELETING_SUFFIX);
+        Files.move(verifiedDirectoryPath, deleting, StandardCopyOption.ATOMIC_MOVE);
+        scheduleDeletion(deleting.toFile(), bytes);
+    }
+
+    private void scheduleDeletion(File directory, long bytes) {
+        pendingDeletionBytes.addAndGet(bytes);
+        cleaner.execute(() -> {
+            try {
+                removeDirectoryInTmp(directory);
+                reclaimedBytes.addAndGet(bytes);
+                deletions.incrementAndGet();
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not delete workspace " + directory + ": " + e.getMessage());
+            } finally {
+                pendingDeletionBytes.addAndGet(-bytes);
+            }
+        });
+    }
+
+    /**
+     * Returns the bytes used by idle workspaces, workspaces waiting to be
+     * deleted and (estimated from earlier builds) active workspaces.
+     */
+    synchronized long getUsedBytes() {
+        long used = pendingDeletionBytes.get();
+        for (IdleWorkspace workspace : idle.values()) {
+            used += workspace.bytes();
+        }
+        for (String repoURL : active.values()) {
+            used += lastSizes.getOrDefault(repoURL, 0L);
+        }
+        return used;
+    }
+
+    /**
+     * Returns the disk usage of the workspaces as JSON.
+     */
+    synchronized JSONObject getStatistics() {
+        long idleBytes = idle.values().stream().mapToLong(IdleWorkspace::bytes).sum();
+        JSONObject stats = new JSONObject();
+        stats.put("active", active.size());
+        stats.put("idle", idle.size());
+        stats.put("idleBytes", idleBytes);
+        stats.put("pendingDeletionBytes", pendingDeletionBytes.get());
+        stats.put("usedBytes", getUsedBytes());
+        stats.put("quotaBytes", quotaBytes);
+        stats.put("reclaimedBytes", reclaimedBytes.get());
+        stats.put("deletions", deletions.get());
+        stats.put("reuses", reuses.get());
+        stats.put("tmpUsableBytes", new File(System.getProperty("java.io.tmpdir")).getUsableSpace());
+        return stats;
+    }
+
+    /**
+     * Recursively removes specified directory,
+     * subfiles and subdirectories if located in
+     * the system's tmp directory
+     *
+     * @param directory The directory to remove
+     */
+    static void removeDirectoryInTmp(File directory) throws IOException {
+		Path verifiedDirectoryPath = getVerifiedPath(directory);
+		try ( Stream<Path> paths = Files.walk(verifiedDirectoryPath)) {
+				for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+					Files.delete(path);
+				}
+		};
+    }
+
+    private static Path getVerifiedPath(File directory) throws IllegalArgumentException, IOException {
+		if (directory == null || !directory.exists()) {
+				throw new IllegalArgumentException("Directory does not exists");
+		}
+		Path directoryPath = directory.toPath().toRealPath();
+		Path systemTmpPath = Paths.get(System.getProperty("java.io.tmpdir")).toRealPath();
+		if (!directoryPath.startsWith(systemTmpPath) || directoryPath.equals(systemTmpPath)) {
+				throw new IllegalArgumentException(
+					String.format("Only allowed to remove directories in %s", systemTmpPath)
+				);
+		}
+		return directoryPath;
+    }
+
+    private static long sizeOf(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
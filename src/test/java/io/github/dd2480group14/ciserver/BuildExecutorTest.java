@@ -0,0 +1,71 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for running Maven commands of builds.
+ */
+public class BuildExecutorTest {
+
+    /**
+     * Commands should use the shared local repository with file locking,
+     * and fall back to mvn when the daemon cannot be started.
+     */
+    @Test
+    public void commandUsesSharedRepositoryAndFallsBackToMvn(@TempDir Path path) {
+        File repository = path.resolve("m2").toFile();
+        BuildExecutor executor = new BuildExecutor("mvnd-that-does-not-exist", repository, new CommandRunner());
+
+        List<String> command = executor.commandFor(List.of("mvn", "clean", "test"));
+
+        assertEquals(List.of("mvn", "clean", "test", "-Dmaven.repo.local=" + repository.getAbsolutePath(),
+            "-Daether.syncContext.named.factory=file-lock", "-Daether.syncContext.named.nameMapper=file-gav"), command);
+        assertTrue(repository.isDirectory());
+        assertEquals("mvn", executor.getStatistics().getString("executable"));
+    }
+
+    /**
+     * The daemon should only be configured when builds are never stopped
+     * from outside, since killing mvnd does not stop the build on the daemon.
+     */
+    @Test
+    public void daemonOnlyForBuildsThatAreNeverStopped() {
+        Map<String, String> env = new HashMap<>(Map.of("MAVEN_DAEMON", "true"));
+        assertNull(new ServerConfig(env::get).mavenDaemonCommand());
+
+        env.put("BUILD_TIMEOUT_MINUTES", "0");
+        assertEquals("mvnd", new ServerConfig(env::get).mavenDaemonCommand());
+
+        env.put("BUILD_SUPERSEDE", "cancel");
+        assertNull(new ServerConfig(env::get).mavenDaemonCommand());
+
+        env.remove("BUILD_SUPERSEDE");
+        env.put("BUILD_CGROUP", "/sys/fs/cgroup/ci.slice");
+        assertNull(new ServerConfig(env::get).mavenDaemonCommand());
+    }
+
+    /**
+     * The statistics should average the timings of the recorded builds.
+     */
+    @Test
+    public void averageTimings() {
+        BuildExecutor executor = new BuildExecutor(null, null, new CommandRunner());
+        executor.record(new BuildOutputAnalyzer.Timings(100, 200, 300, 40));
+        executor.record(new BuildOutputAnalyzer.Timings(300, 400, 500, 60));
+
+        assertEquals(2, executor.getStatistics().getLong("builds"));
+        assertEquals(200, executor.getStatistics().getLong("averageResolutionMillis"));
+        assertEquals(400, executor.getStatistics().getLong("averageTestMillis"));
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for the build ID allocator.
+ */
+public class BuildIdAllocatorTest {
+
+    /**
+     * IDs handed out before a restart should not be handed
+     * out again, even if no log with those IDs exists.
+     */
+    @Test
+    public void closePersistsCounter(@TempDir Path path) throws IOException {
+        File counter = path.resolve("last-build-id").toFile();
+        BuildIdAllocator allocator = new BuildIdAllocator(counter, 0, 60000);
+        assertEquals(1, allocator.next());
+        assertEquals(2, allocator.next());
+        allocator.close();
+
+        BuildIdAllocator restarted = new BuildIdAllocator(counter, 0, 60000);
+        assertEquals(3, restarted.next());
+        restarted.close();
+    }
+
+    /**
+     * After a crash the counter file may be behind or broken.
+     * The allocator should continue after the highest ID on disk.
+     */
+    @Test
+    public void recoversFromIdsOnDisk(@TempDir Path path) throws IOException {
+        File counter = path.resolve("last-build-id").toFile();
+        Files.writeString(counter.toPath(), "4");
+        BuildIdAllocator allocator = new BuildIdAllocator(counter, 9, 60000);
+        assertEquals(10, allocator.next());
+        allocator.close();
+
+        Files.writeString(counter.toPath(), "1");
+        BuildIdAllocator behind = new BuildIdAllocator(counter, 3, 60000);
+        assertEquals(4, behind.next());
+        behind.close();
+
+        Files.writeString(counter.toPath(), "");
+        BuildIdAllocator broken = new BuildIdAllocator(counter, 7, 60000);
+        assertEquals(8, broken.next());
+        broken.close();
+    }
+
+    /**
+     * IDs taken from many threads at once should all be different,
+     * with no ID lost or used twice.
+     */
+    @Test
+    public void nextIsUniqueAcrossThreads(@TempDir Path path) throws Exception {
+        BuildIdAllocator allocator = new BuildIdAllocator(path.resolve("last-build-id").toFile(), 0, 60000);
+        int threads = 16;
+        int idsPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < idsPerThread; i++) {
+                    ids.add(allocator.next());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        allocator.close();
+
+        assertEquals(threads * idsPerThread, ids.size());
+        assertEquals(threads * idsPerThread + 1, allocator.next());
+    }
+}
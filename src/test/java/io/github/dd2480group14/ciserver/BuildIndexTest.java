@@ -0,0 +1,100 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for the build metadata index.
+ */
+public class BuildIndexTest {
+
+    /**
+     * A reloaded index should contain the last entry written for
+     * each build, and a build left running should be marked as an error.
+     */
+    @Test
+    public void reloadKeepsLatestEntries(@TempDir Path path) throws IOException {
+        File dir = path.toFile();
+        BuildIndex index = new BuildIndex(dir);
+        BuildIndex.Entry first = new BuildIndex.Entry(1, "abc", "main", "test-user", "2022-01-01", "running", 0);
+        BuildIndex.Entry second = new BuildIndex.Entry(2, "def", "dev", "test-user", "2022-01-02", "running", 0);
+        index.put(first);
+        index.put(second);
+        index.put(first.finish("success", 1234));
+
+        BuildIndex reloaded = new BuildIndex(dir);
+        assertEquals(2, reloaded.size());
+        assertEquals(first.finish("success", 1234), reloaded.get(1));
+        assertEquals(second.finish("error", 0), reloaded.get(2));
+        assertEquals(2, reloaded.getMaxId());
+        assertEquals("error", new BuildIndex(dir).get(2).status());
+    }
+
+    /**
+     * Log files without an index entry should be added from their
+     * header, and a line cut short by a crash should be skipped.
+     */
+    @Test
+    public void loadRecoversMissingLogs(@TempDir Path path) throws IOException {
+        File dir = path.toFile();
+        Files.writeString(path.resolve("7.log"), "Commit ID: 123\nBuild date: 2022-01-01\nAdditional log content\n");
+        Files.writeString(path.resolve(BuildIndex.INDEX_FILE_NAME), "{\"id\": 3, \"sha\": \"ab", StandardOpenOption.CREATE);
+
+        BuildIndex index = new BuildIndex(dir);
+        assertEquals(1, index.size());
+        assertEquals("123", index.get(7).sha());
+        assertEquals("2022-01-01", index.get(7).date());
+        assertEquals(7, index.getMaxId());
+        assertEquals("123", new BuildIndex(dir).get(7).sha());
+    }
+
+    /**
+     * Querying with a date range and branch should return only
+     * the matching builds, newest first.
+     */
+    @Test
+    public void queryFiltersByDateAndBranch(@TempDir Path path) throws IOException {
+        BuildIndex index = new BuildIndex(path.toFile());
+        index.put(new BuildIndex.Entry(1, "a", "main", "test-user", "2022-01-01", "success", 0));
+        index.put(new BuildIndex.Entry(2, "b", "main", "test-user", "2022-01-05", "failure", 0));
+        index.put(new BuildIndex.Entry(3, "c", "dev", "test-user", "2022-01-06", "success", 0));
+        index.put(new BuildIndex.Entry(4, "d", "main", "test-user", "2022-01-10", "success", 0));
+
+        BuildFilter filter = new BuildFilter(null, "main", null, null,
+            LocalDate.parse("2022-01-02"), LocalDate.parse("2022-01-10"));
+        List<BuildIndex.Entry> builds = index.query(filter, null, 10);
+        assertEquals(List.of(4L, 2L), builds.stream().map(BuildIndex.Entry::id).toList());
+
+        BuildFilter failed = new BuildFilter(null, null, null, "failure", null, null);
+        assertEquals(1, index.query(failed, null, 10).size());
+        assertEquals(0, index.query(failed, 2L, 10).size());
+    }
+
+    /**
+     * Paging through filtered builds should return the newest
+     * matching builds first and continue below the cursor.
+     */
+    @Test
+    public void queryPagesFromCursor(@TempDir Path path) throws IOException {
+        BuildIndex index = new BuildIndex(path.toFile());
+        for (int i = 1; i <= 5; i++) {
+            index.put(new BuildIndex.Entry(i, i % 2 == 1 ? "odd" : "even", "main", "test-user", "2022-01-01", "success", 0));
+        }
+        BuildFilter filter = new BuildFilter("odd", null, null, null, null, null);
+
+        List<BuildIndex.Entry> firstPage = index.query(filter, null, 2);
+        assertEquals(List.of(5L, 3L), firstPage.stream().map(BuildIndex.Entry::id).toList());
+        List<BuildIndex.Entry> secondPage = index.query(filter, 3L, 2);
+        assertEquals(List.of(1L), secondPage.stream().map(BuildIndex.Entry::id).toList());
+    }
+}
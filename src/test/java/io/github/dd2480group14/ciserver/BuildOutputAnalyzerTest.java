@@ -0,0 +1,120 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the streaming build output analyzer.
+ */
+public class BuildOutputAnalyzerTest {
+
+    /**
+     * Writes the output to the analyzer in small chunks that
+     * split lines, the way output arrives from a process.
+     */
+    private void writeInChunks(BuildOutputAnalyzer analyzer, String output) {
+        byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset < bytes.length; offset += 7) {
+            analyzer.write(bytes, offset, Math.min(7, bytes.length - offset));
+        }
+        analyzer.close();
+    }
+
+    /**
+     * A successful build should be recognized and the
+     * test counts taken from the summary only.
+     */
+    @Test
+    public void analyzeSuccessfulBuild() {
+        List<String> failures = new ArrayList<>();
+        BuildOutputAnalyzer analyzer = new BuildOutputAnalyzer(failures::add);
+        writeInChunks(analyzer, """
+            [INFO] Tests run: 2, Failures: 0, Errors: 0, Skipped: 0, Time elapsed: 0.1 s -- in com.group14.app.AppTest
+            [INFO] Results:
+            [INFO] Tests run: 2, Failures: 0, Errors: 0, Skipped: 1
+            [INFO] \u001B[1;32mBUILD SUCCESS\u001B[m
+            """);
+
+        assertTrue(analyzer.succeeded());
+        assertEquals(2, analyzer.getTestsRun());
+        assertEquals(0, analyzer.getTestsFailed());
+        assertTrue(failures.isEmpty());
+    }
+
+    /**
+     * The first failing test class should be reported
+     * once, before the build has finished.
+     */
+    @Test
+    public void analyzeFailingTests() {
+        List<String> failures = new ArrayList<>();
+        BuildOutputAnalyzer analyzer = new BuildOutputAnalyzer(failures::add);
+        writeInChunks(analyzer, """
+            [ERROR] Tests run: 3, Failures: 1, Errors: 0, Skipped: 0, Time elapsed: 0.1 s <<< FAILURE! -- in com.group14.app.AppTest
+            [ERROR] Tests run: 1, Failures: 0, Errors: 1, Skipped: 0, Time elapsed: 0.1 s <<< FAILURE! -- in com.group14.app.OtherTest
+            """);
+
+        assertEquals(List.of("tests failing, build still running"), failures);
+        assertEquals(BuildOutputAnalyzer.Outcome.RUNNING, analyzer.getOutcome());
+
+        writeInChunks(analyzer, """
+            [ERROR] Tests run: 4, Failures: 1, Errors: 1, Skipped: 0
+            [INFO] BUILD FAILURE
+            """);
+        assertFalse(analyzer.succeeded());
+        assertEquals(4, analyzer.getTestsRun());
+        assertEquals(2, analyzer.getTestsFailed());
+        assertEquals(1, failures.size());
+    }
+
+    /**
+     * A compile error should be reported as compilation failure.
+     */
+    @Test
+    public void analyzeCompilationError() {
+        List<String> failures = new ArrayList<>();
+        BuildOutputAnalyzer analyzer = new BuildOutputAnalyzer(failures::add);
+        writeInChunks(analyzer, """
+            [ERROR] COMPILATION ERROR :
+            [ERROR] /src/main/java/App.java:[3,1] class, interface, enum, or record expected
+            [INFO] BUILD FAILURE""");
+
+        assertTrue(analyzer.compilationFailed());
+        assertFalse(analyzer.succeeded());
+        assertEquals(List.of("compilation failed"), failures);
+    }
+
+    /**
+     * The time between lines should be added to the activity of the
+     * running plugin goal, and downloads should count as resolution.
+     */
+    @Test
+    public void timeActivities() {
+        long[] seconds = {0};
+        BuildOutputAnalyzer analyzer = new BuildOutputAnalyzer(failure -> {},
+            () -> TimeUnit.SECONDS.toNanos(seconds[0]++));
+        String output = """
+            [INFO] Scanning for projects...
+            [INFO] Downloading from central: https://repo.maven.apache.org/junit.pom
+            [INFO] --- resources:3.3.1:resources (default-resources) @ app ---
+            [INFO] --- compiler:3.13.0:compile (default-compile) @ app ---
+            [INFO] Compiling 3 source files
+            [INFO] --- surefire:3.3.0:test (default-test) @ app ---
+            [INFO] Tests run: 1, Failures: 0, Errors: 0, Skipped: 0
+            [INFO] --- jar:3.4.2:jar (default-jar) @ app ---
+            [INFO] BUILD SUCCESS
+            """;
+
+        writeInChunks(analyzer, output);
+
+        assertEquals(new BuildOutputAnalyzer.Timings(3000, 3000, 2000, 1000), analyzer.getTimings());
+    }
+}
@@ -0,0 +1,178 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the build queue.
+ */
+public class BuildQueueTest {
+    private final PushEventInfo info = new PushEventInfo(
+        "test-user", "https://github.com/test/example.git", "123123",
+        "main", "Initial commit", "test", "example"
+    );
+
+    /**
+     * With one worker busy and room for one waiting build,
+     * the third submitted build should be rejected.
+     */
+    @Test
+    public void submitRejectsWhenFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BuildQueue queue = new BuildQueue(1, 1, push -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertTrue(queue.submit(info));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(queue.submit(info));
+        assertFalse(queue.submit(info));
+        assertEquals(1, queue.getQueueDepth());
+        assertEquals(1, queue.getRejectedCount());
+
+        release.countDown();
+        assertTrue(queue.shutdown(10, TimeUnit.SECONDS));
+        JSONObject stats = queue.getStatistics();
+        assertEquals(2, stats.getLong("completed"));
+        assertEquals(0, stats.getInt("queueDepth"));
+    }
+
+    /**
+     * A build that throws should not stop the worker
+     * from running the next build.
+     */
+    @Test
+    public void failingBuildDoesNotStopQueue() throws InterruptedException {
+        CountDownLatch builds = new CountDownLatch(2);
+        BuildQueue queue = new BuildQueue(1, 4, push -> {
+            builds.countDown();
+            throw new IllegalStateException("build failed");
+        });
+
+        queue.submit(info);
+        queue.submit(info);
+        assertTrue(builds.await(10, TimeUnit.SECONDS));
+        assertTrue(queue.shutdown(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * With coalescing, a second push to a branch should replace the
+     * build of that branch that is still waiting, but not the build
+     * of another branch.
+     */
+    @Test
+    public void newerPushReplacesWaitingBuild() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> built = new CopyOnWriteArrayList<>();
+        List<String> superseded = new CopyOnWriteArrayList<>();
+        BuildQueue queue = new BuildQueue(1, 4, push -> {
+            built.add(push.SHA());
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, SupersedePolicy.COALESCE, (older, newer) -> superseded.add(older.SHA() + ">" + newer.SHA()), thread -> {});
+
+        queue.submit(push("1", "main"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        queue.submit(push("2", "main"));
+        queue.submit(push("3", "dev"));
+        queue.submit(push("4", "main"));
+        release.countDown();
+        assertTrue(queue.shutdown(10, TimeUnit.SECONDS));
+
+        assertEquals(List.of("1", "3", "4"), built);
+        assertEquals(List.of("2>4"), superseded);
+        assertEquals(1, queue.getStatistics().getLong("dropped"));
+    }
+
+    /**
+     * With cancelling, a push to a branch should kill the command of
+     * the running build of that branch.
+     */
+    @Test
+    public void newerPushCancelsRunningBuild() throws InterruptedException {
+        CommandRunner runner = new CommandRunner();
+        CountDownLatch started = new CountDownLatch(1);
+        List<String> results = new CopyOnWriteArrayList<>();
+        BuildQueue queue = new BuildQueue(1, 4, push -> {
+            started.countDown();
+            try {
+                int exitCode = runner.runStreaming(List.of("sleep", push.SHA()), new File("."), OutputStream.nullOutputStream());
+                results.add("exit " + exitCode);
+            } catch (InterruptedException e) {
+                results.add("cancelled");
+            } catch (IOException e) {
+                results.add(e.getMessage());
+            }
+        }, SupersedePolicy.CANCEL, (older, newer) -> {}, runner::cancel);
+
+        long start = System.nanoTime();
+        queue.submit(push("30", "main"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        queue.submit(push("0", "main"));
+        assertTrue(queue.shutdown(20, TimeUnit.SECONDS));
+
+        assertEquals(List.of("cancelled", "exit 0"), results);
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 20);
+        assertEquals(1, queue.getStatistics().getLong("cancelled"));
+    }
+
+    /**
+     * A push that is turned away because the queue is full should
+     * not cancel the running build of its branch.
+     */
+    @Test
+    public void rejectedPushDoesNotCancelRunningBuild() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> results = new CopyOnWriteArrayList<>();
+        List<String> superseded = new CopyOnWriteArrayList<>();
+        BuildQueue queue = new BuildQueue(1, 1, push -> {
+            started.countDown();
+            try {
+                release.await();
+                results.add("built " + push.SHA());
+            } catch (InterruptedException e) {
+                results.add("cancelled " + push.SHA());
+            }
+        }, SupersedePolicy.CANCEL, (older, newer) -> superseded.add(older.SHA()), thread -> {});
+
+        assertTrue(queue.submit(push("1", "main")));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(queue.submit(push("2", "other")));
+        assertFalse(queue.submit(push("3", "main")));
+        release.countDown();
+        assertTrue(queue.shutdown(10, TimeUnit.SECONDS));
+
+        assertEquals(List.of("built 1", "built 2"), results);
+        assertEquals(List.of(), superseded);
+        assertEquals(0, queue.getStatistics().getLong("cancelled"));
+    }
+
+    private static PushEventInfo push(String sha, String branch) {
+        return new PushEventInfo("test-user", "https://github.com/test/example.git", sha,
+            branch, "Initial commit", "test", "example");
+    }
+}
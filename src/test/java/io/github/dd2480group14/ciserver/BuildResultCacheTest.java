@@ -0,0 +1,66 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for the cache of build results.
+ */
+public class BuildResultCacheTest {
+
+    /**
+     * The key should change with the tree, the command and the JDK.
+     */
+    @Test
+    public void keyDependsOnTreeCommandAndJdk() {
+        String key = BuildResultCache.keyOf("tree", List.of("mvn", "test"), "17");
+        assertEquals(key, BuildResultCache.keyOf("tree", List.of("mvn", "test"), "17"));
+        assertNotEquals(key, BuildResultCache.keyOf("other", List.of("mvn", "test"), "17"));
+        assertNotEquals(key, BuildResultCache.keyOf("tree", List.of("mvn", "verify"), "17"));
+        assertNotEquals(key, BuildResultCache.keyOf("tree", List.of("mvn", "test"), "21"));
+    }
+
+    /**
+     * When the cache is full the least recently used result should
+     * be evicted, and the rest should be there after a reload.
+     */
+    @Test
+    public void evictLeastRecentlyUsedAndReload(@TempDir Path path) throws IOException {
+        File dir = path.toFile();
+        BuildResultCache cache = new BuildResultCache(dir, 2);
+        BuildResultCache.CachedResult first = new BuildResultCache.CachedResult("success", "mvn test succeeded", 1);
+        BuildResultCache.CachedResult second = new BuildResultCache.CachedResult("failure", "mvn test failed", 2);
+        BuildResultCache.CachedResult third = new BuildResultCache.CachedResult("success", "mvn test succeeded", 3);
+        cache.put("a", first);
+        cache.put("b", second);
+        assertEquals(first, cache.get("a"));
+        cache.put("c", third);
+
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getStatistics().getLong("evictions"));
+
+        BuildResultCache reloaded = new BuildResultCache(dir, 2);
+        assertEquals(first, reloaded.get("a"));
+        assertEquals(third, reloaded.get("c"));
+        assertEquals(2, reloaded.getStatistics().getLong("entries"));
+    }
+
+    /**
+     * A cache with no room should never return a result.
+     */
+    @Test
+    public void disabledCacheMisses(@TempDir Path path) throws IOException {
+        BuildResultCache cache = new BuildResultCache(path.toFile(), 0);
+        cache.put("a", new BuildResultCache.CachedResult("success", "mvn test succeeded", 1));
+        assertNull(cache.get("a"));
+    }
+}
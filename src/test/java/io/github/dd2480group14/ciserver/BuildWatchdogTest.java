@@ -0,0 +1,82 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for stopping builds that run out of time.
+ */
+public class BuildWatchdogTest {
+
+    /**
+     * A command still running at the deadline should be killed and the build thread interrupted.
+     */
+    @Test
+    public void expiredDeadlineKillsCommand() {
+        CommandRunner commandRunner = new CommandRunner();
+        try (BuildWatchdog watchdog = new BuildWatchdog(300, commandRunner)) {
+            BuildWatchdog.Deadline deadline = watchdog.start();
+            long start = System.currentTimeMillis();
+
+            assertThrows(InterruptedException.class, () -> commandRunner.runStreaming(
+                List.of("sh", "-c", "sleep 30 & sleep 30"), new File("."), new ByteArrayOutputStream()));
+            deadline.close();
+
+            assertTrue(System.currentTimeMillis() - start < 10000);
+            assertTrue(deadline.hasExpired());
+            assertEquals(1, watchdog.getStatistics().getLong("timedOut"));
+        }
+    }
+
+    /**
+     * The log of a build stopped while it was writing output should stay
+     * open, so the timeout can still be recorded in it.
+     */
+    @Test
+    public void expiredBuildCanLogTimeout(@TempDir Path path) throws Exception {
+        CommandRunner commandRunner = new CommandRunner();
+        Path file = Files.createFile(path.resolve("1.log"));
+        try (BuildWatchdog watchdog = new BuildWatchdog(300, commandRunner);
+                LiveBuildLog log = new LiveBuildLog("1", file)) {
+            BuildWatchdog.Deadline deadline = watchdog.start();
+
+            assertThrows(InterruptedException.class, () -> commandRunner.runStreaming(
+                List.of("sh", "-c", "while true; do echo output; done"), new File("."), log.asOutputStream()));
+            deadline.close();
+            log.writeLine("Build timed out");
+
+            assertTrue(deadline.hasExpired());
+        }
+        String content = Files.readString(file);
+        assertTrue(content.startsWith("output\n"));
+        // The build may have been killed in the middle of a line
+        assertTrue(content.endsWith("Build timed out\n"));
+    }
+
+    /**
+     * A build that finished in time should not be stopped afterwards.
+     */
+    @Test
+    public void closedDeadlineDoesNotExpire() throws Exception {
+        try (BuildWatchdog watchdog = new BuildWatchdog(100, new CommandRunner())) {
+            BuildWatchdog.Deadline deadline = watchdog.start();
+            deadline.close();
+            Thread.sleep(300);
+
+            assertFalse(deadline.hasExpired());
+            assertFalse(Thread.interrupted());
+            assertEquals(0, watchdog.getStatistics().getLong("timedOut"));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for limiting builds with cgroups, using a plain folder in place of the cgroup file system.
+ */
+public class CgroupLimitsTest {
+
+    /**
+     * A build cgroup should get the configured limits, and wrapped commands
+     * should add their process to it before they run.
+     */
+    @Test
+    public void limitsAreWrittenAndCommandsJoinTheGroup(@TempDir Path path) throws Exception {
+        CgroupLimits limits = new CgroupLimits(path.toFile(), 500, 256 * 1024 * 1024);
+        assertEquals("+cpu +memory", Files.readString(path.resolve("cgroup.subtree_control")));
+
+        CgroupLimits.Group group = limits.create("build-1");
+        Path groupPath = path.resolve("build-1");
+        assertEquals("50000 100000", Files.readString(groupPath.resolve("cpu.max")));
+        assertEquals(Long.toString(256 * 1024 * 1024), Files.readString(groupPath.resolve("memory.max")));
+
+        CommandRunner.Result result = new CommandRunner().run(group.wrap(List.of("echo", "in group")), path.toFile());
+        assertEquals("in group", result.output());
+        assertTrue(Files.readString(groupPath.resolve("cgroup.procs")).trim().matches("\\d+"));
+    }
+
+    /**
+     * Without limits no limit files should be written.
+     */
+    @Test
+    public void noLimitsWithoutConfiguration(@TempDir Path path) throws Exception {
+        CgroupLimits limits = new CgroupLimits(path.toFile(), 0, 0);
+        limits.create("build-2");
+
+        assertFalse(Files.exists(path.resolve("build-2").resolve("cpu.max")));
+        assertFalse(Files.exists(path.resolve("build-2").resolve("memory.max")));
+    }
+
+    /**
+     * Closing a group should wait until the killed processes have left
+     * the cgroup before removing it.
+     */
+    @Test
+    public void closeWaitsForKilledProcesses(@TempDir Path path) throws Exception {
+        CgroupLimits limits = new CgroupLimits(path.toFile(), 0, 0);
+        CgroupLimits.Group group = limits.create("build-3");
+        Path groupPath = path.resolve("build-3");
+        Files.writeString(groupPath.resolve("cgroup.kill"), "");
+        Files.writeString(groupPath.resolve("cgroup.events"), "populated 1\nfrozen 0\n");
+        AtomicBoolean exited = new AtomicBoolean();
+        Thread processes = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+                exited.set(true);
+                Files.writeString(groupPath.resolve("cgroup.events"), "populated 0\nfrozen 0\n");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        processes.start();
+        long start = System.nanoTime();
+
+        group.close();
+
+        assertTrue(exited.get());
+        assertTrue(System.nanoTime() - start < 4_000_000_000L);
+        assertEquals("1", Files.readString(groupPath.resolve("cgroup.kill")));
+        processes.join();
+    }
+}
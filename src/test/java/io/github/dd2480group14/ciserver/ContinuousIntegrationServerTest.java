@@ -1,15 +1,19 @@
 package io.github.dd2480group14.ciserver;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.StringReader;
 import java.io.StringWriter;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -17,11 +21,16 @@ import java.time.LocalDate;
 import java.util.List;
 import java.util.Scanner;
 
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 import org.apache.commons.codec.digest.HmacUtils;
-import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.json.JSONObject;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -30,9 +39,9 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.mockito.ArgumentMatchers.eq;
 
 /**
  * Unit test for Conitinuous Integration Server.
@@ -62,7 +71,6 @@ public class ContinuousIntegrationServerTest {
      * Creates a new server with a log folder with a 
      * log with the given message. 
 	 * Retrieveing the log should return the same message.
-	 * Also, retrieving the summary should return the appropriate summary.
      * @param path
      */
     @Test
@@ -72,7 +80,6 @@ public class ContinuousIntegrationServerTest {
         String message = "Commit ID: " + commitId
 					   + "\nBuild date: " + buildDate
 					   + "\nAdditional log content\n";
-        String summary = "<tr><td><a href=\"/logs/1\"</a>1</td><td>" + buildDate + "</td><td>" + commitId + "</td></tr>";
 
         File dir = path.toFile();
         File log = new File(dir.getPath() + "/1.log");
@@ -92,16 +99,13 @@ public class ContinuousIntegrationServerTest {
 
         ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, testToken, dir);
         assertEquals(message, ciServer.getBuildLog("1"));
-        assertEquals(summary, ciServer.getBuildLogHTMLTableRow("1"));
     }
 
 	/**
      * Creates a new server with a log folder with a 
      * log with the given message. 
-	 * Retrieveing the log should return the same message.
-	 * Also, retrieving the summary should return the appropriate summary.
-	 * Note that build date field in the summary should be null
-	 * since it does not exist.
+	 * Retrieveing the log should return the same message
+	 * even though it has no build date.
      * @param path
      */
     @Test
@@ -109,7 +113,6 @@ public class ContinuousIntegrationServerTest {
 		String commitId = "123";
         String message = "Commit ID: " + commitId
 					   + "\nAdditional log content\n";
-        String summary = "<tr><td><a href=\"/logs/1\"</a>1</td><td>" + null + "</td><td>" + commitId + "</td></tr>";
 
         File dir = path.toFile();
         File log = new File(dir.getPath() + "/1.log");
@@ -129,12 +132,11 @@ public class ContinuousIntegrationServerTest {
 
         ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, testToken, dir);
         assertEquals(message, ciServer.getBuildLog("1"));
-        assertEquals(summary, ciServer.getBuildLogHTMLTableRow("1"));
     }
 
     /**
      * Creates a new server with empty log folder.
-     * Trying to retreive a log (or its summary) should throw
+     * Trying to retreive a log should throw
      * NoSuchFileException.
      * @param path
      */
@@ -143,7 +145,6 @@ public class ContinuousIntegrationServerTest {
         File dir = path.toFile();
         ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, testToken, dir);
 		assertThrows(FileNotFoundException.class, () -> ciServer.getBuildLog("1"));
-		assertThrows(FileNotFoundException.class, () -> ciServer.getBuildLogHTMLTableRow("1"));
     }
 
 
@@ -213,6 +214,34 @@ public class ContinuousIntegrationServerTest {
 		assertEquals("Initial commit", info.commitMessage());
 	}
 
+    /**
+     * Verifies that the files changed by the commits of a push are
+     * collected, with later commits winning over earlier ones.
+     */
+    @Test
+    public void fromJSONChangedFiles() {
+        String payload = """
+            {
+                "ref": "refs/heads/main",
+                "before": "aaa111",
+                "after": "123123",
+                "repository": { "clone_url": "https://github.com/test/example.git" },
+                "pusher": { "name": "test-user" },
+                "commits": [
+                    { "message": "First", "added": ["a/New.java"], "modified": ["b/Old.java"], "removed": ["c/Gone.java"] },
+                    { "message": "Second", "added": ["c/Gone.java"], "modified": [], "removed": ["a/New.java"] }
+                ]
+            }
+            """;
+
+        PushChanges changes = PushEventInfo.fromJSON(new JSONObject(payload)).changes();
+
+        assertEquals("aaa111", changes.before());
+        assertEquals(List.of("b/Old.java", "c/Gone.java"), changes.changed());
+        assertEquals(List.of("a/New.java"), changes.removed());
+        assertTrue(changes.complete());
+    }
+
     /**
      * Verifies that owner defaults to "Unknown" 
      * when owner field is missing from the payload.
@@ -278,22 +307,6 @@ public class ContinuousIntegrationServerTest {
 		assertThrows(IllegalArgumentException.class, () -> PushEventInfo.fromJSON(json));
 	}
 
-	/**
-	 * Create a temporary git repository,
-	 * clones it and verifies that the
-	 * .git directory exists
-     * @param path
-	 */
-	@Test
-	public void runGitClone(@TempDir Path path) throws IOException, InterruptedException {
-		ContinuousIntegrationServer continuousIntegrationServer = new ContinuousIntegrationServer(testSignature, testToken);
-		continuousIntegrationServer.runCommand(List.of("git", "init"), path.toFile());
-		String url = path.toString();
-		File tempDirectory = continuousIntegrationServer.gitClone(url, null);
-		boolean gitFolderExists = new File(tempDirectory, ".git").exists();
-		assertTrue(gitFolderExists);
-	}
-
     /**
      * Creates a new server and writes a log 
      * The file contents should be the same as expected
@@ -420,7 +433,7 @@ public class ContinuousIntegrationServerTest {
     /**
      * Gets all build logs, which in this case is 
      * 2. The whole message should be equal to
-     * the log header + the log summaries
+     * the log header + the log summaries, newest first
      * @param path
      */ 
     @Test
@@ -461,12 +474,32 @@ public class ContinuousIntegrationServerTest {
         String logListFourth = "</table>";
         String logListStyle = "<style>table, th, td {border: 1px solid black;border-collapse: collapse;text-align: center;}</style>";
 
-        String fullLogList = logListFirst + logListSecond + logListThird + logListFourth + logListStyle;
+        String fullLogList = logListFirst + logListThird + logListSecond + logListFourth + logListStyle;
 
         ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, testToken, dir);
         assertEquals(fullLogList, ciServer.getBuilds());
     }
 
+    /**
+     * Lists filtered builds two per page. The first page should
+     * link to the next one with the cursor and the filter, the
+     * last page should not link any further. Which builds a
+     * page holds is tested in BuildIndexTest.
+     * @param path
+     */
+    @Test
+    public void getBuildsLinksNextPage(@TempDir Path path) {
+        File dir = path.toFile();
+        ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, testToken, dir);
+        for (int i = 1; i <= 5; i++) {
+            ciServer.storeBuildLog("log", i % 2 == 1 ? "odd" : "even");
+        }
+        BuildFilter filter = new BuildFilter("odd", null, null, null, null, null);
+
+        assertTrue(ciServer.getBuilds(filter, null, 2).contains("<a href=\"/logs?before=3&size=2&sha=odd\">Older builds</a>"));
+        assertFalse(ciServer.getBuilds(filter, 3L, 2).contains("Older builds"));
+    }
+
     /**
      * Tries to get build logs when there are no
      * .log files in the directory. Should return
@@ -506,7 +539,6 @@ public class ContinuousIntegrationServerTest {
         File logsDir = path.toFile();
         ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, testToken, logsDir);
 
-        Request baseRequest = mock(Request.class);
         HttpServletRequest request = mock(HttpServletRequest.class);
         HttpServletResponse response = mock(HttpServletResponse.class);
 
@@ -514,7 +546,7 @@ public class ContinuousIntegrationServerTest {
         when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
         when(request.getMethod()).thenReturn("GET");
 
-        ciServer.handle("", baseRequest, request, response);
+        ciServer.handle("", request, response);
 
         // Asserts that the response is a 404 error.
         verify(response).sendError(404);
@@ -533,7 +565,6 @@ public class ContinuousIntegrationServerTest {
         String commitID = "hadahid9213u9dva8sdhf9hasd89h";
         ciServer.storeBuildLog("This is a log", commitID);
 
-        Request baseRequest = mock(Request.class);
         HttpServletRequest request = mock(HttpServletRequest.class);
         HttpServletResponse response = mock(HttpServletResponse.class);
 
@@ -541,7 +572,7 @@ public class ContinuousIntegrationServerTest {
         when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
         when(request.getMethod()).thenReturn("GET");
 
-        ciServer.handle("/logs", baseRequest, request, response);
+        ciServer.handle("/logs", request, response);
 
         String output = stringWriter.toString();
 
@@ -549,6 +580,153 @@ public class ContinuousIntegrationServerTest {
         assertTrue(output.contains(commitID));
     }
 
+    /**
+     * A GET request to /logs/{id}/stream should follow the live log
+     * of that build, while /logs/stream names no build and should be
+     * answered with 404 Not Found. How a log is followed is tested in
+     * LiveBuildLogTest.
+     * @param path
+     */
+    @Test
+    public void handleGETlogStream(@TempDir Path path) throws Exception {
+        File logsDir = path.toFile();
+        ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, testToken, logsDir);
+        PushEventInfo info = new PushEventInfo("test-user", "https://github.com/test/example.git",
+            "abc123", "main", "Initial commit", "test", "example");
+        LiveBuildLog buildLog = ciServer.startBuildLog(info);
+        buildLog.close();
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(servletOutputStream(body));
+        when(request.getMethod()).thenReturn("GET");
+
+        ciServer.handle("/logs/" + buildLog.getBuildId() + "/stream", request, response);
+        assertTrue(body.toString(StandardCharsets.UTF_8).startsWith("Commit ID: abc123\n"));
+
+        HttpServletResponse noBuildResponse = mock(HttpServletResponse.class);
+        ciServer.handle("/logs/stream", request, noBuildResponse);
+        verify(noBuildResponse).sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+
+    /**
+     * Returns a servlet output stream writing to the given stream.
+     */
+    private static ServletOutputStream servletOutputStream(ByteArrayOutputStream body) {
+        return new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns a servlet input stream reading the given bytes.
+     */
+    private static ServletInputStream servletInputStream(byte[] body) {
+        ByteArrayInputStream in = new ByteArrayInputStream(body);
+        return new ServletInputStream() {
+            @Override
+            public int read() {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                return in.read(buffer, offset, length);
+            }
+
+            @Override
+            public boolean isFinished() {
+                return in.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Stores a log and requests it with a GET request to
+     * /logs/1. The response should be the whole log. Ranges
+     * and conditional requests are tested in LogFileSenderTest.
+     * @param path
+     */
+    @Test
+    public void handleGETlog(@TempDir Path path) throws Exception {
+        File logsDir = path.toFile();
+        ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, testToken, logsDir);
+        ciServer.storeBuildLog("This is a log", "abc123");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(servletOutputStream(body));
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+
+        ciServer.handle("/logs/1", request, response);
+
+        assertEquals(Files.readString(ciServer.getBuildLogFile("1").toPath()), body.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Stores a log with gzip compression enabled. The log should be
+     * stored compressed and read back as text. How compressed logs
+     * are sent is tested in LogFileSenderTest.
+     * @param path
+     */
+    @Test
+    public void storeCompressedLog(@TempDir Path path) throws Exception {
+        File logsDir = path.toFile();
+        ServerConfig config = new ServerConfig(key -> key.equals("LOG_COMPRESSION") ? "gzip" : null);
+        ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, logsDir,
+            new GitHubApiClient(testToken), config);
+        ciServer.storeBuildLog("This is a log", "abc123");
+
+        assertEquals("1.log.gz", ciServer.getBuildLogFile("1").getName());
+        assertFalse(new File(logsDir, "1.log").exists());
+        assertEquals("Commit ID: abc123\nBuild date: " + LocalDate.now() + "\nThis is a log\n", ciServer.getBuildLog("1"));
+    }
+
+    /**
+     * Plain logs from before compression was enabled should be
+     * compressed by the background job and still be readable.
+     * @param path
+     */
+    @Test
+    public void compressExistingLogs(@TempDir Path path) throws Exception {
+        File logsDir = path.toFile();
+        new ContinuousIntegrationServer(testSignature, testToken, logsDir).storeBuildLog("Old log", "abc123");
+        ServerConfig config = new ServerConfig(key -> key.equals("LOG_COMPRESSION") ? "zstd" : null);
+        ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, logsDir,
+            new GitHubApiClient(testToken), config);
+
+        ciServer.compressExistingLogs(1);
+
+        assertEquals("1.log.zst", ciServer.getBuildLogFile("1").getName());
+        assertTrue(ciServer.getBuildLog("1").endsWith("Old log\n"));
+    }
+
     /**
      * Create a mock POST request that is empty.
      * Since the request is empty we should
@@ -560,7 +738,6 @@ public class ContinuousIntegrationServerTest {
         File logsDir = path.toFile();
         ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, testToken, logsDir);
 
-        Request baseRequest = mock(Request.class);
         HttpServletRequest request = mock(HttpServletRequest.class);
         HttpServletResponse response = mock(HttpServletResponse.class);
 
@@ -568,7 +745,7 @@ public class ContinuousIntegrationServerTest {
         when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
         when(request.getMethod()).thenReturn("POST");
 
-        ciServer.handle("", baseRequest, request, response);
+        ciServer.handle("", request, response);
 
         // Asserts that the response is a 400 error.
         verify(response).sendError(400);
@@ -576,14 +753,15 @@ public class ContinuousIntegrationServerTest {
 
 
 	/**
-	 * Creates a empty local git repository and then
+	 * Creates a local git repository with an empty commit and then
 	 * creates a mock github webhook POST request for the created 
 	 * git repository, also send in mock of GithubApiClient.
 	 * handle() then sends this to handlePost() which 
 	 * verifies the fake/calculated signature and then proceeds to
 	 * run mvn test which should fail because its an empty directory.
 	 * Thereby the commit status should be "failure" but the 
-	 * status code for the request should be success 200
+	 * status code for the request should be 202 Accepted since
+	 * the build runs in the background
 	 * 
 	 * @param path
 	 */
@@ -593,13 +771,17 @@ public class ContinuousIntegrationServerTest {
 		File logsDir = path.toFile();
 		GitHubApiClient mockClient = mock(GitHubApiClient.class);
 		ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, logsDir,mockClient);
-		ciServer.runCommand(List.of("git", "init"), path.toFile());
-		String url = path.toString();
+		File repository = Files.createDirectory(path.resolve("repo")).toFile();
+		ciServer.runCommand(List.of("git", "init"), repository);
+		ciServer.runCommand(List.of("git", "-c", "user.name=test", "-c", "user.email=test@test",
+			"commit", "--allow-empty", "-m", "Initial commit"), repository);
+		String sha = ciServer.runCommand(List.of("git", "rev-parse", "HEAD"), repository).trim();
+		String url = repository.getPath();
 
 		String fakePayload = String.format("""
 				{
 					"ref": "refs/heads/example",
-					"after": "123123",
+					"after": "%s",
 					"repository": {
 						"clone_url": "%s"
 					},
@@ -612,27 +794,64 @@ public class ContinuousIntegrationServerTest {
 						}
 					]
 				}
-				""", url);
+				""", sha, url);
 		String fakePayLoadEncoded = URLEncoder.encode(fakePayload, StandardCharsets.UTF_8);
 		String body = String.format("payload=%s", fakePayLoadEncoded);
 		String calculatedHmac = new HmacUtils("HmacSHA256", testSignature).hmacHex(body);
 		String signature = String.format("sha256=%s", calculatedHmac);
 
-		Request baseRequest = mock(Request.class);
 		StringWriter stringWriter = new StringWriter();
 		HttpServletRequest request = mock(HttpServletRequest.class);
 		HttpServletResponse response = mock(HttpServletResponse.class);
-		BufferedReader reader = new BufferedReader(new StringReader(body));
+		byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
 
-		when(request.getReader()).thenReturn(reader);
+		when(request.getInputStream()).thenReturn(servletInputStream(bodyBytes));
+		when(request.getContentLengthLong()).thenReturn((long) bodyBytes.length);
+		when(request.getContentType()).thenReturn("application/x-www-form-urlencoded");
 		when(request.getHeader("X-GitHub-Event")).thenReturn("push");
 		when(request.getHeader("X-Hub-Signature-256")).thenReturn(signature);
 		when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
 		when(request.getMethod()).thenReturn("POST");
 
-		ciServer.handle("", baseRequest, request, response);
+		ciServer.handle("", request, response);
 
-		verify(mockClient).updateCommitStatus(url, "123123", "failure", "mvn test failed", null);
-		verify(response).setStatus(HttpServletResponse.SC_OK);
+		verify(response).setStatus(HttpServletResponse.SC_ACCEPTED);
+		verify(mockClient, timeout(60000)).updateCommitStatus(url, sha, "failure", "mvn test failed", null);
+		// The build still records its result, wait for it before the folder is removed
+		ciServer.destroy();
+		// The repository was mirrored inside the logs folder, not the working directory
+		assertTrue(new File(logsDir, GitMirrorCache.DEFAULT_FOLDER_NAME).isDirectory());
 	}
+
+    /**
+     * The Jetty server should serve the CI server over HTTP/1.1
+     * and, with prior knowledge or an upgrade, over HTTP/2 cleartext.
+     * @param path
+     */
+    @Test
+    public void serveOverHttp2Cleartext(@TempDir Path path) throws Exception {
+        ServerConfig config = new ServerConfig(key -> key.equals("HTTP_PORT") ? "0" : null);
+        ContinuousIntegrationServer ciServer = new ContinuousIntegrationServer(testSignature, path.toFile(),
+            new GitHubApiClient(testToken), config);
+        ciServer.storeBuildLog("This is a log", "abc123");
+        Server server = ContinuousIntegrationServer.createServer(ciServer, config);
+        server.start();
+        try {
+            int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            URI uri = URI.create("http://localhost:" + port + "/logs/1");
+
+            HttpClient http1 = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            HttpResponse<String> response = http1.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().endsWith("This is a log"));
+
+            HttpClient http2 = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+            http2.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+            response = http2.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(HttpClient.Version.HTTP_2, response.version());
+            assertEquals(200, response.statusCode());
+        } finally {
+            server.stop();
+        }
+    }
 }
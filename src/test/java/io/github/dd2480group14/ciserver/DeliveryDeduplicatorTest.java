@@ -0,0 +1,110 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for recognizing redelivered webhooks.
+ */
+public class DeliveryDeduplicatorTest {
+    private static final String REPO = "https://github.com/test/example.git";
+    private static final long HOUR = 3_600_000;
+
+    /**
+     * A redelivery and another delivery of the same commit should be
+     * duplicates, also after a restart, until they expire.
+     */
+    @Test
+    public void recognizeDuplicatesAcrossRestarts(@TempDir Path path) throws IOException {
+        File dir = path.toFile();
+        AtomicLong now = new AtomicLong(1_000_000);
+        DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(dir, 100, HOUR, now::get);
+
+        assertEquals(DeliveryDeduplicator.Result.NEW, deduplicator.claim("d1", REPO, "abc"));
+        assertEquals(DeliveryDeduplicator.Result.DUPLICATE_DELIVERY, deduplicator.claim("d1", REPO, "abc"));
+        assertEquals(DeliveryDeduplicator.Result.DUPLICATE_COMMIT, deduplicator.claim("d2", REPO, "abc"));
+        assertEquals(DeliveryDeduplicator.Result.NEW, deduplicator.claim("d3", REPO, "def"));
+        deduplicator.complete(REPO, "abc");
+        assertEquals(1, deduplicator.getStatistics().getLong("deliveryHits"));
+        assertEquals(1, deduplicator.getStatistics().getLong("commitHits"));
+        assertEquals(2, deduplicator.getStatistics().getLong("misses"));
+
+        DeliveryDeduplicator restarted = new DeliveryDeduplicator(dir, 100, HOUR, now::get);
+        assertEquals(DeliveryDeduplicator.Result.DUPLICATE_DELIVERY, restarted.claim("d2", REPO, "abc"));
+        // The build of def had not ended, it is lost with the build queue
+        assertEquals(DeliveryDeduplicator.Result.NEW, restarted.claim("d3", REPO, "def"));
+
+        now.addAndGet(HOUR);
+        assertEquals(DeliveryDeduplicator.Result.NEW, restarted.claim("d1", REPO, "abc"));
+    }
+
+    /**
+     * A released commit, e.g. one whose build was superseded or rejected
+     * by a full build queue, should be built when any of the deliveries
+     * that claimed it comes again, also after a restart.
+     */
+    @Test
+    public void releasedDeliveriesAreNew(@TempDir Path path) throws IOException {
+        File dir = path.toFile();
+        DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(dir, 100, HOUR);
+        deduplicator.claim("d1", REPO, "abc");
+        assertEquals(DeliveryDeduplicator.Result.DUPLICATE_COMMIT, deduplicator.claim("d2", REPO, "abc"));
+        deduplicator.release(REPO, "abc");
+
+        assertEquals(DeliveryDeduplicator.Result.NEW, deduplicator.claim("d2", REPO, "abc"));
+        deduplicator.release(REPO, "abc");
+        assertEquals(0, deduplicator.getStatistics().getLong("entries"));
+
+        DeliveryDeduplicator restarted = new DeliveryDeduplicator(dir, 100, HOUR);
+        assertEquals(DeliveryDeduplicator.Result.NEW, restarted.claim("d1", REPO, "abc"));
+    }
+
+    /**
+     * The oldest keys should be evicted when the cache is full, and the
+     * file should be compacted instead of growing without bound.
+     */
+    @Test
+    public void evictOldestAndCompact(@TempDir Path path) throws IOException {
+        File dir = path.toFile();
+        DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(dir, 4, HOUR);
+        for (int i = 0; i < 50; i++) {
+            deduplicator.claim("d" + i, REPO, "sha" + i);
+            deduplicator.complete(REPO, "sha" + i);
+        }
+
+        assertEquals(4, deduplicator.getStatistics().getLong("entries"));
+        assertEquals(DeliveryDeduplicator.Result.NEW, deduplicator.claim("d0", REPO, "sha0"));
+        assertEquals(DeliveryDeduplicator.Result.DUPLICATE_DELIVERY, deduplicator.claim("d49", REPO, "other"));
+        assertTrue(Files.readAllLines(dir.toPath().resolve(DeliveryDeduplicator.FILE_NAME)).size() <= 2 * 4 + 1);
+    }
+
+    /**
+     * Keys in the file are not in time order, e.g. when a completed
+     * claim was appended after a later delivery. Expired keys should
+     * be dropped wherever they are in the file.
+     */
+    @Test
+    public void expireKeysLoadedOutOfOrder(@TempDir Path path) throws IOException {
+        File dir = path.toFile();
+        long now = 10 * HOUR;
+        Files.writeString(dir.toPath().resolve(DeliveryDeduplicator.FILE_NAME),
+            "{\"key\": \"delivery:recent\", \"at\": " + (now - HOUR / 6) + "}\n"
+            + "{\"key\": \"delivery:old\", \"at\": " + (now - 2 * HOUR) + "}\n"
+            + "{\"key\": \"commit:" + REPO + "@old\", \"at\": " + (now - 2 * HOUR) + "}\n");
+
+        DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(dir, 100, HOUR, () -> now);
+
+        assertEquals(1, deduplicator.getStatistics().getLong("entries"));
+        assertEquals(DeliveryDeduplicator.Result.NEW, deduplicator.claim("old", REPO, "old"));
+        assertEquals(DeliveryDeduplicator.Result.DUPLICATE_DELIVERY, deduplicator.claim("recent", REPO, "new"));
+    }
+}
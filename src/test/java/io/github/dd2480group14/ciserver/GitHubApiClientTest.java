@@ -0,0 +1,141 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Unit test for publishing commit statuses, against a local mock of the GitHub API.
+ */
+public class GitHubApiClientTest {
+    private static final String REPO_URL = "https://github.com/owner/repo.git";
+
+    private MockWebServer server;
+    private GitHubApiClient client;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        String apiBase = server.url("/").toString().replaceAll("/$", "");
+        client = new GitHubApiClient("token", apiBase,
+            new SharedHttpClient(SharedHttpClient.Settings.DEFAULTS), 10, 50, 3);
+    }
+
+    @AfterEach
+    public void stopServer() throws Exception {
+        client.close();
+        server.shutdown();
+    }
+
+    /**
+     * A status should be posted to the statuses of the commit with the token.
+     */
+    @Test
+    public void postStatus() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        assertTrue(client.updateCommitStatus(REPO_URL, "abc123", "success", "mvn test succeeded", null));
+        assertTrue(client.flush(10, TimeUnit.SECONDS));
+
+        RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("/repos/owner/repo/statuses/abc123", request.getPath());
+        assertEquals("Bearer token", request.getHeader("Authorization"));
+        JSONObject body = new JSONObject(request.getBody().readUtf8());
+        assertEquals("success", body.getString("state"));
+        assertEquals(GitHubApiClient.STATUS_CONTEXT, body.getString("context"));
+        assertEquals(1, client.getStatistics().getLong("sent"));
+    }
+
+    /**
+     * Updates should reuse the pooled connection, and the calls should show up in the HTTP metrics.
+     */
+    @Test
+    public void reuseConnections() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setResponseCode(201));
+            client.updateCommitStatus(REPO_URL, "sha" + i, "success", "mvn test succeeded", null);
+            assertTrue(client.flush(10, TimeUnit.SECONDS));
+        }
+
+        JSONObject http = client.getStatistics().getJSONObject("http");
+        assertEquals(5, http.getLong("calls"));
+        assertEquals(0, http.getLong("inFlight"));
+        assertEquals(1, http.getLong("connectionsOpened"));
+        assertEquals(0.8, http.getDouble("connectionReuseRate"), 0.001);
+        assertEquals(5, http.getJSONObject("latencyMillis").toMap().values().stream()
+            .mapToLong(count -> ((Number) count).longValue()).sum());
+    }
+
+    /**
+     * Server errors should be retried until the update gets through,
+     * client errors should not be retried.
+     */
+    @Test
+    public void retryServerErrorsOnly() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(502));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setResponseCode(201));
+        server.enqueue(new MockResponse().setResponseCode(422));
+
+        client.updateCommitStatus(REPO_URL, "abc123", "success", "mvn test succeeded", null);
+        assertTrue(client.flush(10, TimeUnit.SECONDS));
+        client.updateCommitStatus(REPO_URL, "def456", "success", "mvn test succeeded", null);
+        assertTrue(client.flush(10, TimeUnit.SECONDS));
+
+        assertEquals(4, server.getRequestCount());
+        JSONObject stats = client.getStatistics();
+        assertEquals(2, stats.getLong("retried"));
+        assertEquals(1, stats.getLong("sent"));
+        assertEquals(1, stats.getLong("failed"));
+    }
+
+    /**
+     * Updates of a commit and context queued while an earlier one is
+     * being sent should be collapsed into the latest one.
+     */
+    @Test
+    public void collapsePendingUpdates() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201).setHeadersDelay(500, TimeUnit.MILLISECONDS));
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        client.updateCommitStatus(REPO_URL, "abc123", "pending", "build queued", null);
+        server.takeRequest(1, TimeUnit.SECONDS);
+        client.updateCommitStatus(REPO_URL, "abc123", "pending", "build running", null);
+        client.updateCommitStatus(REPO_URL, "abc123", "failure", "mvn test failed", null);
+        assertTrue(client.flush(10, TimeUnit.SECONDS));
+
+        assertEquals(2, server.getRequestCount());
+        RecordedRequest latest = server.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("failure", new JSONObject(latest.getBody().readUtf8()).getString("state"));
+        assertEquals(1, client.getStatistics().getLong("collapsed"));
+    }
+
+    /**
+     * A rate limited update should be sent again only after the time given by Retry-After.
+     */
+    @Test
+    public void honorRetryAfter() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1")
+            .setHeader("X-RateLimit-Remaining", "0"));
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        long start = System.currentTimeMillis();
+        client.updateCommitStatus(REPO_URL, "abc123", "success", "mvn test succeeded", null);
+        assertTrue(client.flush(10, TimeUnit.SECONDS));
+
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, client.getStatistics().getLong("rateLimited"));
+    }
+}
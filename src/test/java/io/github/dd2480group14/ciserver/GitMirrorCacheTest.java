@@ -0,0 +1,98 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for the git mirror cache.
+ */
+public class GitMirrorCacheTest {
+    private final CommandRunner commandRunner = new CommandRunner();
+
+    /**
+     * Creates a git repository with one committed file.
+     */
+    private File createRepository(Path path, String name) throws IOException, InterruptedException {
+        File repository = path.resolve(name).toFile();
+        repository.mkdirs();
+        Files.writeString(new File(repository, "README").toPath(), "hello");
+        commandRunner.runChecked(List.of("git", "init"), repository);
+        commandRunner.runChecked(List.of("git", "add", "README"), repository);
+        commandRunner.runChecked(List.of("git", "-c", "user.name=test", "-c", "user.email=test@test",
+            "commit", "-m", "Initial commit"), repository);
+        return repository;
+    }
+
+    /**
+     * The first clone of a repository should create its mirror,
+     * the second should reuse it. Both workspaces should contain
+     * the repository with the origin pointing at the real url.
+     */
+    @Test
+    public void cloneIntoReusesMirror(@TempDir Path path) throws IOException, InterruptedException {
+        File repository = createRepository(path, "repo");
+        GitMirrorCache cache = new GitMirrorCache(path.resolve("cache").toFile(), Long.MAX_VALUE, commandRunner);
+
+        for (int i = 0; i < 2; i++) {
+            File workspace = Files.createDirectory(path.resolve("workspace" + i)).toFile();
+            cache.cloneInto(repository.getPath(), workspace);
+            commandRunner.runChecked(List.of("git", "checkout", "HEAD"), workspace);
+            assertTrue(new File(workspace, "README").exists());
+            String origin = commandRunner.runChecked(List.of("git", "remote", "get-url", "origin"), workspace);
+            assertEquals(repository.getPath(), origin);
+        }
+
+        assertEquals(1, cache.getStatistics().getLong("misses"));
+        assertEquals(1, cache.getStatistics().getLong("hits"));
+    }
+
+    /**
+     * With a size limit smaller than one mirror, using a second
+     * repository should evict the mirror of the first.
+     */
+    @Test
+    public void cloneIntoEvictsLeastRecentlyUsed(@TempDir Path path) throws IOException, InterruptedException {
+        File first = createRepository(path, "first");
+        File second = createRepository(path, "second");
+        File cacheFolder = path.resolve("cache").toFile();
+        GitMirrorCache cache = new GitMirrorCache(cacheFolder, 1, commandRunner);
+
+        cache.cloneInto(first.getPath(), Files.createDirectory(path.resolve("workspace1")).toFile());
+        cache.cloneInto(second.getPath(), Files.createDirectory(path.resolve("workspace2")).toFile());
+
+        assertFalse(new File(cacheFolder, GitMirrorCache.keyOf(first.getPath())).exists());
+        assertTrue(new File(cacheFolder, GitMirrorCache.keyOf(second.getPath())).exists());
+        assertEquals(1, cache.getStatistics().getLong("evictions"));
+    }
+
+    /**
+     * Two commits with the same content should have the same tree hash,
+     * and an unknown commit should have none.
+     */
+    @Test
+    public void treeHashOfCommitsWithSameContent(@TempDir Path path) throws IOException, InterruptedException {
+        File repository = createRepository(path, "repo");
+        String first = commandRunner.runChecked(List.of("git", "rev-parse", "HEAD"), repository).trim();
+        commandRunner.runChecked(List.of("git", "-c", "user.name=test", "-c", "user.email=test@test",
+            "commit", "--allow-empty", "-m", "Empty commit"), repository);
+        String second = commandRunner.runChecked(List.of("git", "rev-parse", "HEAD"), repository).trim();
+        GitMirrorCache cache = new GitMirrorCache(path.resolve("cache").toFile(), Long.MAX_VALUE, commandRunner);
+
+        String tree = cache.treeHash(repository.getPath(), second);
+
+        assertEquals(40, tree.length());
+        assertEquals(tree, cache.treeHash(repository.getPath(), first));
+        assertNull(cache.treeHash(repository.getPath(), "0123456789012345678901234567890123456789"));
+    }
+}
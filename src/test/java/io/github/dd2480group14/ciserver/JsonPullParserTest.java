@@ -0,0 +1,121 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the JSON pull parser.
+ */
+public class JsonPullParserTest {
+
+    private static JsonPullParser parser(String json) {
+        byte[] bytes = ("xx" + json + "yy").getBytes(StandardCharsets.UTF_8);
+        return new JsonPullParser(bytes, 2, bytes.length - 4);
+    }
+
+    /**
+     * Names and values should be read in order, with escapes and
+     * multi-byte characters decoded, and skipped values passed over.
+     */
+    @Test
+    public void readValuesAndSkipTheRest() {
+        JsonPullParser parser = parser("""
+            { "skip": {"a": [1, -2.5e3, true, null, "x\\"y", {}], "b": []},
+              "text": "h\\u00e9j \\"å\\"\\n", "number": 42, "flag": false, "nothing": null }
+            """);
+
+        parser.beginObject();
+        assertEquals("skip", parser.nextName());
+        parser.skipValue();
+        assertEquals("text", parser.nextName());
+        assertEquals("héj \"å\"\n", parser.nextString());
+        assertEquals("number", parser.nextName());
+        assertEquals("42", parser.nextOptString(null));
+        assertEquals("flag", parser.nextName());
+        assertEquals("false", parser.nextOptString(null));
+        assertEquals("nothing", parser.nextName());
+        assertNull(parser.nextOptString(null));
+        assertFalse(parser.hasNext());
+        parser.endObject();
+        assertEquals(JsonPullParser.Token.END_DOCUMENT, parser.peek());
+    }
+
+    /**
+     * Invalid JSON should be rejected, also inside skipped values.
+     */
+    @Test
+    public void rejectInvalidJson() {
+        for (String json : new String[] {"{\"a\": [1, 2}", "{\"a\": tru}", "{\"a\": \"x}", "{a: 1}",
+                "{\"a\": 01}", "{\"a\": \"\\q\"}", "{\"a\": 1,}", "{\"a\": 1} 2", "[1, 2"}) {
+            JsonPullParser parser = parser(json);
+            assertThrows(JSONException.class, () -> {
+                parser.skipValue();
+                parser.peek();
+            }, json);
+        }
+    }
+
+    /**
+     * Asking for the wrong kind of token should fail.
+     */
+    @Test
+    public void rejectUnexpectedTokens() {
+        JsonPullParser parser = parser("{\"a\": 1}");
+        parser.beginObject();
+        parser.nextName();
+        assertThrows(JSONException.class, parser::nextString);
+        assertThrows(JSONException.class, parser::beginArray);
+    }
+
+    /**
+     * Reading a push payload with the pull parser should give the same
+     * PushEventInfo, and the same errors, as reading it into a JSONObject.
+     */
+    @Test
+    public void pushEventInfoMatchesTree() {
+        String[] payloads = {
+            """
+            {
+                "ref": "refs/heads/feature", "before": "aaa111", "after": "123123", "forced": "TRUE",
+                "repository": { "id": 1, "name": "example", "owner": { "login": "test", "id": 2 },
+                                "topics": [], "clone_url": "https://github.com/test/example.git" },
+                "pusher": { "name": "test-user", "email": null },
+                "commits": [
+                    { "message": "First\nwith \"quotes\"", "removed": ["a"], "added": ["a", "b"], "modified": [] },
+                    { "message": "Second", "added": [], "modified": ["c"], "removed": ["b"] }
+                ],
+                "head_commit": { "message": "Second" }
+            }
+            """,
+            """
+            { "ref": "refs/heads/main", "after": "1", "commits": [],
+              "repository": { "clone_url": "url", "owner": "not an object", "name": 7 }, "pusher": { "name": "x" } }
+            """,
+            "{}",
+            "{ \"ref\": \"r\", \"after\": 1, \"repository\": { \"clone_url\": \"url\" }, \"pusher\": { \"name\": \"x\" } }",
+            "{ \"ref\": \"r\", \"after\": \"1\", \"repository\": { \"clone_url\": \"url\" }, \"pusher\": { \"name\": \"x\" }, \"commits\": [\"x\"] }",
+            "{ \"ref\": \"r\", \"after\": \"1\", \"repository\": [], \"pusher\": { \"name\": \"x\" } }",
+            "{ \"ref\": \"r\", \"ref\": \"s\" }"
+        };
+        for (String payload : payloads) {
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            PushEventInfo fromTree;
+            try {
+                fromTree = PushEventInfo.fromJSON(new JSONObject(payload));
+            } catch (IllegalArgumentException | JSONException e) {
+                assertThrows(IllegalArgumentException.class,
+                    () -> PushEventInfo.fromJSON(new JsonPullParser(bytes, 0, bytes.length)), payload);
+                continue;
+            }
+            assertEquals(fromTree, PushEventInfo.fromJSON(new JsonPullParser(bytes, 0, bytes.length)), payload);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for logs of running builds.
+ */
+public class LiveBuildLogTest {
+
+    /**
+     * Followers that start before and while the log is written
+     * should all receive the complete log, and the file should
+     * contain the same content.
+     */
+    @Test
+    public void followReceivesWholeLog(@TempDir Path path) throws Exception {
+        Path file = Files.createFile(path.resolve("1.log"));
+        LiveBuildLog log = new LiveBuildLog("1", file);
+        List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        List<Thread> followers = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            outputs.add(output);
+            Thread follower = new Thread(() -> {
+                try {
+                    log.follow(output);
+                } catch (IOException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            followers.add(follower);
+            follower.start();
+            log.writeLine("line " + i);
+        }
+        log.close();
+
+        String expected = "line 0\nline 1\nline 2\n";
+        for (int i = 0; i < followers.size(); i++) {
+            followers.get(i).join(10000);
+            assertEquals(expected, outputs.get(i).toString(StandardCharsets.UTF_8));
+        }
+        assertEquals(expected, Files.readString(file));
+    }
+
+    /**
+     * Following a log that is already complete should
+     * return its content right away.
+     */
+    @Test
+    public void followCompleteLog(@TempDir Path path) throws Exception {
+        Path file = Files.createFile(path.resolve("1.log"));
+        LiveBuildLog log = new LiveBuildLog("1", file);
+        log.asOutputStream().write("output".getBytes(StandardCharsets.UTF_8));
+        log.close();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        log.follow(output);
+        assertEquals("output", output.toString(StandardCharsets.UTF_8));
+    }
+}
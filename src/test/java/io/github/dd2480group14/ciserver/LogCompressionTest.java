@@ -0,0 +1,58 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Unit test for compressed build logs.
+ */
+public class LogCompressionTest {
+
+    /**
+     * Compressing a log file should replace it with a smaller
+     * compressed file that reads back to the same content.
+     */
+    @ParameterizedTest
+    @EnumSource(value = LogCompression.class, names = {"GZIP", "ZSTD"})
+    public void compressFileRoundTrip(LogCompression compression, @TempDir Path path) throws Exception {
+        String log = "Commit ID: abc123\nBuild date: 2024-01-01\n" + "[INFO] Tests run: 1, Failures: 0\n".repeat(1000);
+        File plain = path.resolve("7.log").toFile();
+        Files.writeString(plain.toPath(), log);
+
+        File compressed = compression.compressFile(plain);
+
+        assertFalse(plain.exists());
+        assertEquals("7.log" + compression.getSuffix(), compressed.getName());
+        assertTrue(compressed.length() < log.length() / 10);
+        assertEquals(compression, LogCompression.of(compressed));
+        try (InputStream in = LogCompression.open(compressed)) {
+            assertEquals(log, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * The build ID should be found in the names of plain and compressed logs only.
+     */
+    @Test
+    public void buildIdOfFileNames() {
+        assertEquals("12", LogCompression.buildIdOf("12.log"));
+        assertEquals("12", LogCompression.buildIdOf("12.log.gz"));
+        assertEquals("12", LogCompression.buildIdOf("12.log.zst"));
+        assertNull(LogCompression.buildIdOf("12.log.gz.tmp"));
+        assertNull(LogCompression.buildIdOf("builds.index"));
+    }
+
+}
@@ -0,0 +1,148 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for sending log files in responses.
+ */
+public class LogFileSenderTest {
+
+    /**
+     * Requesting the last 7 bytes of a log with a Range header
+     * should be answered with 206 Partial Content and only
+     * those bytes.
+     */
+    @Test
+    public void sendsSuffixRange(@TempDir Path path) throws IOException {
+        File log = Files.writeString(path.resolve("1.log"), "The end of the log").toFile();
+        long length = log.length();
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(servletOutputStream(body));
+        when(request.getHeader("Range")).thenReturn("bytes=-7");
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+
+        LogFileSender.send(log, request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).setHeader("Content-Range", "bytes " + (length - 7) + "-" + (length - 1) + "/" + length);
+        verify(response).setHeader("Content-Length", "7");
+        assertEquals("the log", body.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Requesting a log with the ETag of the current file should
+     * be answered with 304 Not Modified without a body.
+     */
+    @Test
+    public void answersNotModifiedForCurrentETag(@TempDir Path path) throws IOException {
+        File log = Files.writeString(path.resolve("1.log"), "This is a log").toFile();
+        String etag = "\"" + Long.toHexString(log.length()) + "-" + Long.toHexString(log.lastModified()) + "\"";
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getHeader("If-None-Match")).thenReturn(etag);
+
+        LogFileSender.send(log, request, response);
+
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, never()).getOutputStream();
+    }
+
+    /**
+     * A compressed log should be sent as it is stored to clients
+     * accepting its encoding and decompressed for the others.
+     */
+    @Test
+    public void sendsCompressedLogByAcceptEncoding(@TempDir Path path) throws IOException {
+        String log = "Commit ID: abc123\nThis is a log";
+        File plain = Files.writeString(path.resolve("1.log"), log).toFile();
+        File compressed = LogCompression.GZIP.compressFile(plain);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(servletOutputStream(body));
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+
+        LogFileSender.send(compressed, request, response);
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))) {
+            assertEquals(log, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        HttpServletRequest plainRequest = mock(HttpServletRequest.class);
+        HttpServletResponse plainResponse = mock(HttpServletResponse.class);
+        ByteArrayOutputStream plainBody = new ByteArrayOutputStream();
+        when(plainResponse.getOutputStream()).thenReturn(servletOutputStream(plainBody));
+        when(plainRequest.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+
+        LogFileSender.send(compressed, plainRequest, plainResponse);
+
+        verify(plainResponse, never()).setHeader(eq("Content-Encoding"), anyString());
+        assertEquals(log, plainBody.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Accept-Encoding should be matched by name, wildcard and quality.
+     */
+    @Test
+    public void acceptsEncoding() {
+        assertTrue(LogFileSender.acceptsEncoding("gzip, deflate, br", "gzip"));
+        assertTrue(LogFileSender.acceptsEncoding("*", "zstd"));
+        assertFalse(LogFileSender.acceptsEncoding("gzip;q=0", "gzip"));
+        assertFalse(LogFileSender.acceptsEncoding("deflate", "gzip"));
+        assertFalse(LogFileSender.acceptsEncoding(null, "gzip"));
+    }
+
+    /**
+     * Returns a servlet output stream writing to the given stream.
+     */
+    private static ServletOutputStream servletOutputStream(ByteArrayOutputStream body) {
+        return new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for the removal of old build logs.
+ */
+public class LogRetentionTest {
+
+    private static void addBuild(File dir, BuildIndex index, long id, String branch, String date, int logBytes) throws IOException {
+        Files.writeString(new File(dir, id + ".log").toPath(), "x".repeat(logBytes));
+        index.put(new BuildIndex.Entry(id, "sha" + id, branch, "test-user", date, "success", 10));
+    }
+
+    /**
+     * Only the newest builds of each branch should be kept, and the
+     * index should be rewritten without the removed builds.
+     */
+    @Test
+    public void keepNewestBuildsPerBranch(@TempDir Path path) throws IOException {
+        File dir = path.toFile();
+        BuildIndex index = new BuildIndex(dir);
+        for (int id = 1; id <= 6; id++) {
+            addBuild(dir, index, id, id % 2 == 0 ? "main" : "dev", "2024-01-01", 10);
+        }
+        LogRetention retention = new LogRetention(dir, index, new LogRetention.Policy(2, 0, 0, false), id -> false);
+
+        assertEquals(2, retention.apply(LocalDate.parse("2024-01-02")));
+
+        assertFalse(new File(dir, "1.log").exists());
+        assertFalse(new File(dir, "2.log").exists());
+        for (long id = 3; id <= 6; id++) {
+            assertTrue(new File(dir, id + ".log").exists());
+        }
+        BuildIndex reloaded = new BuildIndex(dir);
+        assertEquals(4, reloaded.size());
+        assertNull(reloaded.get(1));
+        assertEquals(4, Files.readAllLines(path.resolve(BuildIndex.INDEX_FILE_NAME)).size());
+    }
+
+    /**
+     * Builds older than the maximum age should be removed, except
+     * the ones still in use.
+     */
+    @Test
+    public void removeOldBuildsNotInUse(@TempDir Path path) throws IOException {
+        File dir = path.toFile();
+        BuildIndex index = new BuildIndex(dir);
+        addBuild(dir, index, 1, "main", "2024-01-01", 10);
+        addBuild(dir, index, 2, "main", "2024-01-01", 10);
+        addBuild(dir, index, 3, "main", "2024-03-01", 10);
+        LogRetention retention = new LogRetention(dir, index, new LogRetention.Policy(0, 30, 0, false), id -> id == 2);
+
+        assertEquals(1, retention.apply(LocalDate.parse("2024-03-02")));
+
+        assertNull(index.get(1));
+        assertNotNull(index.get(2));
+        assertNotNull(index.get(3));
+    }
+
+    /**
+     * The oldest builds should be archived until the remaining logs
+     * fit in the size limit. The archive should hold their logs and
+     * index entries.
+     */
+    @Test
+    public void archiveOldestBuildsOverSizeLimit(@TempDir Path path) throws IOException {
+        File dir = path.toFile();
+        BuildIndex index = new BuildIndex(dir);
+        for (int id = 1; id <= 5; id++) {
+            addBuild(dir, index, id, "main", "2024-01-01", 100);
+        }
+        LogRetention retention = new LogRetention(dir, index, new LogRetention.Policy(0, 0, 250, true), id -> false);
+
+        assertEquals(3, retention.apply(LocalDate.parse("2024-01-02")));
+
+        assertEquals(2, index.size());
+        assertNotNull(index.get(4));
+        assertNotNull(index.get(5));
+        File segment = new File(dir, LogRetention.ARCHIVE_FOLDER_NAME + "/segment-1-3.zip");
+        try (ZipFile zip = new ZipFile(segment)) {
+            assertEquals("x".repeat(100), new String(zip.getInputStream(zip.getEntry("2.log")).readAllBytes(), StandardCharsets.UTF_8));
+            String archivedIndex = new String(zip.getInputStream(zip.getEntry(BuildIndex.INDEX_FILE_NAME)).readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(3, archivedIndex.lines().count());
+        }
+        assertEquals(3, retention.getStatistics().getLong("archivedBuilds"));
+        assertEquals(300, retention.getStatistics().getLong("freedBytes"));
+    }
+}
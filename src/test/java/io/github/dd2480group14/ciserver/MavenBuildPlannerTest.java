@@ -0,0 +1,140 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for planning incremental builds.
+ */
+public class MavenBuildPlannerTest {
+    private final CommandRunner commandRunner = new CommandRunner();
+    private final MavenBuildPlanner planner = new MavenBuildPlanner(commandRunner);
+
+    @TempDir
+    Path path;
+    private File workspace;
+    private String firstCommit;
+
+    /**
+     * Creates a workspace holding a project with the modules core and app,
+     * where app has the nested module app/web.
+     */
+    @BeforeEach
+    public void createWorkspace() throws IOException, InterruptedException {
+        workspace = path.toFile();
+        write("pom.xml", "<project><modules><module>core</module><module>app</module></modules></project>");
+        write("app/pom.xml", "<project><modules><module>web</module></modules></project>");
+        write("core/src/Core.java", "class Core {}");
+        write("app/web/src/Web.java", "class Web {}");
+        write("README", "readme");
+        commandRunner.runChecked(List.of("git", "init", "--quiet"), workspace);
+        firstCommit = commit("Initial commit");
+    }
+
+    private void write(String file, String content) throws IOException {
+        Path target = path.resolve(file);
+        Files.createDirectories(target.getParent());
+        Files.writeString(target, content);
+    }
+
+    private String commit(String message) throws IOException, InterruptedException {
+        commandRunner.runChecked(List.of("git", "add", "--all"), workspace);
+        commandRunner.runChecked(List.of("git", "-c", "user.name=test", "-c", "user.email=test@test",
+            "commit", "--quiet", "--allow-empty", "-m", message), workspace);
+        return commandRunner.runChecked(List.of("git", "rev-parse", "HEAD"), workspace).trim();
+    }
+
+    /**
+     * A workspace that was never built, or whose last build was cut
+     * short, should get a clean build.
+     */
+    @Test
+    public void cleanWithoutEarlierBuild() throws IOException, InterruptedException {
+        MavenBuildPlanner.Plan plan = planner.plan(workspace, PushChanges.UNKNOWN);
+        assertEquals(List.of("mvn", "clean", "test"), plan.command());
+
+        planner.markBuilt(workspace, firstCommit);
+        assertEquals(List.of("mvn", "test"), planner.plan(workspace, PushChanges.UNKNOWN).command());
+        // Not marked as built again, like a cancelled build
+        assertEquals(List.of("mvn", "clean", "test"), planner.plan(workspace, PushChanges.UNKNOWN).command());
+    }
+
+    /**
+     * Changes found with git should restrict the build to the
+     * changed nested module and its dependents.
+     */
+    @Test
+    public void restrictToChangedModules() throws IOException, InterruptedException {
+        planner.markBuilt(workspace, firstCommit);
+        write("app/web/src/Web.java", "class Web { int x; }");
+        commit("Change web");
+
+        MavenBuildPlanner.Plan plan = planner.plan(workspace, PushChanges.UNKNOWN);
+
+        assertEquals(List.of("mvn", "test", "-pl", "app/web", "-am", "-amd"), plan.command());
+        assertFalse(plan.isComplete());
+    }
+
+    /**
+     * A changed module that depends on an unchanged one should be built
+     * together with it, since the unchanged module is not installed in the
+     * local repository and can only be resolved from the reactor.
+     */
+    @Test
+    public void buildModulesTheChangedModuleDependsOn() throws IOException, InterruptedException {
+        write("core/pom.xml", "<project><artifactId>core</artifactId></project>");
+        write("app/web/pom.xml", "<project><artifactId>web</artifactId>"
+            + "<dependencies><dependency><artifactId>core</artifactId></dependency></dependencies></project>");
+        String chain = commit("Let web depend on core");
+        planner.markBuilt(workspace, chain);
+        write("app/web/src/Web.java", "class Web { Core core; }");
+        commit("Change web");
+
+        MavenBuildPlanner.Plan plan = planner.plan(workspace, PushChanges.UNKNOWN);
+
+        assertEquals(List.of("mvn", "test", "-pl", "app/web", "-am", "-amd"), plan.command());
+        assertEquals(List.of("app/web"), plan.modules());
+    }
+
+    /**
+     * The changes of a push starting at the last built commit should
+     * be taken from the payload, and a change outside the modules
+     * should build the whole project without cleaning.
+     */
+    @Test
+    public void usePayloadChanges() throws IOException, InterruptedException {
+        planner.markBuilt(workspace, firstCommit);
+        commit("Empty commit");
+        PushChanges changes = new PushChanges(firstCommit, List.of("README"), List.of(), true);
+
+        MavenBuildPlanner.Plan plan = planner.plan(workspace, changes);
+
+        assertEquals(List.of("mvn", "test"), plan.command());
+        assertTrue(plan.isComplete());
+    }
+
+    /**
+     * Removed files and changed poms should lead to a clean build.
+     */
+    @Test
+    public void cleanAfterRemovalOrPomChange() throws IOException, InterruptedException {
+        planner.markBuilt(workspace, firstCommit);
+        PushChanges removal = new PushChanges(firstCommit, List.of(), List.of("core/src/Core.java"), true);
+        assertEquals(List.of("mvn", "clean", "test"), planner.plan(workspace, removal).command());
+
+        planner.markBuilt(workspace, firstCommit);
+        PushChanges pomChange = new PushChanges(firstCommit, List.of("core/pom.xml"), List.of(), true);
+        assertEquals(List.of("mvn", "clean", "test"), planner.plan(workspace, pomChange).command());
+    }
+}
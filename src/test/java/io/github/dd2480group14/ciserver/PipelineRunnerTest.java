@@ -0,0 +1,96 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for running the stages of a pipeline.
+ */
+public class PipelineRunnerTest {
+
+    private static PipelineRunner.StageStatus statusOf(List<PipelineRunner.StageResult> results, String name) {
+        return results.stream().filter(result -> result.name().equals(name)).findFirst().orElseThrow().status();
+    }
+
+    /**
+     * Stages that do not need each other should run at the same time,
+     * and every line of a stage should be prefixed with its name.
+     */
+    @Test
+    public void independentStagesRunInParallel(@TempDir Path path) throws Exception {
+        Pipeline pipeline = Pipeline.fromJSON(new JSONObject("""
+            {"stages": [
+              {"name": "a", "command": ["sh", "-c", "sleep 1; echo done a"]},
+              {"name": "b", "command": ["sh", "-c", "sleep 1; echo done b"]},
+              {"name": "c", "command": ["echo", "done c"], "needs": ["a", "b"]}
+            ]}"""));
+        PipelineRunner runner = new PipelineRunner(new CommandRunner(), UnaryOperator.identity(), 4);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        List<PipelineRunner.StageResult> events = new ArrayList<>();
+
+        long start = System.currentTimeMillis();
+        List<PipelineRunner.StageResult> results = runner.run(pipeline, path.toFile(), log, events::add);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(List.of("a", "b", "c"), results.stream().map(PipelineRunner.StageResult::name).toList());
+        assertTrue(results.stream().allMatch(result -> result.status() == PipelineRunner.StageStatus.PASSED));
+        assertTrue(elapsed < 1900, "a and b should run in parallel but took " + elapsed + " ms");
+        assertEquals(6, events.size());
+        String output = log.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("[a] done a\n"));
+        assertTrue(output.contains("[b] done b\n"));
+        assertTrue(output.endsWith("[c] done c\n"));
+    }
+
+    /**
+     * When a stage fails, running siblings should be cancelled
+     * and the stages needing the failed one should be skipped.
+     */
+    @Test
+    public void failingStageCancelsSiblings(@TempDir Path path) throws Exception {
+        Pipeline pipeline = Pipeline.fromJSON(new JSONObject("""
+            {"stages": [
+              {"name": "slow", "command": ["sleep", "30"]},
+              {"name": "broken", "command": ["sh", "-c", "sleep 0.2; exit 1"]},
+              {"name": "after", "command": ["true"], "needs": ["broken"]}
+            ]}"""));
+        PipelineRunner runner = new PipelineRunner(new CommandRunner(), UnaryOperator.identity(), 4);
+
+        long start = System.currentTimeMillis();
+        List<PipelineRunner.StageResult> results = runner.run(pipeline, path.toFile(), new ByteArrayOutputStream(), result -> {});
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(PipelineRunner.StageStatus.CANCELLED, statusOf(results, "slow"));
+        assertEquals(PipelineRunner.StageStatus.FAILED, statusOf(results, "broken"));
+        assertEquals(PipelineRunner.StageStatus.SKIPPED, statusOf(results, "after"));
+        assertTrue(elapsed < 10000, "the slow stage should have been killed but the pipeline took " + elapsed + " ms");
+    }
+
+    /**
+     * A stage whose command cannot be started should fail instead of stopping the pipeline runner.
+     */
+    @Test
+    public void missingCommandFailsStage(@TempDir Path path) throws Exception {
+        Pipeline pipeline = Pipeline.fromJSON(new JSONObject("""
+            {"stages": [{"name": "missing", "command": ["command-that-does-not-exist"]}]}"""));
+        PipelineRunner runner = new PipelineRunner(new CommandRunner(), UnaryOperator.identity(), 1);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+        List<PipelineRunner.StageResult> results = runner.run(pipeline, new File(path.toString()), log, result -> {});
+
+        assertEquals(PipelineRunner.StageStatus.FAILED, statusOf(results, "missing"));
+        assertTrue(log.toString(StandardCharsets.UTF_8).startsWith("[missing] Stage could not be run"));
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for reading pipeline files.
+ */
+public class PipelineTest {
+
+    /**
+     * A pipeline file should be read with its stages in order,
+     * and a workspace without one should have no pipeline.
+     */
+    @Test
+    public void loadPipelineFile(@TempDir Path path) throws Exception {
+        File workspace = path.toFile();
+        assertNull(Pipeline.load(workspace));
+
+        Files.writeString(path.resolve(Pipeline.PIPELINE_FILE_NAME), """
+            {"stages": [
+              {"name": "compile", "command": ["mvn", "compile"]},
+              {"name": "test", "command": ["mvn", "test"], "needs": ["compile"]}
+            ]}
+            """);
+        Pipeline pipeline = Pipeline.load(workspace);
+
+        assertEquals(List.of(
+            new Pipeline.Stage("compile", List.of("mvn", "compile"), List.of()),
+            new Pipeline.Stage("test", List.of("mvn", "test"), List.of("compile"))), pipeline.stages());
+    }
+
+    /**
+     * Pipelines that cannot be run should be rejected.
+     */
+    @Test
+    public void rejectInvalidPipelines() {
+        assertThrows(IllegalArgumentException.class, () -> Pipeline.fromJSON(new JSONObject("""
+            {"stages": []}""")));
+        assertThrows(IllegalArgumentException.class, () -> Pipeline.fromJSON(new JSONObject("""
+            {"stages": [{"name": "a", "command": []}]}""")));
+        assertThrows(IllegalArgumentException.class, () -> Pipeline.fromJSON(new JSONObject("""
+            {"stages": [{"name": "a", "command": ["true"]}, {"name": "a", "command": ["true"]}]}""")));
+        assertThrows(IllegalArgumentException.class, () -> Pipeline.fromJSON(new JSONObject("""
+            {"stages": [{"name": "a", "command": ["true"], "needs": ["b"]}]}""")));
+        assertThrows(IllegalArgumentException.class, () -> Pipeline.fromJSON(new JSONObject("""
+            {"stages": [{"name": "a", "command": ["true"], "needs": ["b"]},
+                        {"name": "b", "command": ["true"], "needs": ["a"]}]}""")));
+    }
+}
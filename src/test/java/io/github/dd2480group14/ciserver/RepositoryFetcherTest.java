@@ -0,0 +1,172 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for fetching repositories into build workspaces.
+ */
+public class RepositoryFetcherTest {
+    private final CommandRunner commandRunner = new CommandRunner();
+
+    /**
+     * Creates a git repository with a file in the root and one in a
+     * subdirectory, and returns the SHA of its only commit.
+     */
+    private String createRepository(File repository) throws IOException, InterruptedException {
+        new File(repository, "module").mkdirs();
+        Files.writeString(new File(repository, "README").toPath(), "hello");
+        Files.writeString(new File(repository, "module/App.java").toPath(), "class App {}");
+        commandRunner.runChecked(List.of("git", "init"), repository);
+        commandRunner.runChecked(List.of("git", "add", "."), repository);
+        commandRunner.runChecked(List.of("git", "-c", "user.name=test", "-c", "user.email=test@test",
+            "commit", "-m", "Initial commit"), repository);
+        return commandRunner.runChecked(List.of("git", "rev-parse", "HEAD"), repository);
+    }
+
+    /**
+     * A shallow fetch should check out the pushed commit
+     * without any of the history before it.
+     */
+    @Test
+    public void fetchShallowChecksOutCommit(@TempDir Path path) throws IOException, InterruptedException {
+        File repository = Files.createDirectory(path.resolve("repo")).toFile();
+        String sha = createRepository(repository);
+        File workspace = Files.createDirectory(path.resolve("workspace")).toFile();
+        RepositoryFetcher fetcher = new RepositoryFetcher(CloneMode.SHALLOW, null, "blob:none", List.of(), commandRunner);
+
+        RepositoryFetcher.Result result = fetcher.fetch(repository.getPath(), sha, workspace);
+
+        assertEquals(CloneMode.SHALLOW, result.mode());
+        assertTrue(new File(workspace, "module/App.java").exists());
+        assertTrue(new File(workspace, ".git/shallow").exists());
+        assertEquals(sha, commandRunner.runChecked(List.of("git", "rev-parse", "HEAD"), workspace));
+        assertTrue(result.bytes() > 0);
+    }
+
+    /**
+     * With sparse paths configured only those directories
+     * (and the files in the root) should be checked out.
+     */
+    @Test
+    public void fetchShallowSparseCheckout(@TempDir Path path) throws IOException, InterruptedException {
+        File repository = Files.createDirectory(path.resolve("repo")).toFile();
+        String sha = createRepository(repository);
+        new File(repository, "other").mkdirs();
+        File workspace = Files.createDirectory(path.resolve("workspace")).toFile();
+        RepositoryFetcher fetcher = new RepositoryFetcher(CloneMode.SHALLOW, null, null, List.of("docs"), commandRunner);
+
+        fetcher.fetch(repository.getPath(), sha, workspace);
+
+        assertTrue(new File(workspace, "README").exists());
+        assertFalse(new File(workspace, "module").exists());
+    }
+
+    /**
+     * If the shallow fetch fails, here because of an unknown filter,
+     * the fetcher should fall back to a full clone and report it as such.
+     */
+    @Test
+    public void fetchShallowFallsBackToFullClone(@TempDir Path path) throws IOException, InterruptedException {
+        File repository = Files.createDirectory(path.resolve("repo")).toFile();
+        String sha = createRepository(repository);
+        File workspace = Files.createDirectory(path.resolve("workspace")).toFile();
+        RepositoryFetcher fetcher = new RepositoryFetcher(CloneMode.SHALLOW, null, "no-such-filter", List.of(), commandRunner);
+
+        RepositoryFetcher.Result result = fetcher.fetch(repository.getPath(), sha, workspace);
+
+        assertEquals(CloneMode.FULL, result.mode());
+        assertEquals(sha, commandRunner.runChecked(List.of("git", "rev-parse", "HEAD"), workspace));
+        assertEquals(1, fetcher.getStatistics().getLong("fallbacks"));
+    }
+
+    /**
+     * If the mirror can not be used, the fetcher should fall
+     * back to a full clone and report it as such.
+     */
+    @Test
+    public void fetchFromMirrorFallsBackToFullClone(@TempDir Path path) throws IOException, InterruptedException {
+        File repository = Files.createDirectory(path.resolve("repo")).toFile();
+        String sha = createRepository(repository);
+        File workspace = Files.createDirectory(path.resolve("workspace")).toFile();
+        File cacheFolder = path.resolve("cache").toFile();
+        GitMirrorCache mirrorCache = new GitMirrorCache(cacheFolder, Long.MAX_VALUE, commandRunner);
+        // A file where the cache folder should be makes every mirror update fail
+        Files.delete(cacheFolder.toPath());
+        Files.writeString(cacheFolder.toPath(), "not a folder");
+        RepositoryFetcher fetcher = new RepositoryFetcher(CloneMode.MIRROR, mirrorCache, null, List.of(), commandRunner);
+
+        RepositoryFetcher.Result result = fetcher.fetch(repository.getPath(), sha, workspace);
+
+        assertEquals(CloneMode.FULL, result.mode());
+        assertEquals(sha, commandRunner.runChecked(List.of("git", "rev-parse", "HEAD"), workspace));
+        assertEquals(1, fetcher.getStatistics().getLong("fallbacks"));
+    }
+
+    /**
+     * A commit that even a full clone does not have should fail
+     * the fetch, instead of leaving another commit checked out.
+     */
+    @Test
+    public void fetchMissingCommitFails(@TempDir Path path) throws IOException, InterruptedException {
+        File repository = Files.createDirectory(path.resolve("repo")).toFile();
+        createRepository(repository);
+        File workspace = Files.createDirectory(path.resolve("workspace")).toFile();
+        RepositoryFetcher fetcher = new RepositoryFetcher(CloneMode.SHALLOW, null, null, List.of(), commandRunner);
+
+        assertThrows(IOException.class,
+            () -> fetcher.fetch(repository.getPath(), "0000000000000000000000000000000000000000", workspace));
+    }
+
+    /**
+     * The full clone of a repository should be remembered across
+     * restarts, so later fetches report the time they saved.
+     */
+    @Test
+    public void fullCloneBaselineSurvivesRestart(@TempDir Path path) throws IOException, InterruptedException {
+        File repository = Files.createDirectory(path.resolve("repo")).toFile();
+        String sha = createRepository(repository);
+        File logs = Files.createDirectory(path.resolve("logs")).toFile();
+        RepositoryFetcher full = new RepositoryFetcher(CloneMode.FULL, null, null, List.of(), commandRunner, false, logs);
+
+        RepositoryFetcher.Result clone = full.fetch(repository.getPath(), sha, Files.createDirectory(path.resolve("a")).toFile());
+        RepositoryFetcher restarted = new RepositoryFetcher(CloneMode.SHALLOW, null, null, List.of(), commandRunner, false, logs);
+        RepositoryFetcher.Result shallow = restarted.fetch(repository.getPath(), sha, Files.createDirectory(path.resolve("b")).toFile());
+
+        assertEquals(0, clone.savedMillis());
+        assertTrue(clone.bytes() > 0);
+        assertTrue(shallow.savedMillis() >= 0);
+    }
+
+    /**
+     * In mirror mode only what the mirror fetched from the remote should
+     * be counted, not the local clone of the mirror into the workspace.
+     */
+    @Test
+    public void fetchFromMirrorCountsRemoteBytesOnly(@TempDir Path path) throws IOException, InterruptedException {
+        File repository = Files.createDirectory(path.resolve("repo")).toFile();
+        String sha = createRepository(repository);
+        GitMirrorCache mirrorCache = new GitMirrorCache(path.resolve("cache").toFile(), Long.MAX_VALUE, commandRunner);
+        RepositoryFetcher fetcher = new RepositoryFetcher(CloneMode.MIRROR, mirrorCache, null, List.of(), commandRunner);
+
+        RepositoryFetcher.Result first = fetcher.fetch(repository.getPath(), sha, Files.createDirectory(path.resolve("a")).toFile());
+        RepositoryFetcher.Result second = fetcher.fetch(repository.getPath(), sha, Files.createDirectory(path.resolve("b")).toFile());
+
+        assertTrue(first.bytes() > 0);
+        assertEquals(0, first.savedMillis());
+        assertEquals(0, second.bytes());
+        assertTrue(second.savedMillis() >= 0);
+        assertTrue(new File(path.toFile(), "b/README").exists());
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.codec.digest.HmacUtils;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for checking webhook signatures.
+ */
+public class SignatureVerifierTest {
+    private static final byte[] BODY = "{\"ref\":\"refs/heads/main\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static String sign(String secret, byte[] body) {
+        return "sha256=" + new HmacUtils("HmacSHA256", secret).hmacHex(body);
+    }
+
+    /**
+     * While a secret is rotated, deliveries signed with the old and the new
+     * secret should both be accepted, and others rejected.
+     */
+    @Test
+    public void acceptEveryActiveSecret() {
+        SignatureVerifier verifier = new SignatureVerifier(List.of("new", "old"));
+
+        assertTrue(verifier.verify(sign("new", BODY), BODY, 0, BODY.length));
+        assertTrue(verifier.verify(sign("old", BODY), BODY, 0, BODY.length));
+        assertTrue(verifier.verify(sign("old", BODY).toUpperCase().replace("SHA256=", "sha256="), BODY, 0, BODY.length));
+        assertFalse(verifier.verify(sign("other", BODY), BODY, 0, BODY.length));
+
+        assertEquals(1, verifier.getStatistics().getJSONArray("matchesPerSecret").getLong(0));
+        assertEquals(2, verifier.getStatistics().getJSONArray("matchesPerSecret").getLong(1));
+        assertEquals(1, verifier.getStatistics().getLong("rejected"));
+    }
+
+    /**
+     * A missing header should be a bad request, and a header that is
+     * not a SHA-256 signature should be rejected.
+     */
+    @Test
+    public void rejectMalformedHeaders() {
+        SignatureVerifier verifier = new SignatureVerifier(List.of("secret"));
+
+        assertThrows(IllegalArgumentException.class, () -> verifier.start(null));
+        assertThrows(SecurityException.class, () -> verifier.start("sha1=" + "0".repeat(40)));
+        assertThrows(SecurityException.class, () -> verifier.start("sha256=" + "zz".repeat(32)));
+        assertFalse(verifier.verify("sha256=00", BODY, 0, BODY.length));
+    }
+
+    /**
+     * A verification that was abandoned halfway should not affect
+     * the next delivery that reuses its Macs.
+     */
+    @Test
+    public void reuseAbandonedVerification() {
+        SignatureVerifier verifier = new SignatureVerifier(List.of("secret"));
+        SignatureVerifier.Verification abandoned = verifier.start(sign("secret", BODY));
+        abandoned.update(BODY, 0, 5);
+        abandoned.close();
+
+        assertTrue(verifier.verify(sign("secret", BODY), BODY, 0, BODY.length));
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.codec.digest.HmacUtils;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for reading webhook bodies.
+ */
+public class WebhookReaderTest {
+    private static final String SECRET = "test";
+    private static final String PAYLOAD = "{\"ref\":\"refs/heads/main\",\"message\":\"Fix å + 100% & more\"}";
+
+    private static String sign(byte[] body) {
+        return "sha256=" + new HmacUtils("HmacSHA256", SECRET).hmacHex(body);
+    }
+
+    private static JSONObject read(WebhookReader reader, byte[] body, long contentLength, String contentType) throws IOException {
+        try (WebhookReader.Payload payload = reader.read(new ByteArrayInputStream(body), contentLength, contentType, sign(body))) {
+            return payload.toJSON();
+        }
+    }
+
+    /**
+     * A JSON body should be parsed as it is.
+     */
+    @Test
+    public void readJson() throws IOException {
+        WebhookReader reader = new WebhookReader(new SignatureVerifier(List.of(SECRET)), 1024, 1);
+        byte[] body = PAYLOAD.getBytes(StandardCharsets.UTF_8);
+
+        JSONObject json = read(reader, body, body.length, "application/json; charset=utf-8");
+
+        assertEquals(new JSONObject(PAYLOAD).toString(), json.toString());
+    }
+
+    /**
+     * The payload field of a form encoded body should be URL decoded,
+     * including multi-byte characters, and other fields ignored.
+     */
+    @Test
+    public void readFormEncoded() throws IOException {
+        WebhookReader reader = new WebhookReader(new SignatureVerifier(List.of(SECRET)), 1024, 1);
+        byte[] body = ("other=1&payload=" + URLEncoder.encode(PAYLOAD, StandardCharsets.UTF_8) + "&more=2")
+            .getBytes(StandardCharsets.UTF_8);
+
+        JSONObject json = read(reader, body, body.length, "application/x-www-form-urlencoded");
+
+        assertEquals("Fix å + 100% & more", json.getString("message"));
+    }
+
+    /**
+     * A body of unknown length should be read into a growing buffer.
+     */
+    @Test
+    public void readUnknownLength() throws IOException {
+        WebhookReader reader = new WebhookReader(new SignatureVerifier(List.of(SECRET)), 1024 * 1024, 1);
+        String big = "{\"data\":\"" + "x".repeat(200_000) + "\"}";
+
+        JSONObject json = read(reader, big.getBytes(StandardCharsets.UTF_8), -1, "application/json");
+
+        assertEquals(200_000, json.getString("data").length());
+    }
+
+    /**
+     * The buffer of a delivery should be reused by the next one.
+     */
+    @Test
+    public void reuseBuffers() throws IOException {
+        WebhookReader reader = new WebhookReader(new SignatureVerifier(List.of(SECRET)), 1024, 1);
+        byte[] body = PAYLOAD.getBytes(StandardCharsets.UTF_8);
+
+        read(reader, body, body.length, "application/json");
+        read(reader, body, body.length, "application/json");
+
+        assertEquals(1, reader.getStatistics().getLong("buffersAllocated"));
+        assertEquals(1, reader.getStatistics().getLong("buffersReused"));
+    }
+
+    /**
+     * A signature that does not match the body, a missing signature, a
+     * too large body and an unknown content type should be rejected.
+     */
+    @Test
+    public void rejectInvalidDeliveries() {
+        WebhookReader reader = new WebhookReader(new SignatureVerifier(List.of(SECRET)), 64, 1);
+        byte[] body = "{\"a\":1}".getBytes(StandardCharsets.UTF_8);
+        byte[] large = ("{\"a\":\"" + "x".repeat(100) + "\"}").getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(SecurityException.class,
+            () -> reader.read(new ByteArrayInputStream(body), body.length, "application/json", "sha256=00"));
+        assertThrows(IllegalArgumentException.class,
+            () -> reader.read(new ByteArrayInputStream(body), body.length, "application/json", null));
+        assertThrows(IllegalArgumentException.class,
+            () -> reader.read(new ByteArrayInputStream(large), -1, "application/json", sign(large)));
+        assertThrows(IllegalArgumentException.class,
+            () -> reader.read(new ByteArrayInputStream(body), body.length, "text/plain", sign(body)));
+        assertEquals(1, reader.getStatistics().getJSONObject("signatures").getLong("rejected"));
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.dd2480group14.ciserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the workspace manager.
+ */
+public class WorkspaceManagerTest {
+    private final String repoURL = "https://github.com/test/example.git";
+
+    /**
+     * Waits until the cleaner thread has deleted every released workspace.
+     */
+    private void awaitDeletions(WorkspaceManager manager, long deletions) throws InterruptedException {
+        for (int i = 0; i < 100 && manager.getStatistics().getLong("deletions") < deletions; i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Without reuse a released workspace should be deleted
+     * and the next build should get a new directory.
+     */
+    @Test
+    public void releaseDeletesWorkspace() throws IOException, InterruptedException {
+        WorkspaceManager manager = new WorkspaceManager(Long.MAX_VALUE, false);
+        WorkspaceManager.Workspace workspace = manager.acquire(repoURL);
+        Files.writeString(new File(workspace.directory(), "file.txt").toPath(), "content");
+
+        manager.release(workspace);
+        assertFalse(workspace.directory().exists());
+        awaitDeletions(manager, 1);
+        assertEquals(7, manager.getStatistics().getLong("reclaimedBytes"));
+
+        WorkspaceManager.Workspace next = manager.acquire(repoURL);
+        assertFalse(next.reused());
+        assertNotEquals(workspace.directory(), next.directory());
+        manager.release(next);
+    }
+
+    /**
+     * With reuse enabled the next build of the same repository
+     * should get the released directory back.
+     */
+    @Test
+    public void releaseKeepsWorkspaceForReuse() throws IOException {
+        WorkspaceManager manager = new WorkspaceManager(Long.MAX_VALUE, true);
+        WorkspaceManager.Workspace workspace = manager.acquire(repoURL);
+        manager.release(workspace);
+        assertTrue(workspace.directory().exists());
+
+        WorkspaceManager.Workspace next = manager.acquire(repoURL);
+        assertTrue(next.reused());
+        assertEquals(workspace.directory(), next.directory());
+
+        WorkspaceManager.Workspace other = manager.acquire("https://github.com/test/other.git");
+        assertFalse(other.reused());
+        manager.release(next);
+        manager.release(other);
+    }
+
+    /**
+     * A build whose last workspace was larger than the quota
+     * should not get a new workspace.
+     */
+    @Test
+    public void acquireFailsWhenQuotaExceeded() throws IOException {
+        WorkspaceManager manager = new WorkspaceManager(4, false);
+        WorkspaceManager.Workspace workspace = manager.acquire(repoURL);
+        Files.writeString(new File(workspace.directory(), "file.txt").toPath(), "content");
+        manager.release(workspace);
+
+        assertThrows(IOException.class, () -> manager.acquire(repoURL));
+    }
+}